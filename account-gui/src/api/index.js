@@ -136,8 +136,8 @@ export function startEnrollment(hash) {
     return fetchJson(`/tiqr/start-enrollment?hash=${hash}`);
 }
 
-export function pollEnrollment(enrollmentKey) {
-    return fetchJson(`/tiqr/poll-enrollment?enrollmentKey=${enrollmentKey}`)
+export function pollEnrollment(enrollmentKey, lastStatus) {
+    return fetchJson(`/tiqr/poll-enrollment?enrollmentKey=${enrollmentKey}&lastStatus=${lastStatus}`)
 }
 
 export function fetchQrCode(url) {
@@ -167,8 +167,8 @@ export function startTiqrAuthentication(email, authenticationRequestId) {
     }, "POST");
 }
 
-export function pollAuthentication(sessionKey, id) {
-    return fetchJson(`/tiqr/poll-authentication?sessionKey=${sessionKey}&id=${id}`)
+export function pollAuthentication(sessionKey, id, lastStatus) {
+    return fetchJson(`/tiqr/poll-authentication?sessionKey=${sessionKey}&id=${id}&lastStatus=${lastStatus}`)
 }
 
 export function rememberMe(hash) {
@@ -1,5 +1,6 @@
-export const poll = async ({ fn, validate, interval, maxAttempts }) => {
+export const poll = async ({ fn, validate, interval, maxAttempts, timeout }) => {
     let attempts = 0;
+    const deadline = timeout ? Date.now() + timeout : null;
 
     const executePoll = async (resolve, reject) => {
         const result = await fn();
@@ -9,6 +10,8 @@ export const poll = async ({ fn, validate, interval, maxAttempts }) => {
             return resolve(result);
         } else if (maxAttempts && attempts === maxAttempts) {
             return reject(new Error('Exceeded max attempts'));
+        } else if (deadline && Date.now() >= deadline) {
+            return reject(new Error('Exceeded timeout'));
         } else {
             setTimeout(executePoll, interval, resolve, reject);
         }
@@ -190,8 +190,8 @@ export function finishEnrollment() {
     return fetchJson(`/tiqr/sp/finish-enrollment`);
 }
 
-export function pollEnrollment(enrollmentKey) {
-    return fetchJson(`/tiqr/poll-enrollment?enrollmentKey=${enrollmentKey}`)
+export function pollEnrollment(enrollmentKey, lastStatus) {
+    return fetchJson(`/tiqr/poll-enrollment?enrollmentKey=${enrollmentKey}&lastStatus=${lastStatus}`)
 }
 
 export function generateBackupCode() {
@@ -245,8 +245,8 @@ export function startTiqrAuthentication() {
     return postPutJson("/tiqr/sp/start-authentication", {}, "POST");
 }
 
-export function pollAuthentication(sessionKey) {
-    return fetchJson(`/tiqr/sp/poll-authentication?sessionKey=${sessionKey}`)
+export function pollAuthentication(sessionKey, lastStatus) {
+    return fetchJson(`/tiqr/sp/poll-authentication?sessionKey=${sessionKey}&lastStatus=${lastStatus}`)
 }
 
 export function manualResponse(sessionKey, response) {
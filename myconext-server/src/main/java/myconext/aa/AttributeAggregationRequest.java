@@ -0,0 +1,19 @@
+package myconext.aa;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class AttributeAggregationRequest {
+
+    @JsonProperty("sp_entity_id")
+    private String spEntityId;
+    @JsonProperty("eduperson_principal_name")
+    private String eduPersonPrincipalName;
+}
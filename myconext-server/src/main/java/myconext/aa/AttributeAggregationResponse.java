@@ -0,0 +1,22 @@
+package myconext.aa;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class AttributeAggregationResponse {
+
+    @JsonProperty("sp_entity_id")
+    private String spEntityId;
+    @JsonProperty("eduperson_principal_name")
+    private String eduPersonPrincipalName;
+    private List<UserAttribute> attributes;
+}
@@ -4,19 +4,24 @@ import io.swagger.v3.oas.annotations.Hidden;
 import lombok.Getter;
 import myconext.api.HasUserRepository;
 import myconext.manage.Manage;
+import myconext.model.ComputedEduID;
 import myconext.model.EduID;
+import myconext.model.LinkedAccount;
 import myconext.model.User;
+import myconext.repository.LastLoginUpdater;
 import myconext.repository.UserRepository;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.util.StringUtils;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -31,15 +36,24 @@ public class AttributeAggregatorController implements HasUserRepository {
 
     @Getter
     private final UserRepository userRepository;
+    private final LastLoginUpdater lastLoginUpdater;
     private final Manage serviceProviderResolver;
+    private final MongoTemplate mongoTemplate;
     private final String schacHomeOrganization;
+    private final int bulkMaxSize;
 
     public AttributeAggregatorController(UserRepository userRepository,
+                                         LastLoginUpdater lastLoginUpdater,
                                          Manage serviceProviderResolver,
-                                         @Value("${schac_home_organization}") String schacHomeOrganization) {
+                                         MongoTemplate mongoTemplate,
+                                         @Value("${schac_home_organization}") String schacHomeOrganization,
+                                         @Value("${attribute_aggregation_bulk_max_size}") int bulkMaxSize) {
         this.userRepository = userRepository;
+        this.lastLoginUpdater = lastLoginUpdater;
         this.serviceProviderResolver = serviceProviderResolver;
+        this.mongoTemplate = mongoTemplate;
         this.schacHomeOrganization = schacHomeOrganization;
+        this.bulkMaxSize = bulkMaxSize;
     }
 
     @GetMapping(value = {"attribute-aggregation"})
@@ -49,20 +63,18 @@ public class AttributeAggregatorController implements HasUserRepository {
         LOG.debug(String.format("Attribute aggregation request %s %s", spEntityId, eduPersonPrincipalName));
         Optional<User> userOptional = Optional.empty();
         //it might be that the eppn if from the eduID IdP, and then we can look up the user based on that
-        int indexOfAt = eduPersonPrincipalName.indexOf("@");
-        String schacHome = eduPersonPrincipalName.substring(indexOfAt + 1);
-        if (this.schacHomeOrganization.equals(schacHome)) {
-            String uid = eduPersonPrincipalName.substring(0, indexOfAt);
-            userOptional = userRepository.findUserByUid(uid);
+        Optional<String> optionalUid = eduIDUid(eduPersonPrincipalName);
+        if (optionalUid.isPresent()) {
+            userOptional = userRepository.findUserByUid(optionalUid.get());
         } else if (StringUtils.hasText(eduPersonPrincipalName)) {
             userOptional = userRepository
                     .findUserByLinkedAccounts_eduPersonPrincipalName(eduPersonPrincipalName);
         }
         List<UserAttribute> userAttributes = new ArrayList<>();
         userOptional.ifPresent(user -> {
-            String eduID = user.computeEduIdForServiceProviderIfAbsent(spEntityId, serviceProviderResolver);
-            userRepository.save(user);
-            userAttributes.add(new UserAttribute("urn:mace:eduid.nl:1.1", eduID));
+            ComputedEduID computedEduID = user.computeEduIdForServiceProviderIfAbsent(spEntityId, serviceProviderResolver);
+            lastLoginUpdater.saveOrTouch(user, computedEduID);
+            userAttributes.add(new UserAttribute("urn:mace:eduid.nl:1.1", computedEduID.value()));
         });
 
         LOG.debug(String.format("Attribute aggregation response %s", userAttributes));
@@ -70,6 +82,41 @@ public class AttributeAggregatorController implements HasUserRepository {
         return ResponseEntity.ok(userAttributes);
     }
 
+    @PostMapping(value = {"attribute-aggregation/bulk"})
+    @PreAuthorize("hasRole('ROLE_attribute-aggregation')")
+    public ResponseEntity<List<AttributeAggregationResponse>> aggregateBulk(@RequestBody List<AttributeAggregationRequest> aggregationRequests) {
+        LOG.debug(String.format("Bulk attribute aggregation request for %s principals", aggregationRequests.size()));
+        validate(aggregationRequests);
+        //All users are found with one query, the eduID's are computed in memory and all changes are written at once
+        Map<String, User> usersByUid = new HashMap<>();
+        Map<String, User> usersByEduPersonPrincipalName = new HashMap<>();
+        findUsers(aggregationRequests, usersByUid, usersByEduPersonPrincipalName);
+        //User does not override equals, so each user instance is one key
+        Map<User, List<ComputedEduID>> computedEduIDs = new LinkedHashMap<>();
+        List<AttributeAggregationResponse> responses = aggregationRequests.stream()
+                .map(aggregationRequest -> {
+                    String eduPersonPrincipalName = aggregationRequest.getEduPersonPrincipalName();
+                    List<UserAttribute> userAttributes = new ArrayList<>();
+                    if (StringUtils.hasText(eduPersonPrincipalName)) {
+                        Optional<User> userOptional = eduIDUid(eduPersonPrincipalName)
+                                .map(uid -> Optional.ofNullable(usersByUid.get(uid)))
+                                .orElseGet(() -> Optional.ofNullable(usersByEduPersonPrincipalName.get(eduPersonPrincipalName)));
+                        userOptional.ifPresent(user -> {
+                            ComputedEduID computedEduID = user.computeEduIdForServiceProviderIfAbsent(aggregationRequest.getSpEntityId(), serviceProviderResolver);
+                            computedEduIDs.computeIfAbsent(user, u -> new ArrayList<>()).add(computedEduID);
+                            userAttributes.add(new UserAttribute("urn:mace:eduid.nl:1.1", computedEduID.value()));
+                        });
+                    }
+                    return new AttributeAggregationResponse(aggregationRequest.getSpEntityId(), eduPersonPrincipalName, userAttributes);
+                })
+                .toList();
+        lastLoginUpdater.saveOrTouchAll(computedEduIDs);
+
+        LOG.debug(String.format("Bulk attribute aggregation response for %s users", computedEduIDs.size()));
+
+        return ResponseEntity.ok(responses);
+    }
+
     //Note that the spEntityId is the same as the  OIDC client ID
     @GetMapping(value = "attribute-manipulation")
     @PreAuthorize("hasRole('ROLE_attribute-manipulation')")
@@ -82,10 +129,10 @@ public class AttributeAggregatorController implements HasUserRepository {
             return ResponseEntity.ok(new HashMap<>());
         }
         User user = userOptional.get();
-        String eduId = user.computeEduIdForServiceProviderIfAbsent(spEntityId, serviceProviderResolver);
-        userRepository.save(user);
+        ComputedEduID computedEduID = user.computeEduIdForServiceProviderIfAbsent(spEntityId, serviceProviderResolver);
+        lastLoginUpdater.saveOrTouch(user, computedEduID);
         Map<String, String> result = new HashMap<>();
-        result.put("eduid", eduId);
+        result.put("eduid", computedEduID.value());
         if (StringUtils.hasText(spInstitutionGuid)) {
             user.getLinkedAccounts().stream()
                     .filter(linkedAccount -> linkedAccount.getInstitutionIdentifier().equals(spInstitutionGuid))
@@ -104,6 +151,56 @@ public class AttributeAggregatorController implements HasUserRepository {
         return ResponseEntity.ok(result);
     }
 
+    private void findUsers(List<AttributeAggregationRequest> aggregationRequests,
+                           Map<String, User> usersByUid,
+                           Map<String, User> usersByEduPersonPrincipalName) {
+        Set<String> uids = new HashSet<>();
+        Set<String> eduPersonPrincipalNames = new HashSet<>();
+        aggregationRequests.stream()
+                .map(AttributeAggregationRequest::getEduPersonPrincipalName)
+                .filter(StringUtils::hasText)
+                .forEach(eduPersonPrincipalName -> eduIDUid(eduPersonPrincipalName)
+                        .ifPresentOrElse(uids::add, () -> eduPersonPrincipalNames.add(eduPersonPrincipalName)));
+        List<Criteria> criteria = new ArrayList<>();
+        if (!uids.isEmpty()) {
+            criteria.add(Criteria.where("uid").in(uids));
+        }
+        if (!eduPersonPrincipalNames.isEmpty()) {
+            criteria.add(Criteria.where("linkedAccounts.eduPersonPrincipalName").in(eduPersonPrincipalNames));
+        }
+        if (criteria.isEmpty()) {
+            return;
+        }
+        mongoTemplate.find(Query.query(new Criteria().orOperator(criteria)), User.class).forEach(user -> {
+            if (uids.contains(user.getUid())) {
+                usersByUid.put(user.getUid(), user);
+            }
+            user.getLinkedAccounts().stream()
+                    .map(LinkedAccount::getEduPersonPrincipalName)
+                    .filter(eduPersonPrincipalNames::contains)
+                    .forEach(eduPersonPrincipalName -> usersByEduPersonPrincipalName.putIfAbsent(eduPersonPrincipalName, user));
+        });
+    }
+
+    private void validate(List<AttributeAggregationRequest> aggregationRequests) {
+        if (aggregationRequests.size() > bulkMaxSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("Bulk attribute aggregation is limited to %s principals", bulkMaxSize));
+        }
+        //A blank entity ID would otherwise add a new eduID to the user
+        if (aggregationRequests.stream().anyMatch(aggregationRequest -> !StringUtils.hasText(aggregationRequest.getSpEntityId()))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing sp_entity_id in bulk attribute aggregation");
+        }
+    }
+
+    //The eppn of the eduID IdP is the uid scoped with the schac home of eduID
+    private Optional<String> eduIDUid(String eduPersonPrincipalName) {
+        int indexOfAt = eduPersonPrincipalName.indexOf("@");
+        String schacHome = eduPersonPrincipalName.substring(indexOfAt + 1);
+        return this.schacHomeOrganization.equals(schacHome) ?
+                Optional.of(eduPersonPrincipalName.substring(0, indexOfAt)) : Optional.empty();
+    }
+
     @GetMapping(value = "system/eduid-duplicates")
     @PreAuthorize("hasRole('ROLE_system')")
     public ResponseEntity<Map<String, List<EduID>>> eduIdDuplicates() {
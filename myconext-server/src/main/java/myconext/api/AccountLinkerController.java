@@ -42,6 +42,7 @@ import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
@@ -123,6 +124,7 @@ public class AccountLinkerController implements UserAuthentication {
             AttributeMapper attributeMapper,
             Manage manage,
             DisposableEmailProviders disposableEmailProviders,
+            EmailGuessingPrevention emailGuessingPreventor,
             @Value("${mijn_eduid_entity_id}") String mijnEduIDEntityId,
             @Value("${schac_home_organization}") String schacHomeOrganization,
             @Value("${email.magic-link-url}") String magicLinkUrl,
@@ -139,7 +141,6 @@ public class AccountLinkerController implements UserAuthentication {
             @Value("${linked_accounts.removal-duration-days-validated}") long removalValidatedDurationDays,
             @Value("${account_linking.myconext_sp_entity_id}") String myConextSpEntityId,
             @Value("${feature.create_eduid_institution_enabled}") boolean createEduIDInstitutionEnabled,
-            @Value("${email_guessing_sleep_millis}") int emailGuessingSleepMillis,
             @Value("${verify.client_id}") String verifyClientId,
             @Value("${verify.secret}") String verifySecret,
             @Value("${verify.sp_verify_redirect_url}") String spVerifyRedirectUri,
@@ -172,7 +173,7 @@ public class AccountLinkerController implements UserAuthentication {
         this.removalValidatedDurationDays = removalValidatedDurationDays;
         this.myConextSpEntityId = myConextSpEntityId;
         this.createEduIDInstitutionEnabled = createEduIDInstitutionEnabled;
-        this.emailGuessingPreventor = new EmailGuessingPrevention(emailGuessingSleepMillis);
+        this.emailGuessingPreventor = emailGuessingPreventor;
         this.verifyClientId = verifyClientId;
         this.verifySecret = verifySecret;
         this.verifyBaseUri = verifyBaseUri;
@@ -269,7 +270,8 @@ public class AccountLinkerController implements UserAuthentication {
 
     @PostMapping("/sp/create-from-institution/email")
     @Hidden
-    public ResponseEntity<Map<String, String>> linkFromInstitution(@Valid @RequestBody CreateInstitutionEduID createInstitutionEduID) {
+    public DeferredResult<ResponseEntity<Map<String, String>>> linkFromInstitution(HttpServletRequest request,
+                                                                                   @Valid @RequestBody CreateInstitutionEduID createInstitutionEduID) {
 
         LOG.info(String.format("Post details for account verification in create-institution-flow %s", createInstitutionEduID.getEmail()));
 
@@ -277,28 +279,28 @@ public class AccountLinkerController implements UserAuthentication {
                 .orElseThrow(() -> new ForbiddenException("Wrong hash"));
         String email = createInstitutionEduID.getEmail();
         this.disposableEmailProviders.verifyDisposableEmailProviders(email);
-        this.emailGuessingPreventor.potentialUserEmailGuess();
+        return emailGuessingPreventor.potentialUserEmailGuess(request, () -> {
+            Optional<User> userByEmail = userRepository.findUserByEmail(email);
+            boolean newUser = createInstitutionEduID.isNewUser();
+            if (newUser && userByEmail.isPresent()) {
+                throw new DuplicateUserEmailException("There already exists a user with email " + email);
+            }
+            if (!newUser && userByEmail.isEmpty()) {
+                throw new UserNotFoundException("User not found: " + email);
+            }
+            User user = userByEmail.orElse(new User(createInstitutionEduID, requestInstitutionEduID.getUserInfo()));
+            requestInstitutionEduID.setUserId(user.getId());
 
-        Optional<User> userByEmail = userRepository.findUserByEmail(email);
-        boolean newUser = createInstitutionEduID.isNewUser();
-        if (newUser && userByEmail.isPresent()) {
-            throw new DuplicateUserEmailException("There already exists a user with email " + email);
-        }
-        if (!newUser && userByEmail.isEmpty()) {
-            throw new UserNotFoundException("User not found: " + email);
-        }
-        User user = userByEmail.orElse(new User(createInstitutionEduID, requestInstitutionEduID.getUserInfo()));
-        requestInstitutionEduID.setUserId(user.getId());
+            requestInstitutionEduID.setCreateInstitutionEduID(createInstitutionEduID);
+            //We need a new Hash for email verification, one that is not exposed to the browser
+            requestInstitutionEduID.setEmailHash(hash());
+            requestInstitutionEduIDRepository.save(requestInstitutionEduID);
 
-        requestInstitutionEduID.setCreateInstitutionEduID(createInstitutionEduID);
-        //We need a new Hash for email verification, one that is not exposed to the browser
-        requestInstitutionEduID.setEmailHash(hash());
-        requestInstitutionEduIDRepository.save(requestInstitutionEduID);
+            String uri = basePath + "/myconext/api/sp/create-from-institution/finish";
+            mailBox.sendAccountVerificationCreateFromInstitution(user, requestInstitutionEduID.getEmailHash(), uri);
 
-        String uri = basePath + "/myconext/api/sp/create-from-institution/finish";
-        mailBox.sendAccountVerificationCreateFromInstitution(user, requestInstitutionEduID.getEmailHash(), uri);
-
-        return ResponseEntity.ok(Map.of("status", "ok"));
+            return ResponseEntity.ok(Map.of("status", "ok"));
+        });
     }
 
     @GetMapping("/sp/create-from-institution/poll")
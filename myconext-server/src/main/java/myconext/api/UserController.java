@@ -31,6 +31,8 @@ import myconext.model.*;
 import myconext.oidcng.OpenIDConnect;
 import myconext.repository.*;
 import myconext.security.*;
+import myconext.shibboleth.ShibbolethPrincipalCache;
+import myconext.webauthn.ChallengeStore;
 import myconext.webauthn.UserCredentialRepository;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,6 +41,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.core.io.Resource;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -49,6 +52,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.WebRequest;
 import tiqr.org.model.Registration;
 
 import java.io.IOException;
@@ -73,6 +78,7 @@ import static myconext.log.MDCContext.logWithContext;
 public class UserController implements UserAuthentication {
 
     private static final Log LOG = LogFactory.getLog(UserController.class);
+    private static final int CONTROL_CODE_MAX_ATTEMPTS = 10;
 
     @Getter
     private final UserRepository userRepository;
@@ -87,7 +93,8 @@ public class UserController implements UserAuthentication {
     private final String idpBaseUrl;
     private final RelyingParty relyingParty;
     private final UserCredentialRepository userCredentialRepository;
-    private final ChallengeRepository challengeRepository;
+    private final ShibbolethPrincipalCache shibbolethPrincipalCache;
+    private final ChallengeStore challengeStore;
     private final PasswordResetHashRepository passwordResetHashRepository;
     private final ChangeEmailHashRepository changeEmailHashRepository;
 
@@ -102,14 +109,15 @@ public class UserController implements UserAuthentication {
     private final boolean sendJsExceptions;
     private final ServicesConfiguration servicesConfiguration;
 
-    private final List<VerifyIssuer> issuers;
+    private final Map<String, VerifyIssuer> issuersById;
     //For now, hardcode the not known issuers from test
     private final List<String> unknownIssuers = List.of("CURRNL2A");
     private final boolean serviceDeskActive;
 
     public UserController(UserRepository userRepository,
                           UserCredentialRepository userCredentialRepository,
-                          ChallengeRepository challengeRepository,
+                          ShibbolethPrincipalCache shibbolethPrincipalCache,
+                          ChallengeStore challengeStore,
                           PasswordResetHashRepository passwordResetHashRepository,
                           ChangeEmailHashRepository changeEmailHashRepository,
                           AuthenticationRequestRepository authenticationRequestRepository,
@@ -118,11 +126,11 @@ public class UserController implements UserAuthentication {
                           OpenIDConnect openIDConnect,
                           EmailDomainGuard emailDomainGuard,
                           DisposableEmailProviders disposableEmailProviders,
+                          EmailGuessingPrevention emailGuessingPreventor,
                           RegistrationRepository registrationRepository,
                           @Qualifier("jsonMapper") ObjectMapper objectMapper,
                           @Value("${email.magic-link-url}") String magicLinkUrl,
                           @Value("${schac_home_organization}") String schacHomeOrganization,
-                          @Value("${email_guessing_sleep_millis}") int emailGuessingSleepMillis,
                           @Value("${sp_redirect_url}") String spBaseUrl,
                           @Value("${idp_redirect_url}") String idpBaseUrl,
                           @Value("${rp_origin}") String rpOrigin,
@@ -134,7 +142,8 @@ public class UserController implements UserAuthentication {
                           ServicesConfiguration servicesConfiguration) throws IOException {
         this.userRepository = userRepository;
         this.userCredentialRepository = userCredentialRepository;
-        this.challengeRepository = challengeRepository;
+        this.shibbolethPrincipalCache = shibbolethPrincipalCache;
+        this.challengeStore = challengeStore;
         this.passwordResetHashRepository = passwordResetHashRepository;
         this.changeEmailHashRepository = changeEmailHashRepository;
         this.authenticationRequestRepository = authenticationRequestRepository;
@@ -152,7 +161,7 @@ public class UserController implements UserAuthentication {
         this.webAuthnSpRedirectUrl = String.format("%s/security", spBaseUrl);
         this.servicesConfiguration = servicesConfiguration;
         this.relyingParty = relyingParty(rpId, rpOrigin);
-        this.emailGuessingPreventor = new EmailGuessingPrevention(emailGuessingSleepMillis);
+        this.emailGuessingPreventor = emailGuessingPreventor;
         this.featureDefaultRememberMe = featureDefaultRememberMe;
         this.sendJsExceptions = sendJsExceptions;
         this.serviceDeskActive = serviceDeskActive;
@@ -160,7 +169,7 @@ public class UserController implements UserAuthentication {
         List<IdinIssuers> idinIssuers = objectMapper.readValue(issuersResource.getInputStream(), new TypeReference<>() {
         });
         //For now, we only support "Nederland"
-        this.issuers = idinIssuers.get(0).getIssuers().stream().filter(issuer -> !unknownIssuers.contains(issuer.getId())).collect(Collectors.toList());
+        this.issuersById = VerifyIssuer.byId(idinIssuers.get(0).getIssuers().stream().filter(issuer -> !unknownIssuers.contains(issuer.getId())).collect(Collectors.toList()));
 
     }
 
@@ -196,16 +205,17 @@ public class UserController implements UserAuthentication {
                 .orElseThrow(() -> new ExpiredAuthenticationException("Expired authentication request"));
         User user = userRepository.findById(samlAuthenticationRequest.getUserId())
                 .orElseThrow(() -> new ExpiredAuthenticationException("Expired authentication request"));
-        return new UserResponse(user, null, Optional.empty(), false, manage, issuers);
+        return new UserResponse(user, null, Optional.empty(), false, manage, issuersById);
     }
 
     @Hidden
     @PostMapping("/idp/service/email")
-    public List<String> knownAccount(@RequestBody Map<String, String> email) {
-        emailGuessingPreventor.potentialUserEmailGuess();
-        User user = userRepository.findUserByEmail(email.get("email"))
-                .orElseThrow(() -> new UserNotFoundException(String.format("User with email %s not found", email.get("email"))));
-        return user.loginOptions();
+    public DeferredResult<List<String>> knownAccount(HttpServletRequest request, @RequestBody Map<String, String> email) {
+        return emailGuessingPreventor.potentialUserEmailGuess(request, () -> {
+            User user = userRepository.findUserByEmail(email.get("email"))
+                    .orElseThrow(() -> new UserNotFoundException(String.format("User with email %s not found", email.get("email"))));
+            return user.loginOptions();
+        });
     }
 
     @Hidden
@@ -248,64 +258,68 @@ public class UserController implements UserAuthentication {
 
     @Hidden
     @PostMapping("/idp/magic_link_request")
-    public ResponseEntity newMagicLinkRequest(HttpServletRequest request, @Valid @RequestBody MagicLinkRequest magicLinkRequest) {
+    public DeferredResult<ResponseEntity> newMagicLinkRequest(HttpServletRequest request, @Valid @RequestBody MagicLinkRequest magicLinkRequest) {
         SamlAuthenticationRequest samlAuthenticationRequest = authenticationRequestRepository.findByIdAndNotExpired(magicLinkRequest.getAuthenticationRequestId())
                 .orElseThrow(() -> new ExpiredAuthenticationException("Expired authentication request"));
 
         User user = magicLinkRequest.getUser();
 
         String email = user.getEmail();
-        verifyEmails(email);
+        return emailGuessingPreventor.potentialUserEmailGuess(request, () -> {
+            verifyEmails(email);
 
-        Optional<User> optionalUser = userRepository.findUserByEmail(emailGuessingPreventor.sanitizeEmail(email));
-        if (optionalUser.isPresent()) {
-            return ResponseEntity.status(HttpStatus.CONFLICT)
-                    .body(Collections.singletonMap("status", HttpStatus.CONFLICT.value()));
-        }
-        String preferredLanguage = LocaleContextHolder.getLocale().getLanguage();
-        //prevent not-wanted attributes in the database
-        String requesterEntityId = samlAuthenticationRequest.getRequesterEntityId();
-        String schacHomeOrganization = this.emailDomainGuard.schacHomeOrganizationByDomain(this.schacHomeOrganization, email);
+            Optional<User> optionalUser = userRepository.findUserByEmail(emailGuessingPreventor.sanitizeEmail(email));
+            if (optionalUser.isPresent()) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(Collections.singletonMap("status", HttpStatus.CONFLICT.value()));
+            }
+            String preferredLanguage = LocaleContextHolder.getLocale().getLanguage();
+            //prevent not-wanted attributes in the database
+            String requesterEntityId = samlAuthenticationRequest.getRequesterEntityId();
+            String schacHomeOrganization = this.emailDomainGuard.schacHomeOrganizationByDomain(this.schacHomeOrganization, email);
 
-        User userToSave = new User(UUID.randomUUID().toString(), email, user.getGivenName(), user.getGivenName(),
-                user.getFamilyName(), schacHomeOrganization, preferredLanguage, requesterEntityId, manage);
-        userToSave = userRepository.save(userToSave);
+            User userToSave = new User(UUID.randomUUID().toString(), email, user.getGivenName(), user.getGivenName(),
+                    user.getFamilyName(), schacHomeOrganization, preferredLanguage, requesterEntityId, manage);
+            userToSave = userRepository.save(userToSave);
 
-        return this.doMagicLink(userToSave, samlAuthenticationRequest, false, request);
+            return this.doMagicLink(userToSave, samlAuthenticationRequest, false, request);
+        });
     }
 
     @Hidden
     @PutMapping("/idp/magic_link_request")
-    public ResponseEntity magicLinkRequest(HttpServletRequest request, @Valid @RequestBody MagicLinkRequest magicLinkRequest) {
+    public DeferredResult<ResponseEntity> magicLinkRequest(HttpServletRequest request, @Valid @RequestBody MagicLinkRequest magicLinkRequest) {
         SamlAuthenticationRequest samlAuthenticationRequest = authenticationRequestRepository.findByIdAndNotExpired(magicLinkRequest.getAuthenticationRequestId())
                 .orElseThrow(() -> new ExpiredAuthenticationException("Expired samlAuthenticationRequest: " + magicLinkRequest.getAuthenticationRequestId()));
 
         User providedUser = magicLinkRequest.getUser();
 
         String email = providedUser.getEmail();
-        this.verifyEmails(email);
+        return emailGuessingPreventor.potentialUserEmailGuess(request, () -> {
+            this.verifyEmails(email);
 
-        Optional<User> optionalUser = findUserStoreLanguage(email);
-        if (!optionalUser.isPresent()) {
-            return return404();
-        }
-        User user = optionalUser.get();
-        String requesterEntityId = samlAuthenticationRequest.getRequesterEntityId();
+            Optional<User> optionalUser = findUserStoreLanguage(email);
+            if (!optionalUser.isPresent()) {
+                return return404();
+            }
+            User user = optionalUser.get();
+            String requesterEntityId = samlAuthenticationRequest.getRequesterEntityId();
 
-        logWithContext(user, "update", "user", LOG, "Updating user " + user.getEmail());
-        user.computeEduIdForServiceProviderIfAbsent(requesterEntityId, manage);
-        userRepository.save(user);
+            logWithContext(user, "update", "user", LOG, "Updating user " + user.getEmail());
+            user.computeEduIdForServiceProviderIfAbsent(requesterEntityId, manage);
+            userRepository.save(user);
 
-        if (magicLinkRequest.isUsePassword()) {
-            if (!passwordEncoder.matches(providedUser.getPassword(), user.getPassword())) {
-                logLoginWithContext(user, "password", false, LOG, "Bad attempt to login with password");
-                return ResponseEntity.status(HttpStatus.FORBIDDEN)
-                        .body(Collections.singletonMap("status", HttpStatus.FORBIDDEN.value()));
+            if (magicLinkRequest.isUsePassword()) {
+                if (!passwordEncoder.matches(providedUser.getPassword(), user.getPassword())) {
+                    logLoginWithContext(user, "password", false, LOG, "Bad attempt to login with password");
+                    return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                            .body(Collections.singletonMap("status", HttpStatus.FORBIDDEN.value()));
+                }
+                logLoginWithContext(user, "password", true, LOG, "Successfully logged in with password");
+                LOG.info("Successfully logged in with password");
             }
-            logLoginWithContext(user, "password", true, LOG, "Successfully logged in with password");
-            LOG.info("Successfully logged in with password");
-        }
-        return doMagicLink(user, samlAuthenticationRequest, magicLinkRequest.isUsePassword(), request);
+            return doMagicLink(user, samlAuthenticationRequest, magicLinkRequest.isUsePassword(), request);
+        });
     }
 
     @Hidden
@@ -346,9 +360,16 @@ public class UserController implements UserAuthentication {
 
     @Operation(summary = "User details", description = "Retrieve the attributes of the current user")
     @GetMapping("/sp/me")
-    public ResponseEntity<UserResponse> me(Authentication authentication) {
+    public ResponseEntity<UserResponse> me(Authentication authentication, WebRequest webRequest) {
         User user = userFromAuthentication(authentication);
-        return userResponseRememberMe(user);
+        reconcileLinkedAccounts(user);
+        boolean rememberMe = authenticationRequestRepository.existsByUserIdAndRememberMe(user.getId(), true);
+        String eTag = userResponseETag(user, rememberMe);
+        if (webRequest.checkNotModified(eTag)) {
+            //The status 304 and the ETag header are set by checkNotModified
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(userResponse(user, rememberMe));
     }
 
     @Operation(summary = "Forget me", description = "Delete the long remember-me login for the current user")
@@ -379,40 +400,43 @@ public class UserController implements UserAuthentication {
                             content = {@Content(schema = @Schema(implementation = StatusResponse.class),
                                     examples = {@ExampleObject(value = "{\"status\":409}")})})})
     @PostMapping("/idp/create")
-    public ResponseEntity<StatusResponse> createEduIDAccount(@Valid @RequestBody CreateAccount createAccount,
-                                                             @RequestParam(value = "in-app", required = false, defaultValue = "false") boolean inAppIndicator) {
+    public DeferredResult<ResponseEntity<StatusResponse>> createEduIDAccount(HttpServletRequest request,
+                                                                             @Valid @RequestBody CreateAccount createAccount,
+                                                                             @RequestParam(value = "in-app", required = false, defaultValue = "false") boolean inAppIndicator) {
         String email = createAccount.getEmail();
-        verifyEmails(email);
+        return emailGuessingPreventor.potentialUserEmailGuess(request, () -> {
+            verifyEmails(email);
 
-        Optional<User> optionalUser = userRepository.findUserByEmail(emailGuessingPreventor.sanitizeEmail(email));
-        if (optionalUser.isPresent()) {
-            return ResponseEntity.status(HttpStatus.CONFLICT)
-                    .body(new StatusResponse(HttpStatus.CONFLICT.value()));
-        }
-        CreateInstitutionEduID institution = new CreateInstitutionEduID(hash(),
-                email, true);
-        User user = new User(
-                UUID.randomUUID().toString(),
-                institution.getEmail(),
-                createAccount.getGivenName(),
-                createAccount.getGivenName(),
-                createAccount.getFamilyName(),
-                this.schacHomeOrganization,
-                "en",
-                createAccount.getRelyingPartClientId(),
-                manage);
-        user.setCreateFromInstitutionKey(institution.getHash());
-        user.validate();
+            Optional<User> optionalUser = userRepository.findUserByEmail(emailGuessingPreventor.sanitizeEmail(email));
+            if (optionalUser.isPresent()) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(new StatusResponse(HttpStatus.CONFLICT.value()));
+            }
+            CreateInstitutionEduID institution = new CreateInstitutionEduID(hash(),
+                    email, true);
+            User user = new User(
+                    UUID.randomUUID().toString(),
+                    institution.getEmail(),
+                    createAccount.getGivenName(),
+                    createAccount.getGivenName(),
+                    createAccount.getFamilyName(),
+                    this.schacHomeOrganization,
+                    "en",
+                    createAccount.getRelyingPartClientId(),
+                    manage);
+            user.setCreateFromInstitutionKey(institution.getHash());
+            user.validate();
 
-        userRepository.save(user);
+            userRepository.save(user);
 
-        String inAppPath = inAppIndicator ? "/in-app" : "";
-        String linkUrl = String.format("%s/mobile/api/create-from-mobile-api%s", this.idpBaseUrl, inAppPath);
-        mailBox.sendAccountVerificationMobileAPI(user, institution.getHash(), linkUrl);
+            String inAppPath = inAppIndicator ? "/in-app" : "";
+            String linkUrl = String.format("%s/mobile/api/create-from-mobile-api%s", this.idpBaseUrl, inAppPath);
+            mailBox.sendAccountVerificationMobileAPI(user, institution.getHash(), linkUrl);
 
-        logWithContext(user, "create", "user", LOG, "Create user in mobile API");
+            logWithContext(user, "create", "user", LOG, "Create user in mobile API");
 
-        return ResponseEntity.status(HttpStatus.CREATED).body(new StatusResponse(HttpStatus.CREATED.value()));
+            return ResponseEntity.status(HttpStatus.CREATED).body(new StatusResponse(HttpStatus.CREATED.value()));
+        });
     }
 
     @Operation(summary = "Change names", description = "Update the givenName, chosenName and / or the familyName of the User")
@@ -674,6 +698,7 @@ public class UserController implements UserAuthentication {
                 .collect(Collectors.toList());
         user.setPublicKeyCredentials(publicKeyCredentials);
         userRepository.save(user);
+        userCredentialRepository.synchronize(user);
 
         logWithContext(user, "delete", "webauthn_key", LOG, "Deleted publicKeyCredential " + credential.get("name"));
 
@@ -757,19 +782,36 @@ public class UserController implements UserAuthentication {
 
     private ResponseEntity<UserResponse> returnUserResponse(User user) {
         Optional<Registration> optionalRegistration = registrationRepository.findRegistrationByUserId(user.getId());
-        UserResponse userResponse = new UserResponse(user, user.convertEduIdPerServiceProvider(this.servicesConfiguration), optionalRegistration, false, manage, issuers);
+        UserResponse userResponse = new UserResponse(user, user.convertEduIdPerServiceProvider(this.servicesConfiguration), optionalRegistration, false, manage, issuersById);
         return ResponseEntity.status(201).body(userResponse);
     }
 
     private ResponseEntity<UserResponse> userResponseRememberMe(User user) {
-        List<SamlAuthenticationRequest> samlAuthenticationRequests = authenticationRequestRepository.findByUserIdAndRememberMe(user.getId(), true);
+        reconcileLinkedAccounts(user);
+        boolean rememberMe = authenticationRequestRepository.existsByUserIdAndRememberMe(user.getId(), true);
+        return ResponseEntity.ok(userResponse(user, rememberMe));
+    }
+
+    private UserResponse userResponse(User user, boolean rememberMe) {
         Optional<Registration> optionalRegistration = registrationRepository.findRegistrationByUserId(user.getId());
+        return new UserResponse(user, user.convertEduIdPerServiceProvider(this.servicesConfiguration), optionalRegistration, rememberMe, manage, issuersById);
+    }
+
+    private void reconcileLinkedAccounts(User user) {
         //Run-time migrate inconsistent state for none of the (external)linkedAccounts being the preferred one - idempotent
         if (user.reconcileLinkedAccounts()) {
             userRepository.save(user);
         }
-        UserResponse userResponse = new UserResponse(user, user.convertEduIdPerServiceProvider(this.servicesConfiguration), optionalRegistration, !samlAuthenticationRequests.isEmpty(), manage, issuers);
-        return ResponseEntity.ok(userResponse);
+    }
+
+    private String userResponseETag(User user, boolean rememberMe) {
+        //Every write of the user stores a new version and finishing or deleting the tiqr registration is followed by a
+        //write of the user. The remember-me and the format for the mobile API are not part of the user document
+        return String.format("\"%s-%s-%s-%s\"",
+                user.getId(),
+                Long.toHexString(user.getVersion()),
+                rememberMe ? 1 : 0,
+                user.isMobileAuthentication() ? 1 : 0);
     }
 
     @GetMapping("sp/security/webauthn")
@@ -802,7 +844,7 @@ public class UserController implements UserAuthentication {
         PublicKeyCredentialCreationOptions request = publicKeyCredentialCreationOptions(this.relyingParty, user);
         String challenge = request.getChallenge().getBase64Url();
         //we need to store the challenge to retrieve it later on the way back
-        challengeRepository.save(new Challenge(token, challenge));
+        challengeStore.store(token, challenge, null);
         return ResponseEntity.status(200).body(request);
     }
 
@@ -838,10 +880,9 @@ public class UserController implements UserAuthentication {
 
         PublicKeyCredentialCreationOptions request = this.publicKeyCredentialCreationOptions(this.relyingParty, user);
         //Needed to succeed the validation
-        Challenge challenge = challengeRepository.findByToken(token)
+        Challenge challenge = challengeStore.consume(token)
                 .orElseThrow(() -> new ForbiddenException("Invalid token: " + token));
         this.restoreChallenge(request, ByteArray.fromBase64Url(challenge.getChallenge()));
-        challengeRepository.delete(challenge);
 
         RegistrationResult result = this.relyingParty.finishRegistration(FinishRegistrationOptions.builder()
                 .request(request)
@@ -852,6 +893,7 @@ public class UserController implements UserAuthentication {
 
         user.addPublicKeyCredential(keyId, publicKeyCose, name);
         userRepository.save(user);
+        userCredentialRepository.synchronize(user);
 
         logWithContext(user, "add", "webauthn_key", LOG, "Created publicKeyCredential " + name);
 
@@ -861,28 +903,28 @@ public class UserController implements UserAuthentication {
 
     @PostMapping("idp/security/webauthn/authentication")
     @Hidden
-    public ResponseEntity idpWebAuthnStartAuthentication(@RequestBody Map<String, String> body) {
+    public DeferredResult<ResponseEntity> idpWebAuthnStartAuthentication(HttpServletRequest servletRequest, @RequestBody Map<String, String> body) {
         String email = body.get("email");
-        verifyEmails(email);
+        return emailGuessingPreventor.potentialUserEmailGuess(servletRequest, () -> {
+            verifyEmails(email);
 
-        Optional<User> optionalUser = userRepository.findUserByEmail(emailGuessingPreventor.sanitizeEmail(email));
-        if (!optionalUser.isPresent()) {
-            return return404();
-        }
-        User user = optionalUser.get();
+            Optional<User> optionalUser = userRepository.findUserByEmail(emailGuessingPreventor.sanitizeEmail(email));
+            if (!optionalUser.isPresent()) {
+                return return404();
+            }
+            User user = optionalUser.get();
 
-        AssertionRequest request = this.relyingParty.startAssertion(StartAssertionOptions.builder()
-                .username(Optional.of(user.getEmail()))
-                .build());
+            AssertionRequest request = this.relyingParty.startAssertion(StartAssertionOptions.builder()
+                    .username(Optional.of(user.getEmail()))
+                    .build());
 
-        String authenticationRequestId = body.get("authenticationRequestId");
-        String challenge = request.getPublicKeyCredentialRequestOptions().getChallenge().getBase64Url();
-        // The user might have started webauthn already (and cancelled it). Need to prevent duplicates
-        challengeRepository.findByToken(authenticationRequestId)
-                .ifPresent(existingChallenge -> challengeRepository.delete(existingChallenge));
-        challengeRepository.save(new Challenge(authenticationRequestId, challenge, user.getEmail()));
+            String authenticationRequestId = body.get("authenticationRequestId");
+            String challenge = request.getPublicKeyCredentialRequestOptions().getChallenge().getBase64Url();
+            // The user might have started webauthn already (and cancelled it), the store replaces the existing challenge
+            challengeStore.store(authenticationRequestId, challenge, user.getEmail());
 
-        return ResponseEntity.status(200).body(request);
+            return ResponseEntity.status(200).body(request);
+        });
     }
 
     @PutMapping("idp/security/webauthn/authentication")
@@ -895,7 +937,8 @@ public class UserController implements UserAuthentication {
         PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> pkc =
                 PublicKeyCredential.parseAssertionResponseJson((String) body.get("credentials"));
 
-        Challenge challenge = challengeRepository.findByToken(authenticationRequestId)
+        //Challenges are single-use, a failed assertion requires a new challenge
+        Challenge challenge = challengeStore.consume(authenticationRequestId)
                 .orElseThrow(() -> new ForbiddenException("Challenge not found"));
         AssertionRequest assertionRequest = this.relyingParty.startAssertion(StartAssertionOptions.builder()
                 .username(Optional.of(challenge.getEmail()))
@@ -916,7 +959,6 @@ public class UserController implements UserAuthentication {
             }
             throw new ForbiddenException("Unsuccessfull SAML authentication ");
         }
-        challengeRepository.delete(challenge);
 
         Optional<User> optionalUser = findUserStoreLanguage(challenge.getEmail());
         if (!optionalUser.isPresent()) {
@@ -1007,6 +1049,8 @@ public class UserController implements UserAuthentication {
     public ResponseEntity<StatusResponse> deleteUser(Authentication authentication, HttpServletRequest request) {
         User user = userFromAuthentication(authentication);
         userRepository.delete(user);
+        userCredentialRepository.remove(List.of(user));
+        shibbolethPrincipalCache.evict(List.of(user));
 
         logWithContext(user, "delete", "account", LOG, "Delete account");
 
@@ -1042,19 +1086,11 @@ public class UserController implements UserAuthentication {
             throw new ForbiddenException("User has already linked-accounts: " + user.getEmail());
         }
 
-        String code = VerificationCodeGenerator.generateControlCode();
-        //Very small chance, but better be safe than sorry (User#ControlCode#code is indexed)
-        while (userRepository.findByControlCode_Code(code).isPresent()) {
-            code = VerificationCodeGenerator.generateControlCode();
-        }
-        controlCode.setCode(code);
         controlCode.setCreatedAt(System.currentTimeMillis());
-
-        LOG.info(String.format("User %s updated with controlCode %s", user.getEmail(), controlCode));
-
         user.setControlCode(controlCode);
+        saveWithUniqueControlCode(user, controlCode);
 
-        userRepository.save(user);
+        LOG.info(String.format("User %s updated with controlCode %s", user.getEmail(), controlCode));
 
         mailBox.sendServiceDeskControlCode(user, controlCode);
 
@@ -1077,6 +1113,22 @@ public class UserController implements UserAuthentication {
         return userResponseRememberMe(user);
     }
 
+    private void saveWithUniqueControlCode(User user, ControlCode controlCode) {
+        //The code has a unique index, so the - small - chance of a code already in use is detected by the save itself
+        for (int attempt = 1; ; attempt++) {
+            controlCode.setCode(VerificationCodeGenerator.generateControlCode());
+            try {
+                userRepository.save(user);
+                return;
+            } catch (DuplicateKeyException e) {
+                if (attempt == CONTROL_CODE_MAX_ATTEMPTS) {
+                    throw e;
+                }
+                LOG.info(String.format("ControlCode %s already in use, attempt %s", controlCode.getCode(), attempt));
+            }
+        }
+    }
+
     private ResponseEntity<StatusResponse> doLogout(HttpServletRequest request) {
         HttpSession session = request.getSession();
         session.invalidate();
@@ -1129,7 +1181,6 @@ public class UserController implements UserAuthentication {
 
     private void verifyEmails(String email) {
         this.emailDomainGuard.enforceIsAllowed(email);
-        this.emailGuessingPreventor.potentialUserEmailGuess();
         this.disposableEmailProviders.verifyDisposableEmailProviders(email);
     }
 
@@ -1,18 +1,23 @@
 package myconext.cron;
 
+import myconext.mail.BulkMailing;
 import myconext.mail.MailBox;
 import myconext.model.User;
 import myconext.model.UserInactivity;
 import myconext.repository.UserRepository;
+import myconext.shibboleth.ShibbolethPrincipalCache;
+import myconext.webauthn.UserCredentialRepository;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.text.DateFormat;
 import java.util.*;
+import java.util.function.LongFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -26,7 +31,10 @@ public class InactivityMail {
     private static final Log LOG = LogFactory.getLog(InactivityMail.class);
 
     private final MailBox mailBox;
+    private final BulkMailing bulkMailing;
     private final UserRepository userRepository;
+    private final UserCredentialRepository userCredentialRepository;
+    private final ShibbolethPrincipalCache shibbolethPrincipalCache;
     private final boolean mailInactivityMails;
     private final boolean cronJobResponsible;
     private final DateFormat dateFormatUS;
@@ -35,12 +43,18 @@ public class InactivityMail {
 
     @Autowired
     public InactivityMail(MailBox mailBox,
+                          BulkMailing bulkMailing,
                           UserRepository userRepository,
+                          UserCredentialRepository userCredentialRepository,
+                          ShibbolethPrincipalCache shibbolethPrincipalCache,
                           @Value("${cron.node-cron-job-responsible}") boolean cronJobResponsible,
                           @Value("${feature.mail_inactivity_mails}") boolean mailInactivityMails,
                           @Value("${cron.dry-run-email}") boolean dryRunEmail) {
         this.mailBox = mailBox;
+        this.bulkMailing = bulkMailing;
         this.userRepository = userRepository;
+        this.userCredentialRepository = userCredentialRepository;
+        this.shibbolethPrincipalCache = shibbolethPrincipalCache;
         this.cronJobResponsible = cronJobResponsible;
         this.mailInactivityMails = mailInactivityMails;
         this.dryRunEmail = dryRunEmail;
@@ -70,9 +84,9 @@ public class InactivityMail {
         long nowInMillis = System.currentTimeMillis();
         long fiveYearsInMillis = 5 * 365 * ONE_DAY_IN_MILLIS;
 
-        long lastLoginBefore = nowInMillis - (ONE_DAY_IN_MILLIS * userInactivity.getInactivityDays());
-        List<User> users = userRepository.findByLastLoginBeforeAndUserInactivityIn(lastLoginBefore,
-                this.userInactivitiesWithNullElement(userInactivity.getPreviousUserInactivity()));
+        LongFunction<Criteria> recipientsAt = referenceTime -> Criteria
+                .where("lastLogin").lt(referenceTime - (ONE_DAY_IN_MILLIS * userInactivity.getInactivityDays()))
+                .and("userInactivity").in(this.userInactivitiesWithNullElement(userInactivity.getPreviousUserInactivity()));
 
         Map<String, String> localeVariables = new HashMap<>();
         //This is the future date when the user will be deleted based on the inactivityDays of the userInactivity
@@ -84,20 +98,22 @@ public class InactivityMail {
         localeVariables.put("account_delete_date_en", dateFormatUS.format(date));
         localeVariables.put("account_delete_date_nl", dateFormatNL.format(date));
 
-        if (!dryRunEmail) {
-            users.forEach(user -> {
-                mailBox.sendUserInactivityMail(user, localeVariables,
-                        userInactivity.equals(YEAR_1_INTERVAL) || userInactivity.equals(YEAR_3_INTERVAL));
-                user.setUserInactivity(userInactivity);
-                //Ensure users who receive their last warning are not deleted the next run, but after one week
-                if (userInactivity.equals(WEEK_1_BEFORE_5_YEARS)) {
-                    user.setLastLogin(nowInMillis - (WEEK_1_BEFORE_5_YEARS.getInactivityDays() * ONE_DAY_IN_MILLIS));
-                }
-                userRepository.save(user);
-            });
-        }
+        boolean firstTwoWarnings = userInactivity.equals(YEAR_1_INTERVAL) || userInactivity.equals(YEAR_3_INTERVAL);
+        long mailed = dryRunEmail ? bulkMailing.count(recipientsAt.apply(nowInMillis)) : bulkMailing.run(
+                "inactivity_mail_" + userInactivity.name().toLowerCase(),
+                nowInMillis,
+                recipientsAt,
+                user -> mailBox.renderUserInactivityMail(user, localeVariables, firstTwoWarnings),
+                user -> {
+                    user.setUserInactivity(userInactivity);
+                    //Ensure users who receive their last warning are not deleted the next run, but after one week
+                    if (userInactivity.equals(WEEK_1_BEFORE_5_YEARS)) {
+                        user.setLastLogin(nowInMillis - (WEEK_1_BEFORE_5_YEARS.getInactivityDays() * ONE_DAY_IN_MILLIS));
+                    }
+                    userRepository.save(user);
+                });
         LOG.info(String.format("Mailed %s users who has been inactive for %s period in for %s ms, dry run: %s",
-                users.size(), userInactivity, System.currentTimeMillis() - nowInMillis, dryRunEmail));
+                mailed, userInactivity, System.currentTimeMillis() - nowInMillis, dryRunEmail));
     }
 
     private void doDeleteInactiveUsers() {
@@ -107,6 +123,8 @@ public class InactivityMail {
         List<User> users = userRepository.findByLastLoginBeforeAndUserInactivityIn(lastLoginBefore, List.of(WEEK_1_BEFORE_5_YEARS));
         if (!dryRunEmail) {
             userRepository.deleteAll(users);
+            userCredentialRepository.remove(users);
+            shibbolethPrincipalCache.evict(users);
         }
         LOG.info(String.format("Deleted %s users (%s) who has been inactive for 5 years in for %s ms, dry-run: %s",
                 users.size(), users.stream().map(User::getEmail).collect(Collectors.joining(", ")),
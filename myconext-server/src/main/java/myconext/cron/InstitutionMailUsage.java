@@ -1,13 +1,13 @@
 package myconext.cron;
 
+import myconext.mail.BulkMailing;
 import myconext.mail.MailBox;
 import myconext.manage.Manage;
-import myconext.model.User;
-import myconext.repository.UserRepository;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -20,7 +20,7 @@ public class InstitutionMailUsage {
 
     private final Manage manage;
     private final MailBox mailBox;
-    private final UserRepository userRepository;
+    private final BulkMailing bulkMailing;
     private final boolean mailInstitutionMailUsage;
     private final boolean cronJobResponsible;
     private final boolean dryRunEmail;
@@ -28,13 +28,13 @@ public class InstitutionMailUsage {
     @Autowired
     public InstitutionMailUsage(Manage manage,
                                 MailBox mailBox,
-                                UserRepository userRepository,
+                                BulkMailing bulkMailing,
                                 @Value("${cron.node-cron-job-responsible}") boolean cronJobResponsible,
                                 @Value("${feature.mail_institution_mail_usage}") boolean mailInstitutionMailUsage,
                                 @Value("${cron.dry-run-email}") boolean dryRunEmail) {
         this.manage = manage;
         this.mailBox = mailBox;
-        this.userRepository = userRepository;
+        this.bulkMailing = bulkMailing;
         this.cronJobResponsible = cronJobResponsible;
         this.mailInstitutionMailUsage = mailInstitutionMailUsage;
         this.dryRunEmail = dryRunEmail;
@@ -54,13 +54,17 @@ public class InstitutionMailUsage {
                     .map(domain -> domain.replace(".", "\\."))
                     .toList();
             String regex = "@" + String.join("|", queryList) + "$";
-            List<User> users = userRepository.findByEmailDomain(regex);
+            Criteria recipients = Criteria.where("email").regex(regex, "i");
 
-            if (!dryRunEmail) {
-                users.forEach(mailBox::sendInstitutionMailWarning);
-            }
+            long mailed = dryRunEmail ? bulkMailing.count(recipients) : bulkMailing.run(
+                    "institution_mail_usage",
+                    start,
+                    referenceTime -> recipients,
+                    mailBox::renderInstitutionMailWarning,
+                    user -> {
+                    });
             LOG.info(String.format("Mailed %s users who use their institution domain in %s ms, dry-run: %s",
-                    users.size(), System.currentTimeMillis() - start, dryRunEmail));
+                    mailed, System.currentTimeMillis() - start, dryRunEmail));
         } catch (Exception e) {
             LOG.error("Error in mailUsersWithInstitutionMail", e);
         }
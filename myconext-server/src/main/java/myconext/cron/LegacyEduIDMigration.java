@@ -0,0 +1,104 @@
+package myconext.cron;
+
+import myconext.manage.Manage;
+import myconext.model.User;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * One-shot background migration of the old eduID's - with only the obsolete properties - to eduID's with services.
+ * This used to be done for all eduID's of the user during every login, with a call to Manage for each old eduID.
+ * The job runs once after startup, when Manage has loaded the service providers, and pages through the users with
+ * old eduID's. The eduID's are written with a conditional update on the version of the user - which is re-stamped -
+ * so a concurrent change is not overwritten; a user skipped because of a concurrent change is migrated after the
+ * next startup.
+ */
+@Component
+public class LegacyEduIDMigration {
+
+    private static final Log LOG = LogFactory.getLog(LegacyEduIDMigration.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final Manage manage;
+    private final boolean cronJobResponsible;
+    private final int pageSize;
+
+    @Autowired
+    public LegacyEduIDMigration(MongoTemplate mongoTemplate,
+                                Manage manage,
+                                @Value("${cron.node-cron-job-responsible}") boolean cronJobResponsible,
+                                @Value("${cron.legacy-eduid-migration-page-size}") int pageSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.manage = manage;
+        this.cronJobResponsible = cronJobResponsible;
+        this.pageSize = pageSize;
+    }
+
+    //Never repeated, the fixed delay only prevents a second run
+    @Scheduled(initialDelayString = "${cron.legacy-eduid-migration-initial-delay-milliseconds}", fixedDelay = Long.MAX_VALUE)
+    public void scheduledMigration() {
+        if (!cronJobResponsible) {
+            return;
+        }
+        try {
+            migrate();
+        } catch (Exception e) {
+            LOG.error("Error in LegacyEduIDMigration", e);
+        }
+    }
+
+    public long migrate() {
+        LOG.info("Starting LegacyEduIDMigration job");
+        long start = System.currentTimeMillis();
+        long migrated = 0;
+        String lastUserId = null;
+        List<User> users;
+        while (!(users = mongoTemplate.find(page(lastUserId), User.class)).isEmpty()) {
+            for (User user : users) {
+                if (user.migrateLegacyEduIDs(manage)) {
+                    Query unchanged = Query.query(new Criteria().andOperator(
+                            Criteria.where("_id").is(user.getId()),
+                            unchangedVersion(user.getVersion())));
+                    Update update = new Update()
+                            .set("eduIDS", user.getEduIDS())
+                            .set("version", User.newVersion());
+                    migrated += mongoTemplate.updateFirst(unchanged, update, User.class).getModifiedCount();
+                }
+            }
+            lastUserId = users.get(users.size() - 1).getId();
+        }
+        LOG.info(String.format("Migrated legacy eduID's of %s users in %s ms", migrated, System.currentTimeMillis() - start));
+        return migrated;
+    }
+
+    private Query page(String lastUserId) {
+        Criteria legacyEduID = Criteria.where("eduIDS").elemMatch(new Criteria().andOperator(
+                Criteria.where("serviceProviderEntityId").ne(null),
+                new Criteria().orOperator(
+                        Criteria.where("services").size(0),
+                        Criteria.where("services").exists(false))));
+        Query query = Query.query(lastUserId == null ? legacyEduID :
+                new Criteria().andOperator(legacyEduID, Criteria.where("_id").gt(lastUserId)));
+        query.fields().include("eduIDS", "version");
+        return query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(pageSize);
+    }
+
+    private Criteria unchangedVersion(long version) {
+        //Users not saved since the version was introduced have no version, which is read as 0
+        return version == 0L ? new Criteria().orOperator(
+                Criteria.where("version").is(0L),
+                Criteria.where("version").exists(false)) :
+                Criteria.where("version").is(version);
+    }
+}
@@ -3,6 +3,8 @@ package myconext.cron;
 
 import myconext.model.*;
 import myconext.repository.*;
+import myconext.shibboleth.ShibbolethPrincipalCache;
+import myconext.webauthn.UserCredentialRepository;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,27 +27,30 @@ public class ResourceCleaner {
 
     private final AuthenticationRequestRepository authenticationRequestRepository;
     private final UserRepository userRepository;
+    private final UserCredentialRepository userCredentialRepository;
+    private final ShibbolethPrincipalCache shibbolethPrincipalCache;
     private final PasswordResetHashRepository passwordResetHashRepository;
     private final ChangeEmailHashRepository changeEmailHashRepository;
     private final boolean cronJobResponsible;
-    private final EmailsSendRepository emailsSendRepository;
     private final RequestInstitutionEduIDRepository requestInstitutionEduIDRepository;
     private final MobileLinkAccountRequestRepository mobileLinkAccountRequestRepository;
 
     @Autowired
     public ResourceCleaner(AuthenticationRequestRepository authenticationRequestRepository,
                            UserRepository userRepository,
+                           UserCredentialRepository userCredentialRepository,
+                           ShibbolethPrincipalCache shibbolethPrincipalCache,
                            PasswordResetHashRepository passwordResetHashRepository,
                            ChangeEmailHashRepository changeEmailHashRepository,
-                           EmailsSendRepository emailsSendRepository,
                            RequestInstitutionEduIDRepository requestInstitutionEduIDRepository,
                            MobileLinkAccountRequestRepository mobileLinkAccountRequestRepository,
                            @Value("${cron.node-cron-job-responsible}") boolean cronJobResponsible) {
         this.authenticationRequestRepository = authenticationRequestRepository;
         this.userRepository = userRepository;
+        this.userCredentialRepository = userCredentialRepository;
+        this.shibbolethPrincipalCache = shibbolethPrincipalCache;
         this.passwordResetHashRepository = passwordResetHashRepository;
         this.changeEmailHashRepository = changeEmailHashRepository;
-        this.emailsSendRepository = emailsSendRepository;
         this.requestInstitutionEduIDRepository = requestInstitutionEduIDRepository;
         this.mobileLinkAccountRequestRepository = mobileLinkAccountRequestRepository;
         this.cronJobResponsible = cronJobResponsible;
@@ -65,9 +70,6 @@ public class ResourceCleaner {
         info(RequestInstitutionEduID.class, requestInstitutionEduIDRepository.deleteByExpiresInBefore(now));
         info(MobileLinkAccountRequest.class, mobileLinkAccountRequestRepository.deleteByExpiresInBefore(now));
 
-        Date seconds16Ago = Date.from(nowInstant.minus(16, ChronoUnit.SECONDS));
-        info(EmailsSend.class, emailsSendRepository.deleteBySendAtBefore(seconds16Ago));
-
         List<User> users = userRepository.findByLinkedAccounts_ExpiresAtBefore(now);
         users.forEach(user -> {
             List<LinkedAccount> linkedAccounts = user.getLinkedAccounts().stream()
@@ -95,6 +97,8 @@ public class ResourceCleaner {
                     "Removing new users that have not finished registration last 24 hours %s",
                     newUsersExpired.stream().map(User::getEmail).collect(Collectors.joining(", "))));
             userRepository.deleteAll(newUsersExpired);
+            userCredentialRepository.remove(newUsersExpired);
+            shibbolethPrincipalCache.evict(newUsersExpired);
         }
     }
 
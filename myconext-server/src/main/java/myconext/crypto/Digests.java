@@ -0,0 +1,46 @@
+package myconext.crypto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Per-thread {@link MessageDigest} engines. Looking up a digest with {@link MessageDigest#getInstance(String)} walks
+ * the security providers on every call, while a digest instance is not thread-safe. Every thread therefore keeps its
+ * own instance, which is reset before it is handed out.
+ */
+public class Digests {
+
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> messageDigest("SHA-256"));
+    private static final ThreadLocal<MessageDigest> sha512 = ThreadLocal.withInitial(() -> messageDigest("SHA-512"));
+
+    private Digests() {
+    }
+
+    /**
+     * The digest must not escape the current thread
+     */
+    public static MessageDigest sha256() {
+        return reset(sha256.get());
+    }
+
+    /**
+     * The digest must not escape the current thread
+     */
+    public static MessageDigest sha512() {
+        return reset(sha512.get());
+    }
+
+    private static MessageDigest reset(MessageDigest messageDigest) {
+        //A previous caller might have failed halfway
+        messageDigest.reset();
+        return messageDigest;
+    }
+
+    private static MessageDigest messageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package myconext.crypto;
 
-import lombok.SneakyThrows;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
@@ -83,9 +82,8 @@ public class KeyGenerator {
         return result;
     }
 
-    @SneakyThrows
     public static String oneWayHash(String s) {
-        return new String(Hex.encode(MessageDigest.getInstance("SHA-256").digest(s.getBytes())));
+        return new String(Hex.encode(Digests.sha256().digest(s.getBytes())));
     }
 
 }
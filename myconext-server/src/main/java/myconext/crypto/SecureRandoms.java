@@ -0,0 +1,22 @@
+package myconext.crypto;
+
+import java.security.SecureRandom;
+
+/**
+ * Per-thread {@link SecureRandom} instances. A single shared instance is thread-safe, but the default implementations
+ * synchronize on every call and become a point of contention when many requests generate tokens or codes.
+ */
+public class SecureRandoms {
+
+    private static final ThreadLocal<SecureRandom> secureRandom = ThreadLocal.withInitial(SecureRandom::new);
+
+    private SecureRandoms() {
+    }
+
+    /**
+     * The random must not escape the current thread
+     */
+    public static SecureRandom current() {
+        return secureRandom.get();
+    }
+}
@@ -65,19 +65,14 @@ public class APIController implements HasUserRepository {
 
         LOG.info(String.format("Endpoint '/eduid/ called by authentication %s", clientId));
 
-        //Need to be backward compatible
-        Optional<User> optionalUser = userRepository
-                .findByEduIDS_serviceProviderEntityId(clientId)
-                .or(() -> userRepository.findByEduIDS_Services_EntityId(clientId));
+        //Need to be backward compatible, the projected user only contains the matching eduID
+        Optional<User> optionalUser = userRepository.findEduIDByServiceProviderEntityId(clientId);
         if (optionalUser.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
-        User user = optionalUser.get();
-        List<String> eduIDs = user.getEduIDS().stream()
-                .filter(eduID -> clientId.equals(eduID.getServiceProviderEntityId()) ||
-                        eduID.getServices().stream().anyMatch(service -> clientId.equals(service.getEntityId())))
-                .map(EduID::getValue).collect(Collectors.toList());
-        Map<String, String> results = eduIDs.isEmpty() ? new HashMap<>() : Collections.singletonMap("eduid", eduIDs.get(0));
+        List<EduID> eduIDs = optionalUser.get().getEduIDS();
+        Map<String, String> results = CollectionUtils.isEmpty(eduIDs) ? new HashMap<>() :
+                Collections.singletonMap("eduid", eduIDs.get(0).getValue());
 
         LOG.info(String.format("Endpoint '/eduid/ results %s for authentication %s", results, clientId));
 
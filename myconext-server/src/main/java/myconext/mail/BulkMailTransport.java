@@ -0,0 +1,116 @@
+package myconext.mail;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Sends pre-rendered bulk mailings (e.g. the inactivity and nudge mails from the cron jobs) over a kept-open SMTP
+ * connection instead of opening a new connection for every mail. After messages-per-connection mails the connection
+ * is recycled and the overall send rate is throttled to messages-per-second. Mails that can not be sent are handed
+ * over to the {@link MailOutbox}, which retries them with backoff. The caller is notified of every mail as soon as it
+ * is handed over, either to the SMTP server or to the outbox.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class BulkMailTransport {
+
+    private static final Log LOG = LogFactory.getLog(BulkMailTransport.class);
+
+    private final JavaMailSenderImpl mailSender;
+    private final MailOutbox mailOutbox;
+    private final int messagesPerConnection;
+    private final RateLimiter rateLimiter;
+
+    public BulkMailTransport(JavaMailSenderImpl mailSender,
+                             MailOutbox mailOutbox,
+                             int messagesPerConnection,
+                             double messagesPerSecond) {
+        this.mailSender = mailSender;
+        this.mailOutbox = mailOutbox;
+        this.messagesPerConnection = messagesPerConnection;
+        this.rateLimiter = RateLimiter.create(messagesPerSecond);
+    }
+
+    /**
+     * Send all mails and return the number of mails sent directly, the others are deferred to the outbox. The
+     * handedOver callback is invoked for every mail that was either sent or deferred.
+     */
+    public int send(List<RenderedMail> renderedMails, Consumer<RenderedMail> handedOver) {
+        long start = System.currentTimeMillis();
+        int sent = Lists.partition(renderedMails, messagesPerConnection).stream()
+                .mapToInt(partition -> sendOverOneConnection(partition, handedOver))
+                .sum();
+        LOG.info(String.format("Sent %s of %s bulk mails in %s ms, %s deferred to the outbox",
+                sent, renderedMails.size(), System.currentTimeMillis() - start, renderedMails.size() - sent));
+        return sent;
+    }
+
+    private int sendOverOneConnection(List<RenderedMail> renderedMails, Consumer<RenderedMail> handedOver) {
+        int sent = 0;
+        Transport transport = null;
+        try {
+            for (RenderedMail renderedMail : renderedMails) {
+                rateLimiter.acquire();
+                try {
+                    if (transport == null || !transport.isConnected()) {
+                        closeQuietly(transport);
+                        transport = connect();
+                    }
+                    MimeMessage mimeMessage = mailOutbox.createMimeMessage(renderedMail.getTo(), renderedMail.getSubject(),
+                            renderedMail.getHtml(), renderedMail.getText());
+                    mimeMessage.setSentDate(new Date());
+                    mimeMessage.saveChanges();
+                    transport.sendMessage(mimeMessage, mimeMessage.getAllRecipients());
+                    sent++;
+                } catch (MessagingException | RuntimeException e) {
+                    LOG.warn(String.format("Error sending bulk %s mail to %s, deferring to the outbox",
+                            renderedMail.getTemplateName(), renderedMail.getTo()), e);
+                    if (!defer(renderedMail)) {
+                        continue;
+                    }
+                }
+                handedOver.accept(renderedMail);
+            }
+        } finally {
+            closeQuietly(transport);
+        }
+        return sent;
+    }
+
+    private Transport connect() throws MessagingException {
+        Transport transport = mailSender.getSession().getTransport(mailSender.getProtocol() != null ? mailSender.getProtocol() : "smtp");
+        transport.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(), mailSender.getPassword());
+        return transport;
+    }
+
+    private boolean defer(RenderedMail renderedMail) {
+        try {
+            mailOutbox.enqueue(renderedMail);
+            return true;
+        } catch (RuntimeException e) {
+            //We don't want to stop batch mailings
+            LOG.error("Error deferring bulk mail to " + renderedMail.getTo(), e);
+            return false;
+        }
+    }
+
+    private void closeQuietly(Transport transport) {
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            LOG.debug("Error closing SMTP transport", e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package myconext.mail;
+
+import myconext.model.BulkMailingJob;
+import myconext.model.BulkMailingJobStatus;
+import myconext.model.User;
+import myconext.repository.BulkMailingJobRepository;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * Runs the bulk mailings of the cron jobs. The recipients are read in pages ordered by _id, each page is rendered in
+ * parallel and sent throttled by the {@link BulkMailTransport}. The progress is stored per job after every page, so a
+ * job that was interrupted by a restart or failed continues after the last processed user in the next run, as long as
+ * the recipients criteria did not change.
+ */
+public class BulkMailing {
+
+    private static final Log LOG = LogFactory.getLog(BulkMailing.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final BulkMailingJobRepository bulkMailingJobRepository;
+    private final BulkMailTransport bulkMailTransport;
+    private final int pageSize;
+    private final ForkJoinPool renderPool;
+
+    public BulkMailing(MongoTemplate mongoTemplate,
+                       BulkMailingJobRepository bulkMailingJobRepository,
+                       BulkMailTransport bulkMailTransport,
+                       int pageSize,
+                       int renderParallelism) {
+        this.mongoTemplate = mongoTemplate;
+        this.bulkMailingJobRepository = bulkMailingJobRepository;
+        this.bulkMailTransport = bulkMailTransport;
+        this.pageSize = pageSize;
+        this.renderPool = new ForkJoinPool(renderParallelism);
+    }
+
+    public long count(Criteria recipients) {
+        return mongoTemplate.count(Query.query(recipients), User.class);
+    }
+
+    /**
+     * Mail all users matching the recipients criteria and return the number of users processed in this run. The
+     * recipients criteria are created for the reference time of the job, an interrupted or failed job is resumed after
+     * the last processed user with the reference time of its first run. The afterSend callback is invoked for a user as
+     * soon as the mail of that user has been handed over. A user whose mail can not be rendered, handed over or marked
+     * is counted as an error and does not stop the mailing.
+     */
+    public long run(String jobName,
+                    long referenceTime,
+                    LongFunction<Criteria> recipientsAt,
+                    Function<User, RenderedMail> renderer,
+                    Consumer<User> afterSend) {
+        BulkMailingJob job = bulkMailingJobRepository.findById(jobName)
+                .filter(existingJob -> existingJob.getStatus() != BulkMailingJobStatus.COMPLETED)
+                //The other parameters of the criteria, e.g. the domain names, may have changed since the interrupted run
+                .filter(existingJob -> fingerprint(recipientsAt.apply(existingJob.getReferenceTime()))
+                        .equals(existingJob.getRecipientsFingerprint()))
+                .map(existingJob -> {
+                    LOG.info(String.format("Resuming %s bulk mailing %s after %s processed users",
+                            existingJob.getStatus().name().toLowerCase(), jobName, existingJob.getProcessed()));
+                    Criteria recipients = recipientsAt.apply(existingJob.getReferenceTime());
+                    existingJob.resume(mongoTemplate.count(remaining(recipients, existingJob.getLastUserId()), User.class));
+                    return existingJob;
+                })
+                .orElseGet(() -> {
+                    Criteria recipients = recipientsAt.apply(referenceTime);
+                    return new BulkMailingJob(jobName, fingerprint(recipients), referenceTime, count(recipients));
+                });
+        Criteria recipients = recipientsAt.apply(job.getReferenceTime());
+        bulkMailingJobRepository.save(job);
+
+        long processedAtStart = job.getProcessed();
+        boolean completed = false;
+        try {
+            List<User> users;
+            while (!(users = mongoTemplate.find(page(recipients, job.getLastUserId()), User.class)).isEmpty()) {
+                AtomicInteger errors = new AtomicInteger();
+                Map<RenderedMail, User> usersByMail = render(users, renderer, errors);
+                AtomicInteger handedOver = new AtomicInteger();
+                int sent = bulkMailTransport.send(new ArrayList<>(usersByMail.keySet()), renderedMail -> {
+                    handedOver.incrementAndGet();
+                    User user = usersByMail.get(renderedMail);
+                    try {
+                        afterSend.accept(user);
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                        LOG.error(String.format("Error marking user %s after bulk mailing %s", user.getEmail(), jobName), e);
+                    }
+                });
+                errors.addAndGet(usersByMail.size() - handedOver.get());
+                job.progress(users.size(), sent, errors.get(), users.getLast().getId());
+                bulkMailingJobRepository.save(job);
+            }
+            completed = true;
+        } finally {
+            if (completed) {
+                job.complete();
+            } else {
+                job.fail();
+            }
+            bulkMailingJobRepository.save(job);
+        }
+
+        long processed = job.getProcessed() - processedAtStart;
+        LOG.info(String.format("Finished bulk mailing %s, processed %s users with %s errors at %.2f users per second",
+                jobName, processed, job.getErrors(), job.throughput()));
+        return processed;
+    }
+
+    private Query page(Criteria recipients, String lastUserId) {
+        return remaining(recipients, lastUserId).with(Sort.by(Sort.Direction.ASC, "_id")).limit(pageSize);
+    }
+
+    private Query remaining(Criteria recipients, String lastUserId) {
+        Query query = Query.query(recipients);
+        if (lastUserId != null) {
+            query.addCriteria(Criteria.where("_id").gt(lastUserId));
+        }
+        return query;
+    }
+
+    private Map<RenderedMail, User> render(List<User> users, Function<User, RenderedMail> renderer, AtomicInteger errors) {
+        List<RenderedMail> renderedMails;
+        try {
+            renderedMails = renderPool.submit(() -> users.parallelStream()
+                    .map(user -> renderQuietly(user, renderer, errors))
+                    .toList()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        //RenderedMail has identity equality and the mails are sent in the order of the users
+        Map<RenderedMail, User> usersByMail = new LinkedHashMap<>();
+        for (int i = 0; i < users.size(); i++) {
+            if (renderedMails.get(i) != null) {
+                usersByMail.put(renderedMails.get(i), users.get(i));
+            }
+        }
+        return usersByMail;
+    }
+
+    private RenderedMail renderQuietly(User user, Function<User, RenderedMail> renderer, AtomicInteger errors) {
+        try {
+            return renderer.apply(user);
+        } catch (RuntimeException e) {
+            //We don't want to stop batch mailings
+            errors.incrementAndGet();
+            LOG.error(String.format("Error rendering bulk mail for user %s", user.getEmail()), e);
+            return null;
+        }
+    }
+
+    static String fingerprint(Criteria recipients) {
+        return DigestUtils.md5DigestAsHex(recipients.getCriteriaObject().toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,47 @@
+package myconext.mail;
+
+import myconext.model.BulkMailingJob;
+import myconext.repository.BulkMailingJobRepository;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Progress of the bulk mailings exposed as actuator endpoint /internal/bulkmailing.
+ */
+@Endpoint(id = "bulkmailing")
+public class BulkMailingEndpoint {
+
+    private final BulkMailingJobRepository bulkMailingJobRepository;
+
+    public BulkMailingEndpoint(BulkMailingJobRepository bulkMailingJobRepository) {
+        this.bulkMailingJobRepository = bulkMailingJobRepository;
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> jobs() {
+        return bulkMailingJobRepository.findAll().stream()
+                .map(this::job)
+                .toList();
+    }
+
+    private Map<String, Object> job(BulkMailingJob job) {
+        //LinkedHashMap for a stable ordering and because the ETA can be null
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", job.getName());
+        result.put("status", job.getStatus());
+        result.put("total", job.getTotal());
+        result.put("processed", job.getProcessed());
+        result.put("sent", job.getSent());
+        result.put("errors", job.getErrors());
+        result.put("startedAt", job.getStartedAt());
+        result.put("updatedAt", job.getUpdatedAt());
+        result.put("finishedAt", job.getFinishedAt());
+        result.put("usersPerSecond", Math.round(job.throughput() * 100) / 100D);
+        result.put("estimatedSecondsRemaining", job.estimatedSecondsRemaining());
+        return result;
+    }
+}
@@ -0,0 +1,89 @@
+package myconext.mail;
+
+import myconext.model.EmailsSend;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Allows one mail per normalized email address per window of email_spam_threshold_seconds when
+ * feature.email_spam_guard is enabled, otherwise no queries are done at all. The window is claimed before the mail is
+ * handed over to the outbox with one conditional upsert on the unique email index of emails_send: the upsert only
+ * matches a record of which the window has passed, so a record within the window causes a duplicate key and the mail
+ * is rejected. Mails claimed by this node are rejected locally without a round trip. The records expire by the TTL
+ * index on expiresAt.
+ */
+public class EmailSpamGuard {
+
+    private static final int MAX_LOCAL_ENTRIES = 10_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final long thresholdMillis;
+    private final boolean enabled;
+    private final Map<String, Long> localWindows = new ConcurrentHashMap<>();
+
+    public EmailSpamGuard(MongoTemplate mongoTemplate, long thresholdSeconds, boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.thresholdMillis = thresholdSeconds * 1000L;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Start the window for this email or throw an IllegalArgumentException if a mail to this email was already sent
+     * within the window
+     */
+    public void claim(String email) {
+        if (!enabled || thresholdMillis <= 0) {
+            return;
+        }
+        String key = normalize(email);
+        long now = System.currentTimeMillis();
+        Long localWindowEnd = localWindows.get(key);
+        if (localWindowEnd != null && localWindowEnd > now) {
+            throw spam(email);
+        }
+        Query query = Query.query(Criteria.where("email").is(key).and("sendAt").lt(new Date(now - thresholdMillis)));
+        Update update = new Update()
+                .set("sendAt", new Date(now))
+                .set("expiresAt", new Date(now + thresholdMillis));
+        try {
+            mongoTemplate.upsert(query, update, EmailsSend.class);
+        } catch (DuplicateKeyException e) {
+            //Another mail was sent within the window
+            throw spam(email);
+        }
+        if (localWindows.size() >= MAX_LOCAL_ENTRIES) {
+            localWindows.values().removeIf(windowEnd -> windowEnd <= now);
+        }
+        localWindows.put(key, now + thresholdMillis);
+    }
+
+    /**
+     * Release the window claimed for this email when the mail could not be handed over, so it can be retried immediately
+     */
+    public void release(String email) {
+        if (!enabled || thresholdMillis <= 0) {
+            return;
+        }
+        String key = normalize(email);
+        localWindows.remove(key);
+        //Within the window no other send can have claimed this email, the record is the one of the failed mail
+        mongoTemplate.remove(Query.query(Criteria.where("email").is(key)), EmailsSend.class);
+    }
+
+    public static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private IllegalArgumentException spam(String email) {
+        return new IllegalArgumentException(String.format("Not sending email to %s because an email was already send in the last %s seconds",
+                email, thresholdMillis / 1000L));
+    }
+}
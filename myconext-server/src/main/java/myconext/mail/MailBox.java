@@ -1,75 +1,47 @@
 package myconext.mail;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.github.mustachejava.DefaultMustacheFactory;
-import com.github.mustachejava.MustacheFactory;
-import jakarta.mail.internet.MimeMessage;
 import lombok.SneakyThrows;
 import myconext.model.ControlCode;
-import myconext.model.EmailsSend;
 import myconext.model.User;
 import myconext.model.UserLogin;
-import myconext.repository.EmailsSendRepository;
+import myconext.model.UserView;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.context.i18n.LocaleContextHolder;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.Resource;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.util.StringUtils;
 
-import java.io.*;
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 public class MailBox {
 
     private static final Log LOG = LogFactory.getLog(MailBox.class);
     private static final String SANITIZE_NAME = "[^\\p{L} '-]";
-    private static final List<String> supportedLanguages = List.of("en", "nl");
 
-    private final JavaMailSender mailSender;
+    private final MailOutbox mailOutbox;
     private final String magicLinkUrl;
     private final String mySURFconextURL;
     private final String loginSURFconextURL;
-    private final String emailFrom;
     private final String errorEmail;
-    private final Map<String, Map<String, String>> subjects;
-
-    private final MustacheFactory mustacheFactory;
-    private final EmailsSendRepository emailsSendRepository;
-    private final long emailSpamThresholdSeconds;
+    private final MailTemplates mailTemplates;
+    private final EmailSpamGuard emailSpamGuard;
     private final ObjectMapper objectMapper;
 
-    public MailBox(JavaMailSender mailSender,
-                   String emailFrom,
+    public MailBox(MailOutbox mailOutbox,
                    String errorEmail,
                    String magicLinkUrl,
                    String mySURFconextURL,
                    String loginSURFconextURL,
                    ObjectMapper objectMapper,
-                   Resource mailTemplatesDirectory,
-                   EmailsSendRepository emailsSendRepository,
-                   long emailSpamThresholdSeconds) throws IOException {
-        this.mailSender = mailSender;
-        this.emailFrom = emailFrom;
+                   MailTemplates mailTemplates,
+                   EmailSpamGuard emailSpamGuard) {
+        this.mailOutbox = mailOutbox;
         this.errorEmail = errorEmail;
         this.magicLinkUrl = magicLinkUrl;
         this.mySURFconextURL = mySURFconextURL;
         this.loginSURFconextURL = loginSURFconextURL;
-        this.emailsSendRepository = emailsSendRepository;
-        this.emailSpamThresholdSeconds = emailSpamThresholdSeconds;
-        if (mailTemplatesDirectory.isFile()) {
-            LOG.info("Initializing mail templates from file system: " + mailTemplatesDirectory.getFile().getAbsolutePath());
-            mustacheFactory = new DefaultMustacheFactory(mailTemplatesDirectory.getFile());
-        } else {
-            LOG.info("Initializing mail templates from JAR resource: " + mailTemplatesDirectory.getFilename());
-            mustacheFactory = new DefaultMustacheFactory(mailTemplatesDirectory.getFilename());
-        }
-        this.subjects = objectMapper.readValue(inputStream(mailTemplatesDirectory), new TypeReference<>() {});
+        this.emailSpamGuard = emailSpamGuard;
+        this.mailTemplates = mailTemplates;
         this.objectMapper = objectMapper;
     }
 
@@ -110,27 +82,27 @@ public class MailBox {
         sendMail("account_confirmation", title, variables, preferredLanguage(user), user.getEmail(), false);
     }
 
-    public void sendInstitutionMailWarning(User user) {
+    public RenderedMail renderInstitutionMailWarning(User user) {
         String title = this.getTitle("institution_mail_warning", user);
         Map<String, Object> variables = variables(user, title);
         variables.put("mySurfConextURL", mySURFconextURL);
-        sendMail("institution_mail_warning", title, variables, preferredLanguage(user), user.getEmail(), false);
+        return renderMail("institution_mail_warning", title, variables, preferredLanguage(user), user.getEmail());
     }
 
-    public void sendUserInactivityMail(User user, Map<String, String> localeVariables, boolean firstTwoWarnings) {
+    public RenderedMail renderUserInactivityMail(User user, Map<String, String> localeVariables, boolean firstTwoWarnings) {
         String title = this.getTitle(firstTwoWarnings ? "inactivity_warning_years_ahead" : "inactivity_warning_short_term", user);
         Map<String, Object> variables = variables(user, title);
         variables.put("mySurfConextURL", mySURFconextURL);
         variables.putAll(localeVariables);
         String templateName = firstTwoWarnings ? "inactivity_warning_years_ahead" : "inactivity_warning_short_term";
-        sendMail(templateName, title, variables, preferredLanguage(user), user.getEmail(), false);
+        return renderMail(templateName, title, variables, preferredLanguage(user), user.getEmail());
     }
 
-    public void sendNudgeAppMail(User user) {
+    public RenderedMail renderNudgeAppMail(User user) {
         String title = this.getTitle("nudge_eduid_app", user);
         Map<String, Object> variables = variables(user, title);
         variables.put("mySurfConextURL", mySURFconextURL);
-        sendMail("nudge_eduid_app", title, variables, preferredLanguage(user), user.getEmail(), false);
+        return renderMail("nudge_eduid_app", title, variables, preferredLanguage(user), user.getEmail());
     }
 
     public void sendResetPassword(User user, String hash, boolean mobileRequest) {
@@ -208,7 +180,7 @@ public class MailBox {
     private Map<String, Object> variables(User user, String title) {
         Map<String, Object> variables = new HashMap<>();
         variables.put("title", title);
-        String fullName = user.getDerivedGivenName() + " " + user.getDerivedFamilyName();
+        String fullName = new UserView(user).getFullName();
         String fullNameSanitized = fullName.replaceAll(SANITIZE_NAME, "");
         variables.put("name", fullNameSanitized);
         return variables;
@@ -218,62 +190,45 @@ public class MailBox {
     private void sendMail(String templateName, String subject, Map<String, Object> variables, String language, String to, boolean checkSpam) {
         LOG.info(String.format("Send %s email to %s", templateName, to));
         if (checkSpam) {
-            Optional<EmailsSend> byEmail = emailsSendRepository.findByEmail(to);
-            if (byEmail.isPresent() && byEmail.get().getSendAt().toInstant().isAfter(Instant.now().minus(emailSpamThresholdSeconds, ChronoUnit.SECONDS))) {
-                throw new IllegalArgumentException(String.format("Not sending email to %s because email was already send at %s", to, byEmail.get().getSendAt()));
-            }
+            emailSpamGuard.claim(to);
         }
 
-        String html = this.mailTemplate(String.format("%s_%s.html", templateName, language), variables);
-        String text = this.mailTemplate(String.format("%s_%s.txt", templateName, language), variables);
+        boolean enqueued = false;
+        try {
+            enqueued = sendMail(renderMail(templateName, subject, variables, language, to));
+        } finally {
+            //Only a mail handed over to the outbox keeps the window, so a failed mail can be retried immediately
+            if (checkSpam && !enqueued) {
+                emailSpamGuard.release(to);
+            }
+        }
+    }
 
+    private boolean sendMail(RenderedMail renderedMail) {
         try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
-            helper.setSubject(subject);
-            helper.setTo(to);
-            setText(html, text, helper);
-            helper.setFrom(emailFrom);
-            doSendMail(mimeMessage);
+            mailOutbox.enqueue(renderedMail);
+            return true;
         } catch (Exception e) {
-            LOG.error("Error sending mail to "+to, e);
+            LOG.error("Error sending mail to " + renderedMail.getTo(), e);
             //We don't want to stop batch mailings
+            return false;
         }
     }
 
-    protected void setText(String html, String text, MimeMessageHelper helper) throws jakarta.mail.MessagingException {
-        helper.setText(text, html);
-    }
-
-    protected void doSendMail(MimeMessage message) {
-        new Thread(() -> mailSender.send(message)).start();
-    }
-
-    @SneakyThrows
-    private String mailTemplate(String name, Map<String, Object> context) {
-        return mustacheFactory.compile(name).execute(new StringWriter(), context).toString();
+    private RenderedMail renderMail(String templateName, String subject, Map<String, Object> variables, String language, String to) {
+        String html = mailTemplates.render(templateName, language, "html", variables);
+        String text = mailTemplates.render(templateName, language, "txt", variables);
+        return new RenderedMail(templateName, to, subject, html, text);
     }
 
     private String getTitle(String templateName, User user) {
-        return this.subjects.get(templateName).get(preferredLanguage(user));
+        return mailTemplates.subject(templateName, preferredLanguage(user));
     }
 
     private String preferredLanguage(User user) {
         String preferredLanguage = user.getPreferredLanguage();
         String localeLanguage = StringUtils.hasText(preferredLanguage) ? preferredLanguage.toLowerCase(Locale.ROOT) : LocaleContextHolder.getLocale().getLanguage();
-        return (StringUtils.hasText(localeLanguage) && supportedLanguages.contains(localeLanguage)) ? localeLanguage.toLowerCase(Locale.ROOT) : "en";
+        return (StringUtils.hasText(localeLanguage) && MailTemplates.SUPPORTED_LANGUAGES.contains(localeLanguage)) ? localeLanguage.toLowerCase(Locale.ROOT) : "en";
     }
 
-    @SneakyThrows
-    private InputStream inputStream(Resource mailTemplatesDirectory) {
-        if (mailTemplatesDirectory.isFile()) {
-            FilenameFilter filter = (dir, fileName) -> "subjects.json".equals(fileName);
-            File[] files = mailTemplatesDirectory.getFile().listFiles(filter);
-            assert files != null;
-            File file = files[0];
-            return new FileInputStream(file);
-        } else {
-            return new ClassPathResource(mailTemplatesDirectory.getFilename() + "/" + "subjects.json").getInputStream();
-        }
-    }
 }
@@ -1,7 +1,9 @@
 package myconext.mail;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import myconext.repository.EmailsSendRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import myconext.repository.BulkMailingJobRepository;
+import myconext.repository.OutboxMailRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.mail.MailProperties;
@@ -9,7 +11,8 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.Resource;
-import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
 
 import java.io.IOException;
 
@@ -38,18 +41,89 @@ public class MailConfiguration {
     @Value("${email_spam_threshold_seconds}")
     private long emailSpamThresholdSeconds;
 
+    @Value("${feature.email_spam_guard}")
+    private boolean emailSpamGuardEnabled;
+
+    @Value("${email.outbox.workers}")
+    private int outboxWorkers;
+
+    @Value("${email.outbox.queue-capacity}")
+    private int outboxQueueCapacity;
+
+    @Value("${email.outbox.batch-size}")
+    private int outboxBatchSize;
+
+    @Value("${email.outbox.max-attempts}")
+    private int outboxMaxAttempts;
+
+    @Value("${email.outbox.retry-backoff-seconds}")
+    private long outboxRetryBackoffSeconds;
+
+    @Value("${email.bulk.messages-per-connection}")
+    private int bulkMessagesPerConnection;
+
+    @Value("${email.bulk.messages-per-second}")
+    private double bulkMessagesPerSecond;
+
+    @Value("${email.bulk.page-size}")
+    private int bulkPageSize;
+
+    @Value("${email.bulk.render-parallelism}")
+    private int bulkRenderParallelism;
+
     @Autowired
-    private JavaMailSender mailSender;
+    private JavaMailSenderImpl mailSender;
 
     @Autowired
-    private ObjectMapper objectMapper;
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OutboxMailRepository outboxMailRepository;
+
+    @Autowired
+    private BulkMailingJobRepository bulkMailingJobRepository;
 
     @Autowired
-    private EmailsSendRepository emailsSendRepository;
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+
+    @Bean
+    public MailOutbox mailOutbox() {
+        return new MailOutbox(mailSender, mongoTemplate, outboxMailRepository, meterRegistry, emailFrom,
+                outboxWorkers, outboxQueueCapacity, outboxBatchSize, outboxMaxAttempts, outboxRetryBackoffSeconds);
+    }
+
+    @Bean
+    public BulkMailTransport bulkMailTransport(MailOutbox mailOutbox) {
+        return new BulkMailTransport(mailSender, mailOutbox, bulkMessagesPerConnection, bulkMessagesPerSecond);
+    }
+
+    @Bean
+    public BulkMailing bulkMailing(BulkMailTransport bulkMailTransport) {
+        return new BulkMailing(mongoTemplate, bulkMailingJobRepository, bulkMailTransport, bulkPageSize, bulkRenderParallelism);
+    }
+
+    @Bean
+    public BulkMailingEndpoint bulkMailingEndpoint() {
+        return new BulkMailingEndpoint(bulkMailingJobRepository);
+    }
+
+    @Bean
+    public MailTemplates mailTemplates() throws IOException {
+        return new MailTemplates(mailTemplatesDirectory, objectMapper);
+    }
+
+    @Bean
+    public EmailSpamGuard emailSpamGuard() {
+        return new EmailSpamGuard(mongoTemplate, emailSpamThresholdSeconds, emailSpamGuardEnabled);
+    }
 
     @Bean
-    public MailBox mailSenderProd() throws IOException {
-        return new MailBox(mailSender, emailFrom, errorEmail, magicLinkUrl, mySURFconextURL, loginSURFconextURL, objectMapper, mailTemplatesDirectory,
-                emailsSendRepository, emailSpamThresholdSeconds);
+    public MailBox mailSenderProd(MailOutbox mailOutbox, MailTemplates mailTemplates, EmailSpamGuard emailSpamGuard) {
+        return new MailBox(mailOutbox, errorEmail, magicLinkUrl, mySURFconextURL, loginSURFconextURL, objectMapper, mailTemplates,
+                emailSpamGuard);
     }
 }
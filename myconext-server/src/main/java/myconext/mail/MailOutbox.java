@@ -0,0 +1,261 @@
+package myconext.mail;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import myconext.model.OutboxMail;
+import myconext.model.OutboxMailStatus;
+import myconext.repository.OutboxMailRepository;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent outbox for all outgoing mail. Every mail is stored in the mail_outbox collection before it is handed
+ * to a fixed pool of workers. A worker claims a batch of mails and sends them over one SMTP connection. Failed mails
+ * are retried with exponential backoff and end up as DEAD_LETTER after max-attempts. Mails that did not fit in the
+ * bounded queue - or were left behind by a node that stopped - are picked up by the poller.
+ */
+public class MailOutbox {
+
+    private static final Log LOG = LogFactory.getLog(MailOutbox.class);
+
+    //Time a claimed mail is reserved for the claiming worker, after this the poller considers it abandoned
+    private static final long CLAIM_LEASE_SECONDS = 5 * 60;
+
+    private final JavaMailSender mailSender;
+    private final MongoTemplate mongoTemplate;
+    private final OutboxMailRepository outboxMailRepository;
+    private final String emailFrom;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryBackoffSeconds;
+
+    private final BlockingQueue<String> queue;
+    private final ExecutorService workers;
+    private volatile boolean running = true;
+
+    private final AtomicLong pendingMails = new AtomicLong();
+    private final AtomicLong deadLetterMails = new AtomicLong();
+    private final Timer sendTimer;
+    private final Counter failureCounter;
+    private final Counter deadLetterCounter;
+
+    public MailOutbox(JavaMailSender mailSender,
+                      MongoTemplate mongoTemplate,
+                      OutboxMailRepository outboxMailRepository,
+                      MeterRegistry meterRegistry,
+                      String emailFrom,
+                      int workerCount,
+                      int queueCapacity,
+                      int batchSize,
+                      int maxAttempts,
+                      long retryBackoffSeconds) {
+        this.mailSender = mailSender;
+        this.mongoTemplate = mongoTemplate;
+        this.outboxMailRepository = outboxMailRepository;
+        this.emailFrom = emailFrom;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffSeconds = retryBackoffSeconds;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("mail.outbox.queue", queue, Collection::size)
+                .description("Number of mails waiting for a dispatch worker on this node")
+                .register(meterRegistry);
+        Gauge.builder("mail.outbox.pending", pendingMails, AtomicLong::get)
+                .description("Number of mails in the outbox that are not yet sent")
+                .register(meterRegistry);
+        Gauge.builder("mail.outbox.dead_letter", deadLetterMails, AtomicLong::get)
+                .description("Number of mails in the outbox that will not be retried anymore")
+                .register(meterRegistry);
+        this.sendTimer = Timer.builder("mail.outbox.send")
+                .description("Latency of sending a batch of mails over one SMTP connection")
+                .register(meterRegistry);
+        this.failureCounter = Counter.builder("mail.outbox.failures")
+                .description("Number of failed mail send attempts")
+                .register(meterRegistry);
+        this.deadLetterCounter = Counter.builder("mail.outbox.dead_lettered")
+                .description("Number of mails moved to the dead-letter state")
+                .register(meterRegistry);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "mail-outbox-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            this.workers.execute(this::work);
+        }
+    }
+
+    public void enqueue(RenderedMail renderedMail) {
+        OutboxMail outboxMail = outboxMailRepository.save(new OutboxMail(renderedMail.getTemplateName(),
+                renderedMail.getTo(), renderedMail.getSubject(), renderedMail.getHtml(), renderedMail.getText()));
+        //If the queue is full, then the mail stays pending in the outbox and the poller will pick it up
+        if (!queue.offer(outboxMail.getId())) {
+            LOG.warn(String.format("Mail outbox queue is full, mail %s to %s is deferred", outboxMail.getId(), renderedMail.getTo()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval-millis}", initialDelayString = "${email.outbox.poll-interval-millis}")
+    public void pollDueMails() {
+        try {
+            int remainingCapacity = queue.remainingCapacity();
+            if (remainingCapacity > 0) {
+                Query query = new Query(dueCriteria(new Date())).limit(remainingCapacity);
+                query.fields().include("_id");
+                List<OutboxMail> dueMails = mongoTemplate.find(query, OutboxMail.class);
+                dueMails.forEach(outboxMail -> queue.offer(outboxMail.getId()));
+            }
+            pendingMails.set(outboxMailRepository.countByStatus(OutboxMailStatus.PENDING) +
+                    outboxMailRepository.countByStatus(OutboxMailStatus.SENDING));
+            deadLetterMails.set(outboxMailRepository.countByStatus(OutboxMailStatus.DEAD_LETTER));
+        } catch (RuntimeException e) {
+            //swallow exception as the scheduling stops then
+            LOG.error("Error in pollDueMails", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        //Mails still in the queue are pending in the outbox and will be sent by another node or after the restart
+        running = false;
+        workers.shutdownNow();
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                List<String> ids = new ArrayList<>();
+                ids.add(queue.take());
+                queue.drainTo(ids, batchSize - 1);
+                dispatch(ids);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected error in mail outbox worker", e);
+            }
+        }
+    }
+
+    private void dispatch(List<String> ids) {
+        Map<MimeMessage, OutboxMail> messages = new LinkedHashMap<>();
+        ids.stream()
+                .map(this::claim)
+                .filter(Objects::nonNull)
+                .forEach(outboxMail -> {
+                    try {
+                        messages.put(createMimeMessage(outboxMail.getTo(), outboxMail.getSubject(),
+                                outboxMail.getHtml(), outboxMail.getText()), outboxMail);
+                    } catch (MessagingException | RuntimeException e) {
+                        //No use in retrying a mail which can not be composed, e.g. an invalid address
+                        deadLetter(outboxMail, e);
+                    }
+                });
+        if (messages.isEmpty()) {
+            return;
+        }
+        Map<Object, Exception> failedMessages = new HashMap<>();
+        long start = System.nanoTime();
+        try {
+            //JavaMailSender sends all messages over one connection
+            mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            failedMessages.putAll(e.getFailedMessages());
+            if (failedMessages.isEmpty()) {
+                messages.keySet().forEach(message -> failedMessages.put(message, e));
+            }
+        } catch (MailException e) {
+            messages.keySet().forEach(message -> failedMessages.put(message, e));
+        }
+        sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        messages.forEach((message, outboxMail) -> {
+            Exception exception = failedMessages.get(message);
+            if (exception == null) {
+                outboxMailRepository.deleteById(outboxMail.getId());
+            } else {
+                retry(outboxMail, exception);
+            }
+        });
+    }
+
+    private OutboxMail claim(String id) {
+        Date now = new Date();
+        Query query = new Query(Criteria.where("_id").is(id).andOperator(dueCriteria(now)));
+        Update update = new Update()
+                .set("status", OutboxMailStatus.SENDING)
+                .set("nextAttemptAt", Date.from(now.toInstant().plus(CLAIM_LEASE_SECONDS, ChronoUnit.SECONDS)))
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), OutboxMail.class);
+    }
+
+    private Criteria dueCriteria(Date now) {
+        //Mails claimed by a worker are due again after the lease expired
+        return Criteria.where("status").in(OutboxMailStatus.PENDING, OutboxMailStatus.SENDING)
+                .and("nextAttemptAt").lte(now);
+    }
+
+    MimeMessage createMimeMessage(String to, String subject, String html, String text) throws MessagingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
+        helper.setSubject(subject);
+        helper.setTo(to);
+        helper.setText(text, html);
+        helper.setFrom(emailFrom);
+        return mimeMessage;
+    }
+
+    private void retry(OutboxMail outboxMail, Exception exception) {
+        failureCounter.increment();
+        if (outboxMail.getAttempts() >= maxAttempts) {
+            deadLetter(outboxMail, exception);
+            return;
+        }
+        long backoffSeconds = retryBackoffSeconds * (1L << Math.min(outboxMail.getAttempts() - 1, 16));
+        LOG.warn(String.format("Error sending %s mail to %s, attempt %s, retry in %s seconds",
+                outboxMail.getTemplateName(), outboxMail.getTo(), outboxMail.getAttempts(), backoffSeconds), exception);
+        Update update = new Update()
+                .set("status", OutboxMailStatus.PENDING)
+                .set("nextAttemptAt", Date.from(Instant.now().plus(backoffSeconds, ChronoUnit.SECONDS)))
+                .set("lastError", exception.getMessage());
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(outboxMail.getId())), update, OutboxMail.class);
+    }
+
+    private void deadLetter(OutboxMail outboxMail, Exception exception) {
+        deadLetterCounter.increment();
+        LOG.error(String.format("Giving up sending %s mail to %s after %s attempts",
+                outboxMail.getTemplateName(), outboxMail.getTo(), outboxMail.getAttempts()), exception);
+        Update update = new Update()
+                .set("status", OutboxMailStatus.DEAD_LETTER)
+                .set("lastError", exception.getMessage());
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(outboxMail.getId())), update, OutboxMail.class);
+    }
+}
@@ -0,0 +1,164 @@
+package myconext.mail;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.github.mustachejava.MustacheException;
+import com.github.mustachejava.MustacheFactory;
+import lombok.SneakyThrows;
+import org.apache.commons.io.output.StringBuilderWriter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StringUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Registry of all mail templates and subjects. Every template referenced in subjects.json is compiled - in all
+ * supported languages - at startup and a missing template or subject fails the startup. When the templates are read
+ * from the file system, changes are picked up without a restart.
+ */
+public class MailTemplates {
+
+    private static final Log LOG = LogFactory.getLog(MailTemplates.class);
+
+    public static final List<String> SUPPORTED_LANGUAGES = List.of("en", "nl");
+    private static final List<String> EXTENSIONS = List.of("html", "txt");
+    private static final String SUBJECTS_FILE_NAME = "subjects.json";
+    private static final long RELOAD_CHECK_INTERVAL_MILLIS = 5_000L;
+    //Prevent retaining large buffers per thread after rendering an exceptional big mail
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final Resource mailTemplatesDirectory;
+    private final ObjectMapper objectMapper;
+    private final boolean fileSystem;
+    private final ThreadLocal<StringBuilderWriter> buffers = ThreadLocal.withInitial(() -> new StringBuilderWriter(8 * 1024));
+
+    private volatile Registry registry;
+    private volatile long lastReloadCheck;
+
+    public MailTemplates(Resource mailTemplatesDirectory, ObjectMapper objectMapper) throws IOException {
+        this.mailTemplatesDirectory = mailTemplatesDirectory;
+        this.objectMapper = objectMapper;
+        this.fileSystem = mailTemplatesDirectory.isFile();
+        if (fileSystem) {
+            LOG.info("Initializing mail templates from file system: " + mailTemplatesDirectory.getFile().getAbsolutePath());
+        } else {
+            LOG.info("Initializing mail templates from JAR resource: " + mailTemplatesDirectory.getFilename());
+        }
+        this.registry = load();
+        this.lastReloadCheck = System.currentTimeMillis();
+    }
+
+    public String subject(String templateName, String language) {
+        return currentRegistry().subjects.get(templateName).get(language);
+    }
+
+    public String render(String templateName, String language, String extension, Map<String, Object> context) {
+        String fileName = fileName(templateName, language, extension);
+        Mustache mustache = currentRegistry().templates.get(fileName);
+        if (mustache == null) {
+            throw new IllegalArgumentException("Unknown mail template: " + fileName);
+        }
+        StringBuilderWriter writer = buffers.get();
+        StringBuilder builder = writer.getBuilder();
+        builder.setLength(0);
+        mustache.execute(writer, context);
+        String result = builder.toString();
+        if (builder.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            buffers.remove();
+        }
+        return result;
+    }
+
+    private Registry currentRegistry() {
+        long now = System.currentTimeMillis();
+        if (fileSystem && now - lastReloadCheck > RELOAD_CHECK_INTERVAL_MILLIS) {
+            lastReloadCheck = now;
+            Registry current = this.registry;
+            long lastModified = lastModified();
+            if (lastModified != current.lastModified) {
+                try {
+                    this.registry = load();
+                    LOG.info("Reloaded mail templates from file system");
+                } catch (IOException | RuntimeException e) {
+                    //Keep on using the previous templates, the new ones are not valid
+                    LOG.error("Error reloading mail templates, keeping the previous templates", e);
+                }
+            }
+        }
+        return this.registry;
+    }
+
+    private Registry load() throws IOException {
+        long lastModified = lastModified();
+        MustacheFactory mustacheFactory = fileSystem ?
+                new DefaultMustacheFactory(mailTemplatesDirectory.getFile()) :
+                new DefaultMustacheFactory(mailTemplatesDirectory.getFilename());
+        Map<String, Map<String, String>> subjects;
+        try (InputStream inputStream = subjectsInputStream()) {
+            subjects = objectMapper.readValue(inputStream, new TypeReference<>() {
+            });
+        }
+        Map<String, Mustache> templates = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        subjects.forEach((templateName, languageSubjects) -> SUPPORTED_LANGUAGES.forEach(language -> {
+            if (!StringUtils.hasText(languageSubjects.get(language))) {
+                missing.add(String.format("%s[%s.%s]", SUBJECTS_FILE_NAME, templateName, language));
+            }
+            EXTENSIONS.forEach(extension -> {
+                String fileName = fileName(templateName, language, extension);
+                try {
+                    templates.put(fileName, mustacheFactory.compile(fileName));
+                } catch (MustacheException e) {
+                    missing.add(fileName);
+                }
+            });
+        }));
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Missing or invalid mail templates: " + String.join(", ", missing));
+        }
+        LOG.info(String.format("Compiled %s mail templates", templates.size()));
+        return new Registry(subjects, templates, lastModified);
+    }
+
+    @SneakyThrows
+    private long lastModified() {
+        if (!fileSystem) {
+            return 0L;
+        }
+        File[] files = mailTemplatesDirectory.getFile().listFiles();
+        return files == null ? 0L : Arrays.stream(files).mapToLong(File::lastModified).max().orElse(0L);
+    }
+
+    private InputStream subjectsInputStream() throws IOException {
+        if (fileSystem) {
+            return new FileInputStream(new File(mailTemplatesDirectory.getFile(), SUBJECTS_FILE_NAME));
+        }
+        return new ClassPathResource(mailTemplatesDirectory.getFilename() + "/" + SUBJECTS_FILE_NAME).getInputStream();
+    }
+
+    private static String fileName(String templateName, String language, String extension) {
+        return String.format("%s_%s.%s", templateName, language, extension);
+    }
+
+    private static class Registry {
+
+        private final Map<String, Map<String, String>> subjects;
+        private final Map<String, Mustache> templates;
+        private final long lastModified;
+
+        private Registry(Map<String, Map<String, String>> subjects, Map<String, Mustache> templates, long lastModified) {
+            this.subjects = subjects;
+            this.templates = templates;
+            this.lastModified = lastModified;
+        }
+    }
+}
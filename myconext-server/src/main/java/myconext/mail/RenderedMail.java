@@ -0,0 +1,18 @@
+package myconext.mail;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Serializable;
+
+@AllArgsConstructor
+@Getter
+public class RenderedMail implements Serializable {
+
+    private final String templateName;
+    private final String to;
+    private final String subject;
+    private final String html;
+    private final String text;
+
+}
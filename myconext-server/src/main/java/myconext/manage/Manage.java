@@ -23,6 +23,17 @@ public interface Manage {
 
     Optional<IdentityProvider> findIdentityProviderByDomainName(String domainName);
 
+    /**
+     * The identity providers of all the domain names - e.g. the schacHomeOrganizations of the linked accounts - resolved
+     * in one read. Domain names without an identity provider are absent in the result.
+     */
+    default Map<String, IdentityProvider> findIdentityProvidersByDomainNames(Collection<String> domainNames) {
+        Map<String, IdentityProvider> results = new HashMap<>();
+        domainNames.forEach(domainName -> findIdentityProviderByDomainName(domainName)
+                .ifPresent(identityProvider -> results.put(domainName, identityProvider)));
+        return results;
+    }
+
     Optional<IdentityProvider> findIdentityProviderByBrinCode(String brinCode);
 
     Optional<IdentityProvider> findIdentityProviderByInstitutionGUID(String institutionGUID);
@@ -149,6 +149,25 @@ public class RemoteManage implements Manage {
         return Optional.ofNullable(this.identityProviders.get(domainName));
     }
 
+    @Override
+    public Map<String, IdentityProvider> findIdentityProvidersByDomainNames(Collection<String> domainNames) {
+        //For Testing purposes
+        if (identityProviders.isEmpty()) {
+            LOG.info("Refreshing metadata as the current collection is empty");
+            doRefreshIdentityProviders();
+        }
+        //The refresh replaces the map, so all domain names are resolved against the same snapshot
+        Map<String, IdentityProvider> snapshot = this.identityProviders;
+        Map<String, IdentityProvider> results = new HashMap<>();
+        domainNames.forEach(domainName -> {
+            IdentityProvider identityProvider = snapshot.get(domainName);
+            if (identityProvider != null) {
+                results.put(domainName, identityProvider);
+            }
+        });
+        return results;
+    }
+
     @Override
     public Optional<IdentityProvider> findIdentityProviderByBrinCode(String brinCode) {
         return searchIdentityProvider("metaDataFields.coin:institution_brin", brinCode);
@@ -0,0 +1,109 @@
+package myconext.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.io.Serializable;
+import java.util.Date;
+
+@NoArgsConstructor
+@Getter
+@Document(collection = "bulk_mailing_jobs")
+public class BulkMailingJob implements Serializable {
+
+    //One document per job, the last run is overwritten when the job starts again
+    @Id
+    private String name;
+
+    private BulkMailingJobStatus status;
+
+    //Digest of the recipients criteria, a job is only resumed for the same recipients
+    private String recipientsFingerprint;
+
+    //The time the recipients criteria are based on, a resumed job re-uses the time of its first run
+    private long referenceTime;
+
+    private long total;
+
+    private long processed;
+
+    private long sent;
+
+    private long errors;
+
+    private String lastUserId;
+
+    private long processedAtResume;
+
+    @Schema(type = "integer", format = "int64", example = "1634813554997")
+    private Date startedAt;
+
+    @Schema(type = "integer", format = "int64", example = "1634813554997")
+    private Date resumedAt;
+
+    @Schema(type = "integer", format = "int64", example = "1634813554997")
+    private Date updatedAt;
+
+    @Schema(type = "integer", format = "int64", example = "1634813554997")
+    private Date finishedAt;
+
+    public BulkMailingJob(String name, String recipientsFingerprint, long referenceTime, long total) {
+        this.name = name;
+        this.recipientsFingerprint = recipientsFingerprint;
+        this.referenceTime = referenceTime;
+        this.total = total;
+        this.status = BulkMailingJobStatus.RUNNING;
+        this.startedAt = new Date();
+        this.resumedAt = this.startedAt;
+        this.updatedAt = this.startedAt;
+    }
+
+    public void resume(long remaining) {
+        //Users may have been added or removed since the interrupted run
+        this.total = this.processed + remaining;
+        this.processedAtResume = this.processed;
+        this.status = BulkMailingJobStatus.RUNNING;
+        this.resumedAt = new Date();
+        this.updatedAt = this.resumedAt;
+        this.finishedAt = null;
+    }
+
+    public void progress(int processed, int sent, int errors, String lastUserId) {
+        this.processed += processed;
+        this.sent += sent;
+        this.errors += errors;
+        this.lastUserId = lastUserId;
+        this.updatedAt = new Date();
+    }
+
+    public void complete() {
+        finish(BulkMailingJobStatus.COMPLETED);
+    }
+
+    public void fail() {
+        finish(BulkMailingJobStatus.FAILED);
+    }
+
+    private void finish(BulkMailingJobStatus status) {
+        this.status = status;
+        this.finishedAt = new Date();
+        this.updatedAt = this.finishedAt;
+    }
+
+    public double throughput() {
+        long end = finishedAt != null ? finishedAt.getTime() : System.currentTimeMillis();
+        double seconds = Math.max(end - resumedAt.getTime(), 1L) / 1000D;
+        return (processed - processedAtResume) / seconds;
+    }
+
+    public Long estimatedSecondsRemaining() {
+        if (status != BulkMailingJobStatus.RUNNING) {
+            return 0L;
+        }
+        double throughput = throughput();
+        return throughput > 0 ? Math.round(Math.max(total - processed, 0L) / throughput) : null;
+    }
+}
@@ -0,0 +1,7 @@
+package myconext.model;
+
+public enum BulkMailingJobStatus {
+
+    RUNNING, COMPLETED, FAILED
+
+}
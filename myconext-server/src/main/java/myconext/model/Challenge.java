@@ -1,11 +1,13 @@
 package myconext.model;
 
+import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.io.Serializable;
+import java.util.Date;
 
 @Document(collection = "challenges")
 @Getter
@@ -21,14 +23,17 @@ public class Challenge implements Serializable {
 
     private String email;
 
-    public Challenge(String token, String challenge) {
-        this.token = token;
-        this.challenge = challenge;
-    }
+    @Schema(type = "integer", format = "int64", example = "1634813554997")
+    private Date expiresAt;
 
-    public Challenge(String token, String challenge, String email) {
+    public Challenge(String token, String challenge, String email, Date expiresAt) {
         this.token = token;
         this.challenge = challenge;
         this.email = email;
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean isExpired() {
+        return expiresAt.before(new Date());
     }
 }
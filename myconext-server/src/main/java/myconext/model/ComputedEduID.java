@@ -0,0 +1,15 @@
+package myconext.model;
+
+import java.util.Date;
+
+/**
+ * Result of User#computeEduIdForServiceProviderIfAbsent.
+ *
+ * @param value             the eduID value for the service
+ * @param entityId          the entityId of the service
+ * @param changed           true if an eduID or service was added or the metadata of the service changed, false if only
+ *                          the last login of the user and the service was updated
+ * @param previousLastLogin the last login of the service before this computation, null for a new service
+ */
+public record ComputedEduID(String value, String entityId, boolean changed, Date previousLastLogin) {
+}
@@ -2,7 +2,6 @@ package myconext.model;
 
 import jakarta.validation.constraints.NotBlank;
 import lombok.*;
-import org.springframework.data.mongodb.core.index.Indexed;
 
 import java.io.Serializable;
 
@@ -18,8 +17,8 @@ public class ControlCode implements Serializable {
     @NotBlank
     @Setter
     private String dayOfBirth;
+    //Unique and sparse index is created in Migrations
     @Setter
-    @Indexed
     private String code;
     @Setter
     private String documentId;
@@ -12,6 +12,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -42,23 +43,45 @@ public class EduID implements Serializable {
     }
 
     public EduID updateServiceProvider(ServiceProvider serviceProvider) {
+        mergeServiceProvider(serviceProvider);
+        return this;
+    }
+
+    /**
+     * Add the service provider or update the existing one.
+     *
+     * @return true if the service provider is added or its metadata changed, false if only the last login is updated
+     */
+    public boolean mergeServiceProvider(ServiceProvider serviceProvider) {
+        Optional<ServiceProvider> optionalServiceProvider = findServiceProvider(serviceProvider);
+        if (optionalServiceProvider.isEmpty()) {
+            this.services.add(serviceProvider);
+            return true;
+        }
+        ServiceProvider sp = optionalServiceProvider.get();
+        boolean changed = !Objects.equals(sp.getName(), serviceProvider.getName()) ||
+                !Objects.equals(sp.getNameNl(), serviceProvider.getNameNl()) ||
+                !Objects.equals(sp.getHomeUrl(), serviceProvider.getHomeUrl()) ||
+                !Objects.equals(sp.getLogoUrl(), serviceProvider.getLogoUrl()) ||
+                !Objects.equals(sp.getInstitutionGuid(), serviceProvider.getInstitutionGuid());
+        sp.setName(serviceProvider.getName());
+        sp.setNameNl(serviceProvider.getNameNl());
+        sp.setHomeUrl(serviceProvider.getHomeUrl());
+        sp.setLogoUrl(serviceProvider.getLogoUrl());
+        sp.setInstitutionGuid(serviceProvider.getInstitutionGuid());
+        sp.setLastLogin(serviceProvider.getLastLogin());
+        return changed;
+    }
+
+    public Optional<ServiceProvider> findServiceProvider(ServiceProvider serviceProvider) {
         //We migrate to the situation that an eduID only has a unique value and multiple services
         //but the version for the migration also needs to work with this situation
         //We only consider an SP as the same SP, if the entityId's equal OR the institutionGUID's are equal and the entityId's are null
-        Optional<ServiceProvider> optionalServiceProvider = this.services.stream()
+        return this.services.stream()
                 .filter(sp -> (StringUtils.hasText(sp.getEntityId()) && sp.getEntityId().equals(serviceProvider.getEntityId())) ||
                         (!StringUtils.hasText(sp.getEntityId()) && !StringUtils.hasText(serviceProvider.getEntityId())
                                 && StringUtils.hasText(sp.getInstitutionGuid()) && sp.getInstitutionGuid().equals(serviceProvider.getInstitutionGuid())))
                 .findFirst();
-        optionalServiceProvider.ifPresentOrElse(sp -> {
-            sp.setName(serviceProvider.getName());
-            sp.setNameNl(serviceProvider.getNameNl());
-            sp.setHomeUrl(serviceProvider.getHomeUrl());
-            sp.setLogoUrl(serviceProvider.getLogoUrl());
-            sp.setInstitutionGuid(serviceProvider.getInstitutionGuid());
-            sp.setLastLogin(serviceProvider.getLastLogin());
-        }, () -> this.services.add(serviceProvider));
-        return this;
     }
 
     public void replaceAtWithDot() {
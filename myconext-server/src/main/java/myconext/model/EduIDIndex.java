@@ -0,0 +1,92 @@
+package myconext.model;
+
+import org.springframework.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Transient lookup index of the eduID's of one user on the entityId's and institutionGUID's of their services,
+ * including the obsolete properties of eduID's which are not migrated yet. The index stores the position of the first
+ * eduID for every key, so a lookup returns the same eduID as a scan of the list in order would.
+ * <p>
+ * The eduID's may change outside of the User (e.g. services removed in the UserController), therefore a candidate is
+ * always verified against the eduID itself and the index is rebuilt when the verification fails.
+ */
+class EduIDIndex {
+
+    private final List<EduID> eduIDs;
+    private final Map<String, Integer> byEntityId = new HashMap<>();
+    private final Map<String, Integer> byInstitutionGuid = new HashMap<>();
+    private final Map<EduID, Integer> positions = new IdentityHashMap<>();
+
+    EduIDIndex(List<EduID> eduIDs) {
+        this.eduIDs = eduIDs;
+        rebuild();
+    }
+
+    boolean isValidFor(List<EduID> currentEduIDs) {
+        return this.eduIDs == currentEduIDs && this.positions.size() == currentEduIDs.size();
+    }
+
+    Optional<EduID> find(String entityId, String institutionGuid) {
+        Optional<EduID> eduID = candidate(entityId, institutionGuid);
+        if (eduID.isPresent() && !matches(eduID.get(), entityId, institutionGuid)) {
+            rebuild();
+            eduID = candidate(entityId, institutionGuid);
+        }
+        return eduID;
+    }
+
+    /**
+     * Index the new keys of an eduID which is added to, or already part of, the indexed list
+     */
+    void index(EduID eduID) {
+        Integer position = positions.computeIfAbsent(eduID, key -> positions.size());
+        putIfHasText(byEntityId, eduID.getServiceProviderEntityId(), position);
+        putIfHasText(byInstitutionGuid, eduID.getServiceInstutionGuid(), position);
+        eduID.getServices().forEach(serviceProvider -> {
+            putIfHasText(byEntityId, serviceProvider.getEntityId(), position);
+            putIfHasText(byInstitutionGuid, serviceProvider.getInstitutionGuid(), position);
+        });
+    }
+
+    static boolean matches(EduID eduID, String entityId, String institutionGuid) {
+        //Ensure we don't match institutionGUID's that are both null
+        boolean matchByInstitutionGUID = StringUtils.hasText(institutionGuid) &&
+                (institutionGuid.equals(eduID.getServiceInstutionGuid()) ||
+                        eduID.getServices().stream().anyMatch(sp -> institutionGuid.equals(sp.getInstitutionGuid())));
+        //Ensure we don't match entityId's that are both null
+        boolean matchByEntityId = StringUtils.hasText(entityId) &&
+                (entityId.equals(eduID.getServiceProviderEntityId()) ||
+                        eduID.getServices().stream().anyMatch(sp -> entityId.equals(sp.getEntityId())));
+        return matchByInstitutionGUID || matchByEntityId;
+    }
+
+    private Optional<EduID> candidate(String entityId, String institutionGuid) {
+        Integer byEntityIdPosition = StringUtils.hasText(entityId) ? byEntityId.get(entityId) : null;
+        Integer byInstitutionGuidPosition = StringUtils.hasText(institutionGuid) ? byInstitutionGuid.get(institutionGuid) : null;
+        if (byEntityIdPosition == null && byInstitutionGuidPosition == null) {
+            return Optional.empty();
+        }
+        int position = byEntityIdPosition == null ? byInstitutionGuidPosition :
+                byInstitutionGuidPosition == null ? byEntityIdPosition : Math.min(byEntityIdPosition, byInstitutionGuidPosition);
+        return Optional.of(eduIDs.get(position));
+    }
+
+    private void rebuild() {
+        byEntityId.clear();
+        byInstitutionGuid.clear();
+        positions.clear();
+        eduIDs.forEach(this::index);
+    }
+
+    private void putIfHasText(Map<String, Integer> index, String key, Integer position) {
+        if (StringUtils.hasText(key)) {
+            index.merge(key, position, Math::min);
+        }
+    }
+}
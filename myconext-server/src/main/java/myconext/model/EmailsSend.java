@@ -22,6 +22,9 @@ public class EmailsSend implements Serializable {
     @Schema(type = "integer", format = "int64", example = "1634813554997")
     private Date sendAt;
 
+    @Schema(type = "integer", format = "int64", example = "1634813554997")
+    private Date expiresAt;
+
     public EmailsSend(String email) {
         this.email = email;
         this.sendAt = new Date();
@@ -14,6 +14,7 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 @NoArgsConstructor
 @Getter
@@ -132,12 +133,12 @@ public class ExternalLinkedAccount implements Serializable, ProvisionedLinkedAcc
 
     @JsonIgnore
     @Transient
-    public ExternalLinkedAccount logoReference(List<VerifyIssuer> issuers) {
+    public ExternalLinkedAccount logoReference(Map<String, VerifyIssuer> issuersById) {
         if (this.issuer != null) {
-            issuers.stream()
-                    .filter(issuer -> issuer.getId().equals(this.issuer.getId()))
-                    .findFirst()
-                    .ifPresent(verifyIssuer -> this.issuer.setLogo(verifyIssuer.getLogo()));
+            VerifyIssuer verifyIssuer = issuersById.get(this.issuer.getId());
+            if (verifyIssuer != null) {
+                this.issuer.setLogo(verifyIssuer.getLogo());
+            }
         }
         return this;
     }
@@ -0,0 +1,52 @@
+package myconext.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.io.Serializable;
+import java.util.Date;
+
+@NoArgsConstructor
+@Getter
+@Document(collection = "mail_outbox")
+public class OutboxMail implements Serializable {
+
+    @Id
+    private String id;
+
+    private String templateName;
+
+    private String to;
+
+    private String subject;
+
+    private String html;
+
+    private String text;
+
+    private OutboxMailStatus status;
+
+    private int attempts;
+
+    private String lastError;
+
+    @Schema(type = "integer", format = "int64", example = "1634813554997")
+    private Date createdAt;
+
+    @Schema(type = "integer", format = "int64", example = "1634813554997")
+    private Date nextAttemptAt;
+
+    public OutboxMail(String templateName, String to, String subject, String html, String text) {
+        this.templateName = templateName;
+        this.to = to;
+        this.subject = subject;
+        this.html = html;
+        this.text = text;
+        this.status = OutboxMailStatus.PENDING;
+        this.createdAt = new Date();
+        this.nextAttemptAt = this.createdAt;
+    }
+}
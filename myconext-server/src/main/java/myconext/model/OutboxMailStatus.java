@@ -0,0 +1,7 @@
+package myconext.model;
+
+public enum OutboxMailStatus {
+
+    PENDING, SENDING, DEAD_LETTER
+
+}
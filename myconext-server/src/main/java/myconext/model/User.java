@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.yubico.webauthn.data.ByteArray;
 import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
 import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -27,6 +28,7 @@ import org.springframework.util.StringUtils;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -39,6 +41,9 @@ import static myconext.validation.PasswordStrength.strongEnough;
 @Document(collection = "users")
 public class User implements Serializable, UserDetails {
 
+    //All combinations of the login options, indexed by the bit mask of the available options
+    private static final List<List<String>> LOGIN_OPTIONS = loginOptionCombinations();
+
     @Id
     private String id;
     //Do not index the email here, this is already done in MongoMapping with a custom strength (case-insensitive)
@@ -64,6 +69,7 @@ public class User implements Serializable, UserDetails {
     @Setter
     private String webAuthnIdentifier;
     @Setter
+    @Indexed
     private String userHandle;
     @Setter
     private boolean forgottenPassword;
@@ -86,6 +92,10 @@ public class User implements Serializable, UserDetails {
     private List<ExternalLinkedAccount> externalLinkedAccounts = new ArrayList<>();
     @Setter
     private List<EduID> eduIDS = new ArrayList<>();
+    @Transient
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    private transient EduIDIndex eduIDIndex;
 
     private long created;
     @Setter
@@ -111,6 +121,17 @@ public class User implements Serializable, UserDetails {
     @Setter
     private ControlCode controlCode;
 
+    @Setter
+    private long version;
+
+    /**
+     * A new version stamp, to be stored with every write of the user. Random instead of incremented, as two stale
+     * copies of the same user would otherwise be saved with the same version for a different state.
+     */
+    public static long newVersion() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
     public User(CreateInstitutionEduID createInstitutionEduID, Map<String, Object> userInfo) {
         this.email = createInstitutionEduID.getEmail();
         this.chosenName = (String) userInfo.get("given_name");
@@ -118,6 +139,19 @@ public class User implements Serializable, UserDetails {
         this.familyName = (String) userInfo.get("family_name");
     }
 
+    /**
+     * Principal of a security context restored from a compact session, see CompactSessionCodec. Only the identifiers
+     * are present, callers re-fetch the user by id.
+     */
+    public static User sessionPrincipal(String id, String uid, String email, boolean serviceDeskMember) {
+        User user = new User();
+        user.id = id;
+        user.uid = uid;
+        user.email = email;
+        user.serviceDeskMember = serviceDeskMember;
+        return user;
+    }
+
     public User(String uid, String email, String chosenName, String givenName, String familyName,
                 String schacHomeOrganization, String preferredLanguage,
                 String serviceProviderEntityId, Manage manage) {
@@ -178,10 +212,11 @@ public class User implements Serializable, UserDetails {
      *
      * @param entityId unique entityID of the Service Provider
      * @param manage   responsible for retrieving the Service Provider metadata information
-     * @return the newly generated eduID or existing eduID
+     * @return the newly generated eduID or existing eduID and whether the eduID's of the user changed, other than the
+     * last login
      */
     @Transient
-    public String computeEduIdForServiceProviderIfAbsent(String entityId, Manage manage) {
+    public ComputedEduID computeEduIdForServiceProviderIfAbsent(String entityId, Manage manage) {
         //Not likely and not desirable, but we don't interrupt the login flow for missing services or when manage is down
         ServiceProvider serviceProvider;
         try {
@@ -190,7 +225,7 @@ public class User implements Serializable, UserDetails {
         } catch (RuntimeException e) {
             serviceProvider = new ServiceProvider(new RemoteProvider(entityId, entityId, entityId, null, null), null);
         }
-        return doComputeEduIDIfAbsent(serviceProvider, manage);
+        return doComputeEduIDIfAbsent(serviceProvider);
     }
 
     @Transient
@@ -198,51 +233,71 @@ public class User implements Serializable, UserDetails {
         //we want to pre-provision the eduID based on the institutional GUID, not the entityID
         remoteProvider.setEntityId(null);
         ServiceProvider serviceProvider = new ServiceProvider(remoteProvider, null);
-        return doComputeEduIDIfAbsent(serviceProvider, manage);
+        return doComputeEduIDIfAbsent(serviceProvider).value();
     }
 
-    private String doComputeEduIDIfAbsent(ServiceProvider serviceProvider, Manage manage) {
+    private ComputedEduID doComputeEduIDIfAbsent(ServiceProvider serviceProvider) {
         this.lastLogin = System.currentTimeMillis();
         serviceProvider.setLastLogin(new Date());
         String institutionGuid = serviceProvider.getInstitutionGuid();
         String entityId = serviceProvider.getEntityId();
-        //We need to be backward compatible, so we need to check both obsolete properties and the services
-        Optional<EduID> optionalExistingEduID = this.eduIDS.stream()
-                .filter(eduID -> {
-                    //Ensure we don't match institutionGUID's that are both null
-                    boolean matchByInstitutionGUID = StringUtils.hasText(institutionGuid) &&
-                            (institutionGuid.equals(eduID.getServiceInstutionGuid()) ||
-                                    eduID.getServices().stream().anyMatch(sp -> institutionGuid.equals(sp.getInstitutionGuid())));
-                    //Ensure we don't match entityId's that are both null
-                    boolean matchByEntityId = StringUtils.hasText(entityId) &&
-                            (entityId.equals(eduID.getServiceProviderEntityId()) ||
-                                    eduID.getServices().stream().anyMatch(sp -> entityId.equals(sp.getEntityId())));
-                    return matchByInstitutionGUID || matchByEntityId;
-                }).findFirst();
+        //We need to be backward compatible, so the index contains both obsolete properties and the services
+        EduIDIndex index = eduIDIndex();
+        Optional<EduID> optionalExistingEduID = index.find(entityId, institutionGuid);
         //If there is an existing eduID then we add or update the service for this eduID, otherwise add new one
-        String eduIDValue = optionalExistingEduID.map(
-                eduId -> eduId.updateServiceProvider(serviceProvider).getValue()
-        ).orElseGet(() -> {
-            EduID eduID = new EduID(UUID.randomUUID().toString(), serviceProvider);
-            this.eduIDS.add(eduID);
-            return eduID.getValue();
+        ComputedEduID computedEduID = optionalExistingEduID.map(existingEduID -> {
+            Date previousLastLogin = existingEduID.findServiceProvider(serviceProvider)
+                    .map(ServiceProvider::getLastLogin)
+                    .orElse(null);
+            boolean changed = existingEduID.mergeServiceProvider(serviceProvider);
+            index.index(existingEduID);
+            return new ComputedEduID(existingEduID.getValue(), entityId, changed, previousLastLogin);
+        }).orElseGet(() -> {
+            EduID newEduID = new EduID(UUID.randomUUID().toString(), serviceProvider);
+            this.eduIDS.add(newEduID);
+            index.index(newEduID);
+            return new ComputedEduID(newEduID.getValue(), entityId, true, null);
         });
-        //Let's be proactive and migrate the other eduID values as well
-        List<EduID> otherEduIDs = this.eduIDS.stream()
-                .filter(eduID -> !eduID.getValue().equals(eduIDValue))
-                //Only migrate old eduID's that have not been migrated already
-                .filter(eduID -> eduID.getServices().isEmpty() && eduID.getServiceProviderEntityId() != null)
-                .toList();
-        otherEduIDs.forEach(eduID -> {
-            String otherEntityId = eduID.getServiceProviderEntityId();
+        //The other, not yet migrated, eduID's are migrated by the LegacyEduIDMigration and not during login
+        return computedEduID;
+    }
+
+    /**
+     * Migrate the old eduID's - with only the obsolete properties - to eduID's with services.
+     *
+     * @param manage responsible for retrieving the Service Provider metadata information
+     * @return true if one or more eduID's were migrated
+     */
+    @Transient
+    @JsonIgnore
+    public boolean migrateLegacyEduIDs(Manage manage) {
+        boolean migrated = false;
+        for (EduID eduID : this.eduIDS) {
+            //Only migrate old eduID's that have not been migrated already
+            if (!eduID.getServices().isEmpty() || eduID.getServiceProviderEntityId() == null) {
+                continue;
+            }
             try {
-                manage.findServiceProviderByEntityId(otherEntityId)
-                        .ifPresent(eduID::updateServiceProvider);
+                Optional<ServiceProvider> serviceProvider = manage.findServiceProviderByEntityId(eduID.getServiceProviderEntityId());
+                if (serviceProvider.isPresent()) {
+                    eduID.updateServiceProvider(serviceProvider.get());
+                    migrated = true;
+                }
             } catch (RuntimeException e) {
                 // not to be helped
             }
-        });
-        return eduIDValue;
+        }
+        if (migrated) {
+            this.eduIDIndex = null;
+        }
+        return migrated;
+    }
+
+    private EduIDIndex eduIDIndex() {
+        if (this.eduIDIndex == null || !this.eduIDIndex.isValidFor(this.eduIDS)) {
+            this.eduIDIndex = new EduIDIndex(this.eduIDS);
+        }
+        return this.eduIDIndex;
     }
 
     @Override
@@ -314,21 +369,21 @@ public class User implements Serializable, UserDetails {
     @Transient
     @JsonIgnore
     public List<String> loginOptions() {
-        List<LoginOptions> result = new ArrayList<>();
+        int mask = 0;
         //Order by priority
         if (!CollectionUtils.isEmpty(this.surfSecureId) && (
                 this.surfSecureId.containsKey(SURFSecureID.PHONE_VERIFIED) ||
                         this.surfSecureId.containsKey(SURFSecureID.RECOVERY_CODE))) {
-            result.add(LoginOptions.APP);
+            mask |= 1;
         }
         if (!CollectionUtils.isEmpty(this.publicKeyCredentials)) {
-            result.add(LoginOptions.FIDO);
+            mask |= 2;
         }
         if (StringUtils.hasText(this.password)) {
-            result.add(LoginOptions.PASSWORD);
+            mask |= 4;
         }
-        result.add(LoginOptions.MAGIC);
-        return result.stream().map(LoginOptions::getValue).collect(Collectors.toList());
+        //The returned list is immutable
+        return LOGIN_OPTIONS.get(mask);
     }
 
     @Transient
@@ -464,7 +519,7 @@ public class User implements Serializable, UserDetails {
 
     public Map<String, Object> serviceDeskSummary() {
         return Map.of(
-                "name", String.format("%s %s", this.getDerivedGivenName(), this.getDerivedFamilyName()),
+                "name", new UserView(this).getFullName(),
                 "email", this.email,
                 "serviceDeskMember", this.serviceDeskMember
         );
@@ -476,4 +531,23 @@ public class User implements Serializable, UserDetails {
 
     }
 
+    private static List<List<String>> loginOptionCombinations() {
+        List<List<String>> combinations = new ArrayList<>();
+        for (int mask = 0; mask < 8; mask++) {
+            List<String> options = new ArrayList<>();
+            if ((mask & 1) != 0) {
+                options.add(LoginOptions.APP.getValue());
+            }
+            if ((mask & 2) != 0) {
+                options.add(LoginOptions.FIDO.getValue());
+            }
+            if ((mask & 4) != 0) {
+                options.add(LoginOptions.PASSWORD.getValue());
+            }
+            options.add(LoginOptions.MAGIC.getValue());
+            combinations.add(List.copyOf(options));
+        }
+        return List.copyOf(combinations);
+    }
+
 }
\ No newline at end of file
@@ -45,22 +45,28 @@ public class UserResponse implements Serializable {
                         Optional<Registration> optionalRegistration,
                         boolean rememberMe,
                         Manage manage,
-                        List<VerifyIssuer> issuers) {
+                        Map<String, VerifyIssuer> issuersById) {
+        UserView userView = new UserView(user);
         this.id = user.getId();
         this.email = user.getEmail();
         this.chosenName = user.getChosenName();
-        this.givenName = user.getDerivedGivenName();
-        this.familyName = user.getDerivedFamilyName();
-        this.dateOfBirth = user.getDerivedDateOfBirth();
-        this.displayName = this.givenName + " " + this.familyName;
+        this.givenName = userView.getGivenName();
+        this.familyName = userView.getFamilyName();
+        this.dateOfBirth = userView.getDateOfBirth();
+        this.displayName = userView.getFullName();
         this.schacHomeOrganization = user.getSchacHomeOrganization();
         this.uid = user.getUid();
         this.usePassword = StringUtils.hasText(user.getPassword());
         this.publicKeyCredentials = user.getPublicKeyCredentials();
         this.linkedAccounts = user.getLinkedAccounts();
         if (!CollectionUtils.isEmpty(this.linkedAccounts)) {
+            Set<String> schacHomeOrganizations = linkedAccounts.stream()
+                    .map(LinkedAccount::getSchacHomeOrganization)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+            Map<String, IdentityProvider> identityProviders = manage.findIdentityProvidersByDomainNames(schacHomeOrganizations);
             linkedAccounts.forEach(linkedAccount -> {
-                Optional<IdentityProvider> optionalIdentityProvider = manage.findIdentityProviderByDomainName(linkedAccount.getSchacHomeOrganization());
+                Optional<IdentityProvider> optionalIdentityProvider = Optional.ofNullable(identityProviders.get(linkedAccount.getSchacHomeOrganization()));
                 optionalIdentityProvider.ifPresent(identityProvider -> {
                     linkedAccount.setDisplayNameEn(identityProvider.getName());
                     linkedAccount.setDisplayNameNl(identityProvider.getNameNl());
@@ -72,7 +78,7 @@ public class UserResponse implements Serializable {
         this.externalLinkedAccounts = user.getExternalLinkedAccounts().stream()
                 .filter(externalLinkedAccount -> !externalLinkedAccount.getIdpScoping().equals(IdpScoping.studielink) ||
                         !Verification.Ongeverifieerd.equals(externalLinkedAccount.getVerification()))
-                .map(externalLinkedAccount -> externalLinkedAccount.logoReference(issuers))
+                .map(externalLinkedAccount -> externalLinkedAccount.logoReference(issuersById))
                 .collect(Collectors.toList());
         this.usePublicKey = !CollectionUtils.isEmpty(this.publicKeyCredentials);
         this.forgottenPassword = user.isForgottenPassword();
@@ -84,7 +90,7 @@ public class UserResponse implements Serializable {
             eduIdPerServiceProvider.values().removeIf(Objects::isNull);
         }
         this.eduIdPerServiceProvider = eduIdPerServiceProvider;
-        this.loginOptions = user.loginOptions();
+        this.loginOptions = userView.getLoginOptions();
         optionalRegistration.ifPresent(reg -> {
             if (!RegistrationStatus.FINALIZED.equals(reg.getStatus())) {
                 //Only finalized registrations are returned
@@ -0,0 +1,57 @@
+package myconext.model;
+
+import lombok.Getter;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The values derived from the linked accounts and credentials of a User, computed once for the building of one
+ * response, mail or assertion instead of once for every getter call. A view is a snapshot and is not kept on the
+ * User, because the User is loaded for every request and its lists are mutated in place; create a new view after
+ * changing the User.
+ */
+@Getter
+public class UserView {
+
+    private final User user;
+    private final Optional<ProvisionedLinkedAccount> preferredAccount;
+    private final String givenName;
+    private final String familyName;
+    private final Date dateOfBirth;
+    private final List<String> loginOptions;
+
+    public UserView(User user) {
+        this.user = user;
+        List<ProvisionedLinkedAccount> provisionedLinkedAccounts = new ArrayList<>();
+        if (user.getLinkedAccounts() != null) {
+            provisionedLinkedAccounts.addAll(user.getLinkedAccounts());
+        }
+        if (user.getExternalLinkedAccounts() != null) {
+            provisionedLinkedAccounts.addAll(user.getExternalLinkedAccounts());
+        }
+        this.preferredAccount = provisionedLinkedAccounts.stream()
+                .filter(ProvisionedLinkedAccount::isPreferred)
+                .findFirst();
+        Optional<ProvisionedLinkedAccount> latestAccount = provisionedLinkedAccounts.stream()
+                .filter(provisionedLinkedAccount -> provisionedLinkedAccount.getCreatedAt() != null)
+                .max(Comparator.comparing(ProvisionedLinkedAccount::getCreatedAt));
+        //Same precedence as User#getDerivedGivenName and User#getDerivedFamilyName
+        this.givenName = derivedName(latestAccount, ProvisionedLinkedAccount::getGivenName, user.getGivenName());
+        this.familyName = derivedName(latestAccount, ProvisionedLinkedAccount::getFamilyName, user.getFamilyName());
+        this.dateOfBirth = user.getDerivedDateOfBirth();
+        this.loginOptions = user.loginOptions();
+    }
+
+    public String getFullName() {
+        return this.givenName + " " + this.familyName;
+    }
+
+    private String derivedName(Optional<ProvisionedLinkedAccount> latestAccount,
+                               Function<ProvisionedLinkedAccount, String> nameProvider,
+                               String fallback) {
+        return this.preferredAccount.map(nameProvider)
+                .or(() -> latestAccount.map(nameProvider))
+                .orElse(fallback);
+    }
+}
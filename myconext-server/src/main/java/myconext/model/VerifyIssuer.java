@@ -3,6 +3,11 @@ package myconext.model;
 import lombok.*;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Getter
 @Setter
@@ -16,4 +21,9 @@ public class VerifyIssuer implements Serializable {
     private String name;
     private String logo;
 
+    public static Map<String, VerifyIssuer> byId(List<VerifyIssuer> issuers) {
+        return Collections.unmodifiableMap(issuers.stream()
+                .collect(Collectors.toMap(VerifyIssuer::getId, Function.identity(), (first, second) -> first)));
+    }
+
 }
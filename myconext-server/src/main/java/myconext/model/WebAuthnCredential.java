@@ -0,0 +1,53 @@
+package myconext.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.util.StringUtils;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Index of the WebAuthn credentials of all users, keyed on the credential ID. The {@link PublicKeyCredentials} of
+ * the user remain the source of truth, this view is derived from them to serve the WebAuthn lookups without loading
+ * and scanning the user.
+ */
+@NoArgsConstructor
+@Getter
+@Document(collection = "webauthn_credentials")
+public class WebAuthnCredential implements Serializable {
+
+    @Id
+    private String credentialId;
+
+    @Indexed
+    private String userId;
+
+    private String userHandle;
+
+    private String publicKeyCose;
+
+    public WebAuthnCredential(String credentialId, String userId, String userHandle, String publicKeyCose) {
+        this.credentialId = credentialId;
+        this.userId = userId;
+        this.userHandle = userHandle;
+        this.publicKeyCose = publicKeyCose;
+    }
+
+    public static List<WebAuthnCredential> of(User user) {
+        if (!StringUtils.hasText(user.getUserHandle())) {
+            return List.of();
+        }
+        return user.getPublicKeyCredentials().stream()
+                .filter(publicKeyCredentials -> StringUtils.hasText(publicKeyCredentials.getCredential()))
+                .map(publicKeyCredentials -> new WebAuthnCredential(
+                        publicKeyCredentials.getIdentifier(),
+                        user.getId(),
+                        user.getUserHandle(),
+                        publicKeyCredentials.getCredential()))
+                .toList();
+    }
+}
@@ -0,0 +1,139 @@
+package myconext.mongo;
+
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Publishes keys to the other nodes of the cluster through a capped collection which every node tails. A tailable
+ * cursor is used instead of a change stream, because change streams require a replica set. The listener is called
+ * on the tailer thread for every key published by another node; keys published by this node are skipped. When the
+ * capped collection has overwritten the position of the tailer, keys may have been lost and the missed listener is
+ * called instead.
+ */
+public class CappedCollectionNotifier {
+
+    private static final Log LOG = LogFactory.getLog(CappedCollectionNotifier.class);
+
+    private static final long COLLECTION_SIZE_BYTES = 1024 * 1024L;
+
+    private final MongoTemplate mongoTemplate;
+    private final String collectionName;
+    private final Consumer<String> listener;
+    private final Runnable missedListener;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Thread tailer;
+    private volatile boolean running = true;
+
+    public CappedCollectionNotifier(MongoTemplate mongoTemplate,
+                                    String collectionName,
+                                    Consumer<String> listener,
+                                    Runnable missedListener) {
+        this.mongoTemplate = mongoTemplate;
+        this.collectionName = collectionName;
+        this.listener = listener;
+        this.missedListener = missedListener;
+        ObjectId marker = initCollection();
+        this.tailer = new Thread(() -> this.tail(marker), collectionName + "-tailer");
+        this.tailer.setDaemon(true);
+        this.tailer.start();
+    }
+
+    public void publish(String key) {
+        try {
+            mongoTemplate.getCollection(collectionName).insertOne(new Document("key", key)
+                    .append("node", nodeId)
+                    .append("created", new Date()));
+        } catch (RuntimeException e) {
+            LOG.warn(String.format("Error publishing %s to %s", key, collectionName), e);
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        tailer.interrupt();
+    }
+
+    private ObjectId initCollection() {
+        if (!mongoTemplate.collectionExists(collectionName)) {
+            try {
+                mongoTemplate.createCollection(collectionName, CollectionOptions.empty().capped().size(COLLECTION_SIZE_BYTES));
+            } catch (RuntimeException e) {
+                //Another node was first
+                LOG.debug("Capped collection already created " + collectionName);
+            }
+        }
+        //A tailable cursor on a query without a result is closed immediately, so start from our own marker
+        ObjectId marker = new ObjectId();
+        mongoTemplate.getCollection(collectionName).insertOne(new Document("_id", marker)
+                .append("node", nodeId)
+                .append("created", new Date()));
+        return marker;
+    }
+
+    private void tail(ObjectId marker) {
+        ObjectId lastId = marker;
+        MongoCollection<Document> collection = mongoTemplate.getCollection(collectionName);
+        while (running) {
+            try (MongoCursor<Document> cursor = collection.find(Filters.gte("_id", lastId))
+                    .cursorType(CursorType.TailableAwait)
+                    .maxAwaitTime(1, TimeUnit.SECONDS)
+                    .iterator()) {
+                boolean first = true;
+                while (running) {
+                    Document document = cursor.tryNext();
+                    if (document == null) {
+                        if (cursor.getServerCursor() == null) {
+                            //Cursor is dead, e.g. because the capped collection has overwritten our position
+                            sleepQuietly();
+                            break;
+                        }
+                        continue;
+                    }
+                    ObjectId id = document.getObjectId("_id");
+                    if (first) {
+                        first = false;
+                        if (id.equals(lastId)) {
+                            //Already delivered
+                            continue;
+                        }
+                        //Our position has been overwritten by the capped collection
+                        LOG.warn(String.format("Tailer of %s has fallen behind, keys may have been lost", collectionName));
+                        missedListener.run();
+                    }
+                    lastId = id;
+                    String key = document.getString("key");
+                    if (key != null && !nodeId.equals(document.getString("node"))) {
+                        listener.accept(key);
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (running) {
+                    LOG.warn("Error tailing " + collectionName + ", retrying", e);
+                    sleepQuietly();
+                }
+            }
+        }
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(1000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -4,15 +4,22 @@ import com.github.cloudyrock.mongock.ChangeLog;
 import com.github.cloudyrock.mongock.ChangeSet;
 import com.github.cloudyrock.mongock.driver.mongodb.springdata.v4.decorator.impl.MongockTemplate;
 import lombok.SneakyThrows;
+import myconext.mail.EmailSpamGuard;
 import myconext.manage.Manage;
 import myconext.model.EduID;
 import myconext.model.LinkedAccount;
 import myconext.model.PublicKeyCredentials;
 import myconext.model.User;
+import myconext.model.WebAuthnCredential;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
 import org.springframework.data.util.StreamUtils;
 import org.springframework.util.CollectionUtils;
@@ -22,6 +29,7 @@ import java.text.SimpleDateFormat;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -234,6 +242,116 @@ public class Migrations {
         mongoTemplate.remove(new Query(), "sessions");
     }
 
+    @ChangeSet(order = "019", id = "indexWebAuthnCredentials", author = "okke.harsta@surf.nl")
+    public void indexWebAuthnCredentials(MongockTemplate mongoTemplate) {
+        Query query = Query.query(Criteria.where("publicKeyCredentials.0").exists(true));
+        //Prevent to load everything into memory
+        mongoTemplate.stream(query, User.class, "users")
+                .forEach(user -> WebAuthnCredential.of(user).forEach(mongoTemplate::save));
+    }
+
+    @ChangeSet(order = "020", id = "deleteChallengesWithoutExpiry", author = "okke.harsta@surf.nl")
+    public void deleteChallengesWithoutExpiry(MongockTemplate mongoTemplate) {
+        //Challenges are short-lived, the old ones have no expiry for the TTL index and may have duplicate tokens
+        mongoTemplate.remove(new Query(), "challenges");
+    }
+
+    @SuppressWarnings("unchecked")
+    @ChangeSet(order = "021", id = "normalizeEmailsSend", author = "okke.harsta@surf.nl")
+    public void normalizeEmailsSend(MongockTemplate mongoTemplate) {
+        //The spam guard stores one record per normalized email. The unique index is created after the duplicates, that
+        //differ only in case, are removed
+        IndexOperations indexOperations = mongoTemplate.indexOps("emails_send");
+        indexOperations.getIndexInfo().stream()
+                .map(IndexInfo::getName)
+                .filter(name -> name.contains("email"))
+                .forEach(indexOperations::dropIndex);
+        //The most recent record of every email comes first and is kept
+        Query query = new Query().with(Sort.by(Sort.Direction.DESC, "sendAt")).allowDiskUse(true);
+        query.fields().include("email");
+        Set<String> normalizedEmails = new HashSet<>();
+        List<Object> duplicateIdentifiers = new ArrayList<>();
+        AtomicInteger removed = new AtomicInteger();
+        //Prevent to load everything into memory
+        mongoTemplate.stream(query, Map.class, "emails_send")
+                .forEach(emailsSend -> {
+                    Object email = emailsSend.get("email");
+                    String normalizedEmail = email != null ? EmailSpamGuard.normalize(email.toString()) : null;
+                    if (normalizedEmail == null || !normalizedEmails.add(normalizedEmail)) {
+                        duplicateIdentifiers.add(emailsSend.get("_id"));
+                        if (duplicateIdentifiers.size() == 1000) {
+                            removed.addAndGet(removeEmailsSend(mongoTemplate, duplicateIdentifiers));
+                        }
+                    } else if (!normalizedEmail.equals(email)) {
+                        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(emailsSend.get("_id"))),
+                                new Update().set("email", normalizedEmail), "emails_send");
+                    }
+                });
+        removed.addAndGet(removeEmailsSend(mongoTemplate, duplicateIdentifiers));
+        indexOperations.ensureIndex(new Index("email", Sort.Direction.ASC).named("emails_send_email_unique").unique());
+        //The windows of the records written before the spam guard have passed, the TTL index removes them
+        mongoTemplate.updateMulti(Query.query(Criteria.where("expiresAt").exists(false)),
+                new Update().set("expiresAt", new Date()), "emails_send");
+        LOG.info(String.format("Removed %s duplicate emails_send records", removed.get()));
+    }
+
+    @SuppressWarnings("unchecked")
+    @ChangeSet(order = "022", id = "uniqueControlCodes", author = "okke.harsta@surf.nl")
+    public void uniqueControlCodes(MongockTemplate mongoTemplate) {
+        //Control codes were not unique. The oldest control code is kept and the other users with the same code have to
+        //create a new control code, otherwise the unique index can not be created
+        Query query = Query.query(Criteria.where("controlCode.code").exists(true));
+        query.fields().include("controlCode");
+        Map<Object, Map> oldestPerCode = new HashMap<>();
+        List<Object> duplicateUserIdentifiers = new ArrayList<>();
+        mongoTemplate.find(query, Map.class, "users").forEach(user -> {
+            Map<String, Object> controlCode = (Map<String, Object>) user.get("controlCode");
+            Map oldest = oldestPerCode.putIfAbsent(controlCode.get("code"), user);
+            if (oldest != null) {
+                boolean older = createdAt(user) < createdAt(oldest);
+                duplicateUserIdentifiers.add(older ? oldest.get("_id") : user.get("_id"));
+                if (older) {
+                    oldestPerCode.put(controlCode.get("code"), user);
+                }
+            }
+        });
+        if (!duplicateUserIdentifiers.isEmpty()) {
+            mongoTemplate.updateMulti(Query.query(Criteria.where("_id").in(duplicateUserIdentifiers)),
+                    new Update().unset("controlCode"), "users");
+        }
+        IndexOperations indexOperations = mongoTemplate.indexOps("users");
+        indexOperations.getIndexInfo().stream()
+                .map(IndexInfo::getName)
+                .filter(name -> name.startsWith("controlCode.code"))
+                .forEach(indexOperations::dropIndex);
+        indexOperations.ensureIndex(new Index("controlCode.code", Sort.Direction.ASC)
+                .named("user_control_code_unique")
+                .unique()
+                .sparse());
+        LOG.info(String.format("Removed %s duplicate control codes", duplicateUserIdentifiers.size()));
+    }
+
+    @ChangeSet(order = "023", id = "deleteSessionAfterCompactSessionCodec", author = "okke.harsta@surf.nl")
+    public void deleteSessionAfterCompactSessionCodec(MongockTemplate mongoTemplate) {
+        //The sessions of the JdkMongoSessionConverter contain a serialized user which is no longer compatible
+        mongoTemplate.remove(new Query(), "sessions");
+    }
+
+    @SuppressWarnings("unchecked")
+    private long createdAt(Map user) {
+        Object createdAt = ((Map<String, Object>) user.get("controlCode")).get("createdAt");
+        return createdAt instanceof Number ? ((Number) createdAt).longValue() : Long.MAX_VALUE;
+    }
+
+    private int removeEmailsSend(MongockTemplate mongoTemplate, List<Object> identifiers) {
+        int size = identifiers.size();
+        if (size > 0) {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(identifiers)), "emails_send");
+            identifiers.clear();
+        }
+        return size;
+    }
+
     protected User mergeEduIDs(User user) {
         List<EduID> eduIDS = user.getEduIDS();
         //Make a copy to search in
@@ -4,7 +4,9 @@ import io.mongock.driver.mongodb.springdata.v4.SpringDataMongoV4Driver;
 import io.mongock.runner.springboot.MongockSpringboot;
 import io.mongock.runner.springboot.base.MongockApplicationRunner;
 import lombok.SneakyThrows;
+import myconext.model.Challenge;
 import myconext.model.EmailsSend;
+import myconext.model.OutboxMail;
 import myconext.model.User;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
@@ -29,6 +31,7 @@ import tiqr.org.model.Authentication;
 import tiqr.org.model.Enrollment;
 import tiqr.org.model.Registration;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
@@ -99,6 +102,14 @@ public class MongoMapping {
                             .unique());
         }
 
+        //The eduID of a client is looked up with an $or query and every clause of an $or needs its own index
+        IndexOperations userIndex = mongoTemplate.indexOps(User.class);
+        userIndex.ensureIndex(
+                new Index("eduIDS.serviceProviderEntityId", Sort.Direction.ASC));
+        userIndex.ensureIndex(
+                new Index("eduIDS.services.entityId", Sort.Direction.ASC));
+        //The unique index on the control code is created by Migrations#uniqueControlCodes
+
         //tiqr
         mongoTemplate.indexOps(Enrollment.class).ensureIndex(
                 new Index("key", Sort.Direction.ASC));
@@ -112,8 +123,18 @@ public class MongoMapping {
         }
         registrationsIndex.ensureIndex(
                 new Index("userId", Sort.Direction.ASC));
-        mongoTemplate.indexOps(EmailsSend.class).ensureIndex(
-                new Index("email", Sort.Direction.ASC).collation(Collation.of(Locale.ENGLISH).strength(2)));
+        //The unique index on the normalized email of emails_send is created by Migrations#normalizeEmailsSend
+        IndexOperations emailsSendIndex = mongoTemplate.indexOps(EmailsSend.class);
+        emailsSendIndex.ensureIndex(
+                new Index("expiresAt", Sort.Direction.ASC).expire(Duration.ZERO));
+        mongoTemplate.indexOps(OutboxMail.class).ensureIndex(
+                new Index("status", Sort.Direction.ASC).on("nextAttemptAt", Sort.Direction.ASC));
+        //WebAuthn challenges are looked up - and replaced - by token and abandoned ones expire by TTL
+        IndexOperations challengeIndex = mongoTemplate.indexOps(Challenge.class);
+        challengeIndex.ensureIndex(
+                new Index("token", Sort.Direction.ASC).unique());
+        challengeIndex.ensureIndex(
+                new Index("expiresAt", Sort.Direction.ASC).expire(Duration.ZERO));
     }
 
 }
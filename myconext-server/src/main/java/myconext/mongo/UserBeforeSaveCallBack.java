@@ -23,6 +23,9 @@ public class UserBeforeSaveCallBack implements BeforeSaveCallback<User> {
         if (givenName != null) {
             entity.setGivenName(givenName.trim());
         }
+        //Every save gets a new version, which is the base of the ETag of the user details for the GUI and the app
+        entity.setVersion(User.newVersion());
+        document.put("version", entity.getVersion());
         return entity;
     }
 }
@@ -0,0 +1,24 @@
+package myconext.remotecreation;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.springframework.http.HttpStatus;
+
+@Schema(description = "The result of one item of a batch, streamed as one line of newline delimited JSON")
+public record BatchItemResult(
+        @Schema(description = "Zero-based position of the item in the batch")
+        int index,
+        @Schema(description = "The status of the single endpoint for this item")
+        int status,
+        @Schema(description = "The eduID of the item, absent for failures")
+        String eduIDValue,
+        @Schema(description = "The reason of a failure, absent for success")
+        String message) {
+
+    static BatchItemResult success(int index, HttpStatus status, String eduIDValue) {
+        return new BatchItemResult(index, status.value(), eduIDValue, null);
+    }
+
+    static BatchItemResult failure(int index, HttpStatus status, String message) {
+        return new BatchItemResult(index, status.value(), null, message);
+    }
+}
@@ -0,0 +1,53 @@
+package myconext.remotecreation;
+
+import myconext.manage.Manage;
+import myconext.model.IdentityProvider;
+import myconext.model.ServiceProvider;
+
+import java.util.*;
+
+/**
+ * Manage for the duration of one batch of the remote creation API. The students in a batch share a few BRIN codes
+ * and one institution, and the BRIN code and institution GUID are searched in Manage with a remote call. Within a
+ * batch every BRIN code and institution GUID is searched once. Not thread-safe, a batch is handled by one thread.
+ */
+class BatchManage implements Manage {
+
+    private final Manage manage;
+    private final Map<String, Optional<IdentityProvider>> identityProvidersByBrinCode = new HashMap<>();
+    private final Map<String, Optional<IdentityProvider>> identityProvidersByInstitutionGUID = new HashMap<>();
+
+    BatchManage(Manage manage) {
+        this.manage = manage;
+    }
+
+    @Override
+    public Optional<ServiceProvider> findServiceProviderByEntityId(String entityId) {
+        return manage.findServiceProviderByEntityId(entityId);
+    }
+
+    @Override
+    public Set<String> getDomainNames() {
+        return manage.getDomainNames();
+    }
+
+    @Override
+    public Optional<IdentityProvider> findIdentityProviderByDomainName(String domainName) {
+        return manage.findIdentityProviderByDomainName(domainName);
+    }
+
+    @Override
+    public Map<String, IdentityProvider> findIdentityProvidersByDomainNames(Collection<String> domainNames) {
+        return manage.findIdentityProvidersByDomainNames(domainNames);
+    }
+
+    @Override
+    public Optional<IdentityProvider> findIdentityProviderByBrinCode(String brinCode) {
+        return identityProvidersByBrinCode.computeIfAbsent(brinCode, manage::findIdentityProviderByBrinCode);
+    }
+
+    @Override
+    public Optional<IdentityProvider> findIdentityProviderByInstitutionGUID(String institutionGUID) {
+        return identityProvidersByInstitutionGUID.computeIfAbsent(institutionGUID, manage::findIdentityProviderByInstitutionGUID);
+    }
+}
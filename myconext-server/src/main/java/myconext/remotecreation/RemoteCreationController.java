@@ -1,5 +1,8 @@
 package myconext.remotecreation;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -7,6 +10,11 @@ import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ValidationException;
+import jakarta.validation.Validator;
 import lombok.Getter;
 import myconext.api.HasUserRepository;
 import myconext.exceptions.DuplicateUserEmailException;
@@ -20,8 +28,17 @@ import myconext.security.RemoteUser;
 import myconext.verify.AttributeMapper;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Collation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -31,8 +48,12 @@ import org.springframework.util.StringUtils;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.Optional;
-import java.util.UUID;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static myconext.SwaggerOpenIdConfig.BASIC_AUTHENTICATION_SCHEME_NAME;
 
@@ -49,12 +70,27 @@ public class RemoteCreationController implements HasUserRepository {
     private final Manage manage;
     private final MailBox mailBox;
     private final AttributeMapper attributeMapper;
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int batchChunkSize;
 
-    public RemoteCreationController(UserRepository userRepository, Manage manage, MailBox mailBox, AttributeMapper attributeMapper) {
+    public RemoteCreationController(UserRepository userRepository,
+                                    Manage manage,
+                                    MailBox mailBox,
+                                    AttributeMapper attributeMapper,
+                                    MongoTemplate mongoTemplate,
+                                    ObjectMapper objectMapper,
+                                    Validator validator,
+                                    @Value("${remote_creation_batch_chunk_size}") int batchChunkSize) {
         this.userRepository = userRepository;
         this.manage = manage;
         this.mailBox = mailBox;
         this.attributeMapper = attributeMapper;
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.batchChunkSize = batchChunkSize;
     }
 
     @GetMapping(value = {"/email-eduid-exists"})
@@ -203,21 +239,11 @@ public class RemoteCreationController implements HasUserRepository {
         userRepository.findUserByEmail(email).ifPresent(u -> {
             throw new DuplicateUserEmailException("There already exists a user with email " + email);
         });
-        RemoteProvider remoteProvider = getRemoteProvider(remoteUser, apiUserName);
-        String lastNamePrefix = externalEduID.getLastNamePrefix();
-        String lastName = StringUtils.hasText(lastNamePrefix) ? String.format("%s %s", lastNamePrefix, externalEduID.getLastName()) : externalEduID.getLastName();
-        User user = new User(UUID.randomUUID().toString(), externalEduID.getEmail(), externalEduID.getChosenName(),
-                externalEduID.getFirstName(), lastName, remoteUser.getSchacHome(), LocaleContextHolder.getLocale().getLanguage(), remoteProvider
-                , manage);
-        //Otherwise another email is sent out when the user logs in
-        user.setNewUser(false);
+        User user = newUser(remoteUser, externalEduID, manage);
 
         String eduIDValue = user.getEduIDS().get(0).getValue();
         UpdateExternalEduID updateExternalEduID = new UpdateExternalEduID(externalEduID, eduIDValue);
 
-        ExternalLinkedAccount externalLinkedAccount = attributeMapper.createExternalLinkedAccount(externalEduID, IdpScoping.valueOf(apiUserName));
-        user.getExternalLinkedAccounts().add(externalLinkedAccount);
-
         userRepository.save(user);
         mailBox.sendAccountConfirmation(user);
 
@@ -259,24 +285,7 @@ public class RemoteCreationController implements HasUserRepository {
          */
         User user = this.findUserByEduIDValue(eduIDValue)
                 .orElseThrow(() -> new UserNotFoundException(String.format("User not found by eduID %s", eduIDValue)));
-        user.updateWithExternalEduID(externalEduID);
-        Optional<ExternalLinkedAccount> optionalExternalLinkedAccount = user.getExternalLinkedAccounts().stream()
-                .filter(account -> IdpScoping.valueOf(remoteUserName).equals(account.getIdpScoping()))
-                .findAny();
-        optionalExternalLinkedAccount.ifPresentOrElse(externalLinkedAccount -> {
-            //Not all external attributes can be changed
-            externalLinkedAccount.setVerification(externalEduID.getVerification());
-            externalLinkedAccount.setAffiliations(AttributeMapper.externalAffiliations(externalEduID.getBrinCodes(), manage));
-            externalLinkedAccount.setBrinCodes(externalEduID.getBrinCodes());
-            externalLinkedAccount.setDateOfBirth(AttributeMapper.parseDate(externalEduID.getDateOfBirth()));
-        }, () -> {
-            //Create external account for this remoteAPI user
-            RemoteProvider remoteProvider = getRemoteProvider(remoteUser, remoteUserName);
-            String provisionedEduIDValue = user.computeEduIdForIdentityProviderProviderIfAbsent(remoteProvider, manage);
-            externalEduID.setEduIDValue(provisionedEduIDValue);
-            ExternalLinkedAccount externalLinkedAccount = attributeMapper.createExternalLinkedAccount(externalEduID, IdpScoping.valueOf(remoteUserName));
-            user.getExternalLinkedAccounts().add(externalLinkedAccount);
-        });
+        updateUser(remoteUser, user, externalEduID, manage);
 
         userRepository.save(user);
         return ResponseEntity.status(HttpStatus.CREATED).body(externalEduID);
@@ -311,6 +320,350 @@ public class RemoteCreationController implements HasUserRepository {
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
 
+    @PostMapping(value = {"/eduid-create/batch"},
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('ROLE_remote-creation')")
+    @Operation(summary = "Create eduIDs in batch",
+            description = "Create an eduID for every item of a JSON array or newline delimited JSON with the same items " +
+                    "as the single eduid-create. The result of every item is streamed as a line of newline delimited JSON " +
+                    "with the status of the single endpoint",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK",
+                            content = {@Content(schema = @Schema(implementation = BatchItemResult.class),
+                                    examples = {@ExampleObject(value = """
+                                            {"index":0,"status":201,"eduIDValue":"46ab5162-e098-4c24-9f28-cdf4d9b5fbb0"}
+                                            {"index":1,"status":409,"message":"There already exists a user with email jdoe@example.com"}
+                                            """)})})})
+    public void createEduIDs(@Parameter(hidden = true) @AuthenticationPrincipal(errorOnInvalidType = true) RemoteUser remoteUser,
+                             HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        LOG.info(String.format("POST eduid-create/batch by %s", remoteUser.getUsername()));
+        //Emails must also be unique within the batch
+        Set<String> batchEmails = new HashSet<>();
+        processBatch(request, response, NewExternalEduID.class,
+                (items, batchManage) -> createEduIDs(remoteUser, items, batchManage, batchEmails));
+    }
+
+    @PutMapping(value = {"/eduid-update/batch"},
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('ROLE_remote-creation')")
+    @Operation(summary = "Update eduIDs in batch",
+            description = "Update the eduID for every item of a JSON array or newline delimited JSON with the same items " +
+                    "as the single eduid-update. The result of every item is streamed as a line of newline delimited JSON " +
+                    "with the status of the single endpoint",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK",
+                            content = {@Content(schema = @Schema(implementation = BatchItemResult.class),
+                                    examples = {@ExampleObject(value = """
+                                            {"index":0,"status":201,"eduIDValue":"46ab5162-e098-4c24-9f28-cdf4d9b5fbb0"}
+                                            {"index":1,"status":404,"message":"User not found by eduID 12345"}
+                                            """)})})})
+    public void updateEduIDs(@Parameter(hidden = true) @AuthenticationPrincipal(errorOnInvalidType = true) RemoteUser remoteUser,
+                             HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        LOG.info(String.format("PUT eduid-update/batch by %s", remoteUser.getUsername()));
+        processBatch(request, response, UpdateExternalEduID.class,
+                (items, batchManage) -> updateEduIDs(remoteUser, items, batchManage));
+    }
+
+    @PostMapping(value = {"/eduid-institution-pseudonym/batch"},
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('ROLE_remote-creation')")
+    @Operation(summary = "Return eduID pseudonyms for institutions in batch",
+            description = "Return the eduID pseudonym for every item of a JSON array or newline delimited JSON with the " +
+                    "same items as the single eduid-institution-pseudonym. The result of every item is streamed as a line " +
+                    "of newline delimited JSON with the status of the single endpoint",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK",
+                            content = {@Content(schema = @Schema(implementation = BatchItemResult.class),
+                                    examples = {@ExampleObject(value = """
+                                            {"index":0,"status":200,"eduIDValue":"46ab5162-e098-4c24-9f28-cdf4d9b5fbb0"}
+                                            {"index":1,"status":404,"message":"IdentityProvider with BRIN code AB!@ not found"}
+                                            """)})})})
+    public void eduIDsForInstitution(@Parameter(hidden = true) @AuthenticationPrincipal(errorOnInvalidType = true) RemoteUser remoteUser,
+                                     HttpServletRequest request,
+                                     HttpServletResponse response) throws IOException {
+        LOG.info(String.format("POST eduid-institution-pseudonym/batch by %s", remoteUser.getUsername()));
+        processBatch(request, response, EduIDInstitutionPseudonym.class, this::eduIDsForInstitution);
+    }
+
+    private User newUser(RemoteUser remoteUser, NewExternalEduID externalEduID, Manage manage) {
+        String apiUserName = remoteUser.getUsername();
+        RemoteProvider remoteProvider = getRemoteProvider(remoteUser, apiUserName);
+        String lastNamePrefix = externalEduID.getLastNamePrefix();
+        String lastName = StringUtils.hasText(lastNamePrefix) ? String.format("%s %s", lastNamePrefix, externalEduID.getLastName()) : externalEduID.getLastName();
+        User user = new User(UUID.randomUUID().toString(), externalEduID.getEmail(), externalEduID.getChosenName(),
+                externalEduID.getFirstName(), lastName, remoteUser.getSchacHome(), LocaleContextHolder.getLocale().getLanguage(), remoteProvider
+                , manage);
+        //Otherwise another email is sent out when the user logs in
+        user.setNewUser(false);
+
+        ExternalLinkedAccount externalLinkedAccount = attributeMapper.createExternalLinkedAccount(externalEduID, IdpScoping.valueOf(apiUserName), manage);
+        user.getExternalLinkedAccounts().add(externalLinkedAccount);
+        return user;
+    }
+
+    private void updateUser(RemoteUser remoteUser, User user, UpdateExternalEduID externalEduID, Manage manage) {
+        String remoteUserName = remoteUser.getUsername();
+        user.updateWithExternalEduID(externalEduID);
+        Optional<ExternalLinkedAccount> optionalExternalLinkedAccount = user.getExternalLinkedAccounts().stream()
+                .filter(account -> IdpScoping.valueOf(remoteUserName).equals(account.getIdpScoping()))
+                .findAny();
+        optionalExternalLinkedAccount.ifPresentOrElse(externalLinkedAccount -> {
+            //Not all external attributes can be changed
+            externalLinkedAccount.setVerification(externalEduID.getVerification());
+            externalLinkedAccount.setAffiliations(AttributeMapper.externalAffiliations(externalEduID.getBrinCodes(), manage));
+            externalLinkedAccount.setBrinCodes(externalEduID.getBrinCodes());
+            externalLinkedAccount.setDateOfBirth(AttributeMapper.parseDate(externalEduID.getDateOfBirth()));
+        }, () -> {
+            //Create external account for this remoteAPI user
+            RemoteProvider remoteProvider = getRemoteProvider(remoteUser, remoteUserName);
+            String provisionedEduIDValue = user.computeEduIdForIdentityProviderProviderIfAbsent(remoteProvider, manage);
+            externalEduID.setEduIDValue(provisionedEduIDValue);
+            ExternalLinkedAccount externalLinkedAccount = attributeMapper.createExternalLinkedAccount(externalEduID, IdpScoping.valueOf(remoteUserName), manage);
+            user.getExternalLinkedAccounts().add(externalLinkedAccount);
+        });
+    }
+
+    private List<BatchItemResult> createEduIDs(RemoteUser remoteUser,
+                                               List<BatchItem<NewExternalEduID>> items,
+                                               Manage batchManage,
+                                               Set<String> batchEmails) {
+        List<BatchItemResult> results = new ArrayList<>();
+        Set<String> existingEmails = existingEmails(items.stream()
+                .map(item -> item.value().getEmail())
+                .filter(StringUtils::hasText)
+                .toList());
+        List<BatchItem<User>> newUsers = new ArrayList<>();
+        items.forEach(item -> {
+            NewExternalEduID externalEduID = item.value();
+            try {
+                externalEduID.validate();
+                String email = externalEduID.getEmail();
+                if (StringUtils.hasText(email) &&
+                        (existingEmails.contains(email.toLowerCase(Locale.ROOT)) || !batchEmails.add(email.toLowerCase(Locale.ROOT)))) {
+                    throw new DuplicateUserEmailException("There already exists a user with email " + email);
+                }
+                newUsers.add(new BatchItem<>(item.index(), newUser(remoteUser, externalEduID, batchManage)));
+            } catch (RuntimeException e) {
+                results.add(failure(item.index(), e));
+            }
+        });
+        if (newUsers.isEmpty()) {
+            return results;
+        }
+        //Inserted instead of upserted, so a concurrent creation of the same email is reported by the unique index
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        newUsers.forEach(item -> bulkOperations.insert(item.value()));
+        Map<Integer, BulkWriteError> errors = execute(bulkOperations);
+        for (int i = 0; i < newUsers.size(); i++) {
+            BatchItem<User> item = newUsers.get(i);
+            BulkWriteError error = errors.get(i);
+            if (error == null) {
+                User user = item.value();
+                mailBox.sendAccountConfirmation(user);
+                results.add(BatchItemResult.success(item.index(), HttpStatus.CREATED, user.getEduIDS().get(0).getValue()));
+            } else {
+                results.add(failure(item.index(), error));
+            }
+        }
+        return results;
+    }
+
+    private List<BatchItemResult> updateEduIDs(RemoteUser remoteUser,
+                                               List<BatchItem<UpdateExternalEduID>> items,
+                                               Manage batchManage) {
+        List<BatchItemResult> results = new ArrayList<>();
+        Map<String, User> users = usersByEduIDValue(items.stream().map(item -> item.value().getEduIDValue()).toList());
+        Map<String, List<BatchItemResult>> updatedUsers = new LinkedHashMap<>();
+        items.forEach(item -> {
+            UpdateExternalEduID externalEduID = item.value();
+            String eduIDValue = externalEduID.getEduIDValue();
+            try {
+                User user = Optional.ofNullable(users.get(eduIDValue))
+                        .orElseThrow(() -> new UserNotFoundException(String.format("User not found by eduID %s", eduIDValue)));
+                updateUser(remoteUser, user, externalEduID, batchManage);
+                updatedUsers.computeIfAbsent(user.getId(), id -> new ArrayList<>())
+                        .add(BatchItemResult.success(item.index(), HttpStatus.CREATED, externalEduID.getEduIDValue()));
+            } catch (RuntimeException e) {
+                results.add(failure(item.index(), e));
+            }
+        });
+        results.addAll(replaceUsers(users.values(), updatedUsers));
+        return results;
+    }
+
+    private List<BatchItemResult> eduIDsForInstitution(List<BatchItem<EduIDInstitutionPseudonym>> items,
+                                                       Manage batchManage) {
+        List<BatchItemResult> results = new ArrayList<>();
+        Map<String, User> users = usersByEduIDValue(items.stream().map(item -> item.value().getEduID()).toList());
+        Map<String, List<BatchItemResult>> updatedUsers = new LinkedHashMap<>();
+        items.forEach(item -> {
+            EduIDInstitutionPseudonym eduIDInstitutionPseudonym = item.value();
+            try {
+                User user = Optional.ofNullable(users.get(eduIDInstitutionPseudonym.getEduID()))
+                        .orElseThrow(() -> new UserNotFoundException(String.format("User with eduID %s not found", eduIDInstitutionPseudonym.getEduID())));
+                IdentityProvider identityProvider = batchManage.findIdentityProviderByBrinCode(eduIDInstitutionPseudonym.getBrinCode())
+                        .orElseThrow(() -> new IdentityProviderNotFoundException(String.format("IdentityProvider with BRIN code %s not found", eduIDInstitutionPseudonym.getBrinCode())));
+                String eduIDValue = user.computeEduIdForIdentityProviderProviderIfAbsent(identityProvider, batchManage);
+                updatedUsers.computeIfAbsent(user.getId(), id -> new ArrayList<>())
+                        .add(BatchItemResult.success(item.index(), HttpStatus.OK, eduIDValue));
+            } catch (RuntimeException e) {
+                results.add(failure(item.index(), e));
+            }
+        });
+        results.addAll(replaceUsers(users.values(), updatedUsers));
+        return results;
+    }
+
+    /*
+     * Reads the items - a JSON array or newline delimited JSON - in chunks. Every chunk is looked up and persisted in
+     * bulk and the results of the chunk are flushed, so the response is streamed while the batch is processed.
+     */
+    private <T> void processBatch(HttpServletRequest request,
+                                  HttpServletResponse response,
+                                  Class<T> itemType,
+                                  BiFunction<List<BatchItem<T>>, Manage, List<BatchItemResult>> chunkHandler) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        Manage batchManage = new BatchManage(manage);
+        OutputStream outputStream = response.getOutputStream();
+        //A JSON array is read as a sequence of its elements, just like newline delimited JSON
+        try (MappingIterator<T> iterator = objectMapper.readerFor(itemType).readValues(request.getInputStream())) {
+            int index = 0;
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                List<BatchItem<T>> chunk = new ArrayList<>();
+                List<BatchItemResult> results = new ArrayList<>();
+                for (int read = 0; read < batchChunkSize; read++) {
+                    T item;
+                    try {
+                        if (!iterator.hasNextValue()) {
+                            endOfInput = true;
+                            break;
+                        }
+                        item = iterator.nextValue();
+                    } catch (IOException | RuntimeException e) {
+                        //The position in the input is lost after a parse error, the remainder of the batch is skipped
+                        results.add(BatchItemResult.failure(index, HttpStatus.BAD_REQUEST, e.getMessage()));
+                        endOfInput = true;
+                        break;
+                    }
+                    Set<ConstraintViolation<T>> violations = validator.validate(item);
+                    if (violations.isEmpty()) {
+                        chunk.add(new BatchItem<>(index, item));
+                    } else {
+                        String message = violations.stream()
+                                .map(violation -> String.format("%s %s", violation.getPropertyPath(), violation.getMessage()))
+                                .sorted()
+                                .collect(Collectors.joining(", "));
+                        results.add(BatchItemResult.failure(index, HttpStatus.BAD_REQUEST, message));
+                    }
+                    index++;
+                }
+                if (!chunk.isEmpty()) {
+                    results.addAll(chunkHandler.apply(chunk, batchManage));
+                }
+                results.sort(Comparator.comparingInt(BatchItemResult::index));
+                for (BatchItemResult result : results) {
+                    outputStream.write(objectMapper.writeValueAsBytes(result));
+                    outputStream.write('\n');
+                }
+                outputStream.flush();
+            }
+        }
+    }
+
+    private Set<String> existingEmails(List<String> emails) {
+        if (emails.isEmpty()) {
+            return Collections.emptySet();
+        }
+        //Same collation as the case-insensitive unique index on email
+        Query query = Query.query(Criteria.where("email").in(emails))
+                .collation(Collation.of(Locale.ENGLISH).strength(2));
+        query.fields().include("email");
+        return mongoTemplate.find(query, User.class).stream()
+                .map(user -> user.getEmail().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+    }
+
+    private Map<String, User> usersByEduIDValue(List<String> eduIDValues) {
+        Set<String> values = eduIDValues.stream().filter(StringUtils::hasText).collect(Collectors.toSet());
+        Map<String, User> users = new HashMap<>();
+        if (values.isEmpty()) {
+            return users;
+        }
+        mongoTemplate.find(Query.query(Criteria.where("eduIDS.value").in(values)), User.class)
+                .forEach(user -> user.getEduIDS().stream()
+                        .map(EduID::getValue)
+                        .filter(values::contains)
+                        .forEach(value -> users.put(value, user)));
+        return users;
+    }
+
+    /*
+     * Replaces all updated users in one bulk write. A user can be updated by more items of a chunk, the results of
+     * those items depend on the write of the user.
+     */
+    private List<BatchItemResult> replaceUsers(Collection<User> users, Map<String, List<BatchItemResult>> updatedUsers) {
+        if (updatedUsers.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, User> usersById = users.stream()
+                .collect(Collectors.toMap(User::getId, Function.identity(), (first, second) -> first));
+        List<String> userIdentifiers = new ArrayList<>(updatedUsers.keySet());
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        userIdentifiers.forEach(userId -> bulkOperations.replaceOne(Query.query(Criteria.where("_id").is(userId)),
+                usersById.get(userId), FindAndReplaceOptions.options().upsert()));
+        Map<Integer, BulkWriteError> errors = execute(bulkOperations);
+        List<BatchItemResult> results = new ArrayList<>();
+        for (int i = 0; i < userIdentifiers.size(); i++) {
+            List<BatchItemResult> userResults = updatedUsers.get(userIdentifiers.get(i));
+            BulkWriteError error = errors.get(i);
+            if (error == null) {
+                results.addAll(userResults);
+            } else {
+                userResults.forEach(result -> results.add(failure(result.index(), error)));
+            }
+        }
+        return results;
+    }
+
+    private static Map<Integer, BulkWriteError> execute(BulkOperations bulkOperations) {
+        try {
+            bulkOperations.execute();
+            return Collections.emptyMap();
+        } catch (BulkOperationException e) {
+            return e.getErrors().stream()
+                    .collect(Collectors.toMap(BulkWriteError::getIndex, Function.identity()));
+        }
+    }
+
+    private static BatchItemResult failure(int index, RuntimeException e) {
+        ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(e.getClass(), ResponseStatus.class);
+        HttpStatus status = e instanceof ValidationException ? HttpStatus.BAD_REQUEST :
+                responseStatus != null ? responseStatus.code() : HttpStatus.INTERNAL_SERVER_ERROR;
+        if (status.is5xxServerError()) {
+            LOG.error(String.format("Error in batch item %s", index), e);
+        }
+        return BatchItemResult.failure(index, status, e.getMessage());
+    }
+
+    private static BatchItemResult failure(int index, BulkWriteError error) {
+        //Duplicate key - the email of a new user - is the only write error a client can resolve
+        HttpStatus status = error.getCode() == 11000 ? HttpStatus.CONFLICT : HttpStatus.INTERNAL_SERVER_ERROR;
+        if (status.is5xxServerError()) {
+            LOG.error(String.format("Error writing batch item %s: %s", index, error.getMessage()));
+        }
+        return BatchItemResult.failure(index, status, error.getMessage());
+    }
+
+    private record BatchItem<T>(int index, T value) {
+    }
+
     private RemoteProvider getRemoteProvider(RemoteUser remoteUser, String remoteUserName) {
         return new RemoteProvider(
                 null,
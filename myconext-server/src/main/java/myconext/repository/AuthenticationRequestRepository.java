@@ -20,6 +20,8 @@ public interface AuthenticationRequestRepository extends MongoRepository<SamlAut
 
     List<SamlAuthenticationRequest> findByUserIdAndRememberMe(String userId, boolean rememberMe);
 
+    boolean existsByUserIdAndRememberMe(String userId, boolean rememberMe);
+
     Long deleteByUserId(String userId);
 
     default Optional<SamlAuthenticationRequest> findByIdAndNotExpired(String id) {
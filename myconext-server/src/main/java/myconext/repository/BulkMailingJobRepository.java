@@ -0,0 +1,11 @@
+package myconext.repository;
+
+
+import myconext.model.BulkMailingJob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BulkMailingJobRepository extends MongoRepository<BulkMailingJob, String> {
+
+}
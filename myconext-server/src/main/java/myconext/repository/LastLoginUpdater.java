@@ -0,0 +1,101 @@
+package myconext.repository;
+
+import myconext.model.ComputedEduID;
+import myconext.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Persists the user after the eduID for a service is computed during the release of attributes. Structural changes
+ * - a new eduID or service, or changed service metadata - are saved immediately. When only the last login changed,
+ * the last login of the user and the service are written with a targeted update, at most once per interval per
+ * service. The previous last login of the service is persisted, so the throttle holds across nodes.
+ */
+@Component
+public class LastLoginUpdater {
+
+    private final UserRepository userRepository;
+    private final MongoTemplate mongoTemplate;
+    private final long updateIntervalMillis;
+
+    @Autowired
+    public LastLoginUpdater(UserRepository userRepository,
+                            MongoTemplate mongoTemplate,
+                            @Value("${last_login_update_interval_minutes}") long updateIntervalMinutes) {
+        this.userRepository = userRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.updateIntervalMillis = updateIntervalMinutes * 60 * 1000;
+    }
+
+    public void saveOrTouch(User user, ComputedEduID computedEduID) {
+        if (requiresSave(computedEduID)) {
+            userRepository.save(user);
+            return;
+        }
+        touch(user, computedEduID, System.currentTimeMillis())
+                .ifPresent(update -> mongoTemplate.updateFirst(byId(user), update, User.class));
+    }
+
+    /**
+     * Bulk variant of saveOrTouch for the users of one request. A user with a structural change in any of its eduID's
+     * is replaced once, otherwise the last logins are touched. All writes are done with one bulk write.
+     */
+    public void saveOrTouchAll(Map<User, List<ComputedEduID>> computedEduIDs) {
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        long now = System.currentTimeMillis();
+        int writes = 0;
+        for (Map.Entry<User, List<ComputedEduID>> entry : computedEduIDs.entrySet()) {
+            User user = entry.getKey();
+            if (entry.getValue().stream().anyMatch(this::requiresSave)) {
+                //Same semantics as save of the repository
+                bulkOperations.replaceOne(byId(user), user, FindAndReplaceOptions.options().upsert());
+                writes++;
+                continue;
+            }
+            for (ComputedEduID computedEduID : entry.getValue()) {
+                Optional<Update> optionalUpdate = touch(user, computedEduID, now);
+                if (optionalUpdate.isPresent()) {
+                    bulkOperations.updateOne(byId(user), optionalUpdate.get());
+                    writes++;
+                }
+            }
+        }
+        if (writes > 0) {
+            bulkOperations.execute();
+        }
+    }
+
+    private boolean requiresSave(ComputedEduID computedEduID) {
+        return computedEduID.changed() || !StringUtils.hasText(computedEduID.entityId());
+    }
+
+    private Optional<Update> touch(User user, ComputedEduID computedEduID, long now) {
+        Date previousLastLogin = computedEduID.previousLastLogin();
+        if (previousLastLogin != null && now - previousLastLogin.getTime() < updateIntervalMillis) {
+            return Optional.empty();
+        }
+        return Optional.of(new Update()
+                .set("lastLogin", user.getLastLogin())
+                .set("version", User.newVersion())
+                .set("eduIDS.$[eduID].services.$[service].lastLogin", new Date(now))
+                .filterArray(Criteria.where("eduID.value").is(computedEduID.value()))
+                .filterArray(Criteria.where("service.entityId").is(computedEduID.entityId())));
+    }
+
+    private static Query byId(User user) {
+        return Query.query(Criteria.where("_id").is(user.getId()));
+    }
+}
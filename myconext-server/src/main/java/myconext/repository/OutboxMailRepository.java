@@ -0,0 +1,18 @@
+package myconext.repository;
+
+
+import myconext.model.OutboxMail;
+import myconext.model.OutboxMailStatus;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxMailRepository extends MongoRepository<OutboxMail, String> {
+
+    long countByStatus(OutboxMailStatus status);
+
+    List<OutboxMail> findByStatus(OutboxMailStatus status);
+
+}
@@ -3,6 +3,8 @@ package myconext.repository;
 
 import myconext.model.User;
 import myconext.model.UserInactivity;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -34,9 +36,20 @@ public interface UserRepository extends MongoRepository<User, String> {
 
     Optional<User> findByEduIDS_value(String value);
 
-    Optional<User> findByEduIDS_serviceProviderEntityId(String serviceProviderEntityId);
-
-    Optional<User> findByEduIDS_Services_EntityId(String serviceProviderEntityId);
+    //Both the obsolete and the new format of an eduID match. Only the id and the first matching eduID are returned
+    @Query(value = """
+            { $or: [
+                { 'eduIDS.serviceProviderEntityId': ?0 },
+                { 'eduIDS.services.entityId': ?0 }
+            ]}
+            """,
+            fields = """
+            { 'eduIDS': { $elemMatch: { $or: [
+                { 'serviceProviderEntityId': ?0 },
+                { 'services.entityId': ?0 }
+            ]}}}
+            """)
+    Optional<User> findEduIDByServiceProviderEntityId(String serviceProviderEntityId);
 
     List<User> findByNewUserTrueAndCreatedLessThan(long millis);
 
@@ -60,17 +73,18 @@ public interface UserRepository extends MongoRepository<User, String> {
 
     List<User> findByLastLoginBeforeAndUserInactivityIn(long lastLoginBefore, List<UserInactivity> userInactivities);
 
-    @Query("""
-            { $and: [ { $or: [
-                        { 'surfSecureId': { $exists: false } },
-                        { 'surfSecureId': { $eq: {} } }
-                ]},
-                    { $or: [
-                        { 'nudgeAppMailSend': false },
-                        { 'nudgeAppMailSend': { $exists: false } }
-                    ]},
-                    {'created': { $lt: ?0 }}]}
-            """)
-    List<User> findByNoEduIDApp(Long createdBefore);
+    /**
+     * The users without the eduID app - and without a nudge mail - created before the given epoch seconds
+     */
+    static Criteria noEduIDApp(long createdBefore) {
+        return new Criteria().andOperator(
+                new Criteria().orOperator(
+                        Criteria.where("surfSecureId").exists(false),
+                        Criteria.where("surfSecureId").is(new Document())),
+                new Criteria().orOperator(
+                        Criteria.where("nudgeAppMailSend").is(false),
+                        Criteria.where("nudgeAppMailSend").exists(false)),
+                Criteria.where("created").lt(createdBefore));
+    }
 
 }
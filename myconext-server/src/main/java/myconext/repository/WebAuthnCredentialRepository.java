@@ -0,0 +1,17 @@
+package myconext.repository;
+
+
+import myconext.model.WebAuthnCredential;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface WebAuthnCredentialRepository extends MongoRepository<WebAuthnCredential, String> {
+
+    List<WebAuthnCredential> findByUserId(String userId);
+
+    long deleteByUserIdIn(Collection<String> userIds);
+}
@@ -0,0 +1,120 @@
+package myconext.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import myconext.crypto.KeyGenerator;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.introspection.BadOpaqueTokenException;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Caches the result of the introspection of opaque tokens, so the eduID API and mobile API do not call OIDC-NG for
+ * every request. An active token is cached until its exp claim, but never longer than the maximum time-to-live, as a
+ * revoked token is accepted while it is cached. Inactive tokens are cached for a short period, so clients with an
+ * expired token can not flood OIDC-NG. Errors other than an inactive token - e.g. OIDC-NG being unavailable - are
+ * not cached.
+ */
+public class CachingOpaqueTokenIntrospector implements OpaqueTokenIntrospector {
+
+    private final OpaqueTokenIntrospector delegate;
+    private final Duration maxTimeToLive;
+    private final Duration negativeTimeToLive;
+    private final Clock clock;
+    //Keyed on the hash of the token, so the cache does not hold usable bearer tokens
+    private final Cache<String, Introspection> cache;
+
+    private final Timer introspectionTimer;
+    private final Counter hitCounter;
+    private final Counter negativeHitCounter;
+
+    public CachingOpaqueTokenIntrospector(OpaqueTokenIntrospector delegate,
+                                          MeterRegistry meterRegistry,
+                                          long maximumSize,
+                                          Duration maxTimeToLive,
+                                          Duration negativeTimeToLive) {
+        this(delegate, meterRegistry, maximumSize, maxTimeToLive, negativeTimeToLive, Clock.systemUTC());
+    }
+
+    CachingOpaqueTokenIntrospector(OpaqueTokenIntrospector delegate,
+                                   MeterRegistry meterRegistry,
+                                   long maximumSize,
+                                   Duration maxTimeToLive,
+                                   Duration negativeTimeToLive,
+                                   Clock clock) {
+        this.delegate = delegate;
+        this.maxTimeToLive = maxTimeToLive;
+        this.negativeTimeToLive = negativeTimeToLive;
+        this.clock = clock;
+        //Guava only supports a fixed expiry, the per-token expiry is checked on read
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(maxTimeToLive.compareTo(negativeTimeToLive) > 0 ? maxTimeToLive : negativeTimeToLive)
+                .recordStats()
+                .build();
+
+        GuavaCacheMetrics.monitor(meterRegistry, cache, "introspection.cache");
+        this.introspectionTimer = Timer.builder("introspection.remote")
+                .description("Latency of the opaque token introspection calls to OIDC-NG")
+                .register(meterRegistry);
+        this.hitCounter = Counter.builder("introspection.cache.active")
+                .description("Number of requests served by a cached active token")
+                .register(meterRegistry);
+        this.negativeHitCounter = Counter.builder("introspection.cache.inactive")
+                .description("Number of requests rejected by a cached inactive token")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public OAuth2AuthenticatedPrincipal introspect(String token) {
+        String key = KeyGenerator.oneWayHash(token);
+        Instant now = clock.instant();
+        Introspection cached = cache.getIfPresent(key);
+        if (cached != null && cached.expiresAt().isAfter(now)) {
+            if (cached.principal() == null) {
+                negativeHitCounter.increment();
+                throw new BadOpaqueTokenException(cached.errorMessage());
+            }
+            hitCounter.increment();
+            return cached.principal();
+        }
+        OAuth2AuthenticatedPrincipal principal;
+        try {
+            principal = introspectionTimer.record(() -> delegate.introspect(token));
+        } catch (BadOpaqueTokenException e) {
+            cache.put(key, new Introspection(null, e.getMessage(), now.plus(negativeTimeToLive)));
+            throw e;
+        }
+        Instant expiresAt = expiresAt(principal, now);
+        if (expiresAt.isAfter(now)) {
+            cache.put(key, new Introspection(principal, null, expiresAt));
+        } else {
+            cache.invalidate(key);
+        }
+        return principal;
+    }
+
+    private Instant expiresAt(OAuth2AuthenticatedPrincipal principal, Instant now) {
+        Instant maxExpiresAt = now.plus(maxTimeToLive);
+        Object exp = principal.getAttribute(OAuth2TokenIntrospectionClaimNames.EXP);
+        if (exp instanceof Instant expInstant && expInstant.isBefore(maxExpiresAt)) {
+            return expInstant;
+        }
+        return maxExpiresAt;
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    private record Introspection(OAuth2AuthenticatedPrincipal principal, String errorMessage, Instant expiresAt) {
+    }
+}
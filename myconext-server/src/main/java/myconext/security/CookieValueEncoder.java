@@ -1,6 +1,6 @@
 package myconext.security;
 
-import lombok.SneakyThrows;
+import myconext.crypto.Digests;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -10,17 +10,15 @@ import java.security.MessageDigest;
 @Component
 public class CookieValueEncoder {
 
-    private final String salt;
+    private final byte[] salt;
 
     public CookieValueEncoder(@Value("${tiqr_hash_secret}") String salt) {
-        this.salt = salt;
-
+        this.salt = salt.getBytes(StandardCharsets.UTF_8);
     }
 
-    @SneakyThrows
     public String encode(String value) {
-        MessageDigest messageDigest = MessageDigest.getInstance("SHA-512");
-        messageDigest.update(salt.getBytes(StandardCharsets.UTF_8));
+        MessageDigest messageDigest = Digests.sha512();
+        messageDigest.update(salt);
         byte[] bytes = messageDigest.digest(value.getBytes(StandardCharsets.UTF_8));
         byte[] encoded = org.apache.commons.codec.binary.Base64.encodeBase64(bytes);
         return new String(encoded);
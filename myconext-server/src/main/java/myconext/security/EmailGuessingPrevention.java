@@ -1,22 +1,130 @@
 package myconext.security;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import myconext.exceptions.TooManyRequestsException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Slows down the endpoints which reveal whether an email is known, so guessing emails takes time. The endpoint is
+ * handled on the request thread, but its result is held back on a timer and the servlet thread is released during
+ * the delay. The number of delayed requests per IP address is capped, so one client can not build up an unbounded
+ * number of pending responses.
+ */
+@Service
 public class EmailGuessingPrevention {
 
+    private static final Log LOG = LogFactory.getLog(EmailGuessingPrevention.class);
+
     private final int millis;
+    private final int maxConcurrentPerIpAddress;
+
+    private final Map<String, Integer> pendingPerIpAddress = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ScheduledExecutorService timer;
 
-    public EmailGuessingPrevention(int millis) {
+    private final Counter delayedCounter;
+    private final Counter rejectedCounter;
+
+    public EmailGuessingPrevention(@Value("${email_guessing_sleep_millis}") int millis,
+                                   @Value("${email_guessing_max_concurrent_per_ip}") int maxConcurrentPerIpAddress,
+                                   MeterRegistry meterRegistry) {
         this.millis = millis;
+        this.maxConcurrentPerIpAddress = maxConcurrentPerIpAddress;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-guessing-prevention");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("email_guessing.pending", pending, AtomicInteger::get)
+                .description("Number of responses currently held back")
+                .register(meterRegistry);
+        this.delayedCounter = Counter.builder("email_guessing.delayed")
+                .description("Number of responses held back to prevent email guessing")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("email_guessing.rejected")
+                .description("Number of requests rejected because the IP address had too many pending responses")
+                .register(meterRegistry);
     }
 
-    public void potentialUserEmailGuess() {
+    /**
+     * Handles the request on the calling thread and completes the returned DeferredResult with the result - or the
+     * exception - of the handler after the delay.
+     */
+    public <T> DeferredResult<T> potentialUserEmailGuess(HttpServletRequest request, Callable<T> handler) {
+        String ipAddress = request.getRemoteAddr();
+        if (!acquire(ipAddress)) {
+            rejectedCounter.increment();
+            LOG.warn(String.format("Rejected potential email guess from %s with %s pending responses",
+                    ipAddress, maxConcurrentPerIpAddress));
+            throw new TooManyRequestsException("Too many pending requests from " + ipAddress);
+        }
+        DeferredResult<T> deferredResult = new DeferredResult<>();
+        //The handler is called before the delay, otherwise it would no longer run in the context of the request
+        Runnable completion;
+        try {
+            T result = handler.call();
+            completion = () -> deferredResult.setResult(result);
+        } catch (Exception e) {
+            completion = () -> deferredResult.setErrorResult(e);
+        }
+        delayedCounter.increment();
+        Runnable delayedCompletion = completion;
         try {
-            Thread.sleep(millis);
-        } catch (InterruptedException e) {
-            //don't care
+            timer.schedule(() -> {
+                try {
+                    delayedCompletion.run();
+                } finally {
+                    release(ipAddress);
+                }
+            }, millis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            release(ipAddress);
+            throw e;
         }
+        return deferredResult;
     }
 
     public String sanitizeEmail(String email) {
         return email != null ? email.trim() : null;
     }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private boolean acquire(String ipAddress) {
+        AtomicBoolean acquired = new AtomicBoolean();
+        pendingPerIpAddress.compute(ipAddress, (key, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxConcurrentPerIpAddress) {
+                return count;
+            }
+            acquired.set(true);
+            return current + 1;
+        });
+        if (acquired.get()) {
+            pending.incrementAndGet();
+        }
+        return acquired.get();
+    }
+
+    private void release(String ipAddress) {
+        pendingPerIpAddress.computeIfPresent(ipAddress, (key, count) -> count > 1 ? count - 1 : null);
+        pending.decrementAndGet();
+    }
 }
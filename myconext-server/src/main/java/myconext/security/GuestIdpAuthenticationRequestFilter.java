@@ -9,6 +9,7 @@ import myconext.mail.MailBox;
 import myconext.manage.Manage;
 import myconext.model.*;
 import myconext.repository.AuthenticationRequestRepository;
+import myconext.repository.LastLoginUpdater;
 import myconext.repository.UserLoginRepository;
 import myconext.repository.UserRepository;
 import org.apache.commons.logging.Log;
@@ -82,6 +83,8 @@ public class GuestIdpAuthenticationRequestFilter extends OncePerRequestFilter {
     private final SecurityContextRepository securityContextRepository;
     @Setter
     private UserRepository userRepository;
+    @Setter
+    private LastLoginUpdater lastLoginUpdater;
     private final UserLoginRepository userLoginRepository;
     private final List<String> accountLinkingContextClassReferences;
     private final GeoLocation geoLocation;
@@ -108,6 +111,7 @@ public class GuestIdpAuthenticationRequestFilter extends OncePerRequestFilter {
                                                Manage manage,
                                                AuthenticationRequestRepository authenticationRequestRepository,
                                                UserRepository userRepository,
+                                               LastLoginUpdater lastLoginUpdater,
                                                UserLoginRepository userLoginRepository,
                                                GeoLocation geoLocation,
                                                int rememberMeMaxAge,
@@ -134,6 +138,7 @@ public class GuestIdpAuthenticationRequestFilter extends OncePerRequestFilter {
         this.manage = manage;
         this.authenticationRequestRepository = authenticationRequestRepository;
         this.userRepository = userRepository;
+        this.lastLoginUpdater = lastLoginUpdater;
         this.userLoginRepository = userLoginRepository;
         this.geoLocation = geoLocation;
         this.accountLinkingContextClassReferences = ACR.allAccountLinkingContextClassReferences();
@@ -736,10 +741,12 @@ public class GuestIdpAuthenticationRequestFilter extends OncePerRequestFilter {
 
     protected List<SAMLAttribute> attributes(User user, String requesterEntityId) {
         List<LinkedAccount> linkedAccounts = safeSortedAffiliations(user);
-        String givenName = user.getDerivedGivenName();
-        String familyName = user.getDerivedFamilyName();
+        UserView userView = new UserView(user);
+        String givenName = userView.getGivenName();
+        String familyName = userView.getFamilyName();
         String chosenName = user.getChosenName();
-        if (!StringUtils.hasText(chosenName)) {
+        boolean chosenNameMigrated = !StringUtils.hasText(chosenName);
+        if (chosenNameMigrated) {
             chosenName = givenName;
             //Migrate at JIT as only users with linked-accounts were migrated in myconext.mongo.Migrations#migrateUsers
             user.setChosenName(chosenName);
@@ -762,16 +769,20 @@ public class GuestIdpAuthenticationRequestFilter extends OncePerRequestFilter {
                 attribute("urn:mace:dir:attribute-def:uid", user.getUid()),
                 attribute("urn:mace:terena.org:attribute-def:schacHomeOrganization", user.getSchacHomeOrganization())
         ));
-        String eduIDValue = user.computeEduIdForServiceProviderIfAbsent(requesterEntityId, manage);
-        userRepository.save(user);
+        ComputedEduID computedEduID = user.computeEduIdForServiceProviderIfAbsent(requesterEntityId, manage);
+        if (chosenNameMigrated) {
+            userRepository.save(user);
+        } else {
+            lastLoginUpdater.saveOrTouch(user, computedEduID);
+        }
 
-        attributes.add(attribute("urn:mace:eduid.nl:1.1", eduIDValue));
-        if (user.getDerivedDateOfBirth() != null) {
+        attributes.add(attribute("urn:mace:eduid.nl:1.1", computedEduID.value()));
+        if (userView.getDateOfBirth() != null) {
             // https://wiki.refeds.org/display/STAN/SCHAC+Releases
             String dateOfBirth = DateTimeFormatter
                     .ofPattern("yyyyMMdd")
                     .withZone(ZoneId.systemDefault())
-                    .format(user.getDerivedDateOfBirth().toInstant());
+                    .format(userView.getDateOfBirth().toInstant());
             attributes.add(attribute("urn:schac:attribute-def:schacDateOfBirth", dateOfBirth));
         }
 
@@ -1,14 +1,17 @@
 package myconext.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.SneakyThrows;
 import myconext.crypto.KeyGenerator;
 import myconext.geo.GeoLocation;
 import myconext.mail.MailBox;
 import myconext.manage.Manage;
 import myconext.repository.AuthenticationRequestRepository;
+import myconext.repository.LastLoginUpdater;
 import myconext.repository.UserLoginRepository;
 import myconext.repository.UserRepository;
 import myconext.shibboleth.ShibbolethPreAuthenticatedProcessingFilter;
+import myconext.shibboleth.ShibbolethPrincipalCache;
 import myconext.shibboleth.ShibbolethUserDetailService;
 import myconext.shibboleth.mock.MockShibbolethFilter;
 import org.apache.commons.io.IOUtils;
@@ -30,6 +33,8 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+import org.springframework.security.oauth2.server.resource.introspection.SpringOpaqueTokenIntrospector;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.preauth.AbstractPreAuthenticatedProcessingFilter;
 import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationProvider;
@@ -43,6 +48,7 @@ import saml.model.SAMLServiceProvider;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -97,6 +103,7 @@ public class SecurityConfiguration {
                             @Value("${feature.requires_signed_authn_request}") boolean requiresSignedAuthnRequest,
                             AuthenticationRequestRepository authenticationRequestRepository,
                             UserRepository userRepository,
+                            LastLoginUpdater lastLoginUpdater,
                             UserLoginRepository userLoginRepository,
                             GeoLocation geoLocation,
                             MailBox mailBox,
@@ -130,6 +137,7 @@ public class SecurityConfiguration {
                     serviceProviderResolver,
                     authenticationRequestRepository,
                     userRepository,
+                    lastLoginUpdater,
                     userLoginRepository,
                     geoLocation,
                     rememberMeMaxAge,
@@ -213,7 +221,8 @@ public class SecurityConfiguration {
                 UserRepository userRepository,
                 @Value("${mijn_eduid_entity_id}") String mijnEduIDEntityId,
                 @Value("${service_desk_roles}") String[] serviceDeskRoles,
-                @Value("${service_desk_role_auto_provisioning}") boolean serviceDeskRoleAutoProvisioning) throws Exception {
+                @Value("${service_desk_role_auto_provisioning}") boolean serviceDeskRoleAutoProvisioning,
+                ShibbolethPrincipalCache shibbolethPrincipalCache) throws Exception {
             AuthenticationProvider authenticationProvider = preAuthenticatedAuthenticationProvider();
             ProviderManager providerManager = new ProviderManager(authenticationProvider);
             http
@@ -242,7 +251,8 @@ public class SecurityConfiguration {
                                     userRepository,
                                     manage,
                                     mijnEduIDEntityId,
-                                    List.of(serviceDeskRoles)),
+                                    List.of(serviceDeskRoles),
+                                    shibbolethPrincipalCache),
                             AbstractPreAuthenticatedProcessingFilter.class)
                     .authorizeHttpRequests(auth -> auth
                             .anyRequest().hasRole("GUEST"));
@@ -307,7 +317,22 @@ public class SecurityConfiguration {
         private String secret;
 
         @Bean
-        public SecurityFilterChain jwtSecurityFilterChain(HttpSecurity http) throws Exception {
+        public OpaqueTokenIntrospector opaqueTokenIntrospector(
+                MeterRegistry meterRegistry,
+                @Value("${eduid_api.introspection_cache.maximum_size}") long maximumSize,
+                @Value("${eduid_api.introspection_cache.max_ttl_seconds}") long maxTimeToLiveSeconds,
+                @Value("${eduid_api.introspection_cache.inactive_ttl_seconds}") long inactiveTimeToLiveSeconds) {
+            return new CachingOpaqueTokenIntrospector(
+                    new SpringOpaqueTokenIntrospector(introspectionUri, clientId, secret),
+                    meterRegistry,
+                    maximumSize,
+                    Duration.ofSeconds(maxTimeToLiveSeconds),
+                    Duration.ofSeconds(inactiveTimeToLiveSeconds));
+        }
+
+        @Bean
+        public SecurityFilterChain jwtSecurityFilterChain(HttpSecurity http,
+                                                          OpaqueTokenIntrospector opaqueTokenIntrospector) throws Exception {
             String[] antPatterns = {"/myconext/api/eduid/**", "/mobile/**"};
             http.securityMatcher(antPatterns)
                     .csrf(AbstractHttpConfigurer::disable)
@@ -325,8 +350,7 @@ public class SecurityConfiguration {
                             .requestMatchers("/mobile/**").hasAuthority("SCOPE_eduid.nl/mobile")
                             .anyRequest().authenticated())
                     .oauth2ResourceServer(oauth2 -> oauth2.opaqueToken(token -> token
-                            .introspectionUri(introspectionUri)
-                            .introspectionClientCredentials(clientId, secret)));
+                            .introspector(opaqueTokenIntrospector)));
             return http.build();
         }
     }
@@ -10,8 +10,12 @@ public class UserAuthenticationToken extends UsernamePasswordAuthenticationToken
     private final long createdAt;
 
     public UserAuthenticationToken(Object principal, Object credentials, Collection<? extends GrantedAuthority> authorities) {
+        this(principal, credentials, authorities, System.currentTimeMillis());
+    }
+
+    public UserAuthenticationToken(Object principal, Object credentials, Collection<? extends GrantedAuthority> authorities, long createdAt) {
         super(principal, credentials, authorities);
-        this.createdAt = System.currentTimeMillis();
+        this.createdAt = createdAt;
     }
 
     public long getCreatedAt() {
@@ -1,6 +1,7 @@
 package myconext.security;
 
-import java.security.SecureRandom;
+import myconext.crypto.SecureRandoms;
+
 import java.util.Random;
 
 public class VerificationCodeGenerator {
@@ -11,8 +12,6 @@ public class VerificationCodeGenerator {
     private static final char[] NUMBERS = "1234567890"
             .toCharArray();
 
-    private static final Random random = new SecureRandom();
-
     private VerificationCodeGenerator() {
     }
 
@@ -35,11 +34,10 @@ public class VerificationCodeGenerator {
         return String.valueOf(getChars(5, NUMBERS));
     }
 
-    private static char[] getChars(int nbrBytes, char[] charArray) {
-        byte[] verifierBytes = new byte[nbrBytes];
-        random.nextBytes(verifierBytes);
-        char[] chars = new char[verifierBytes.length];
-        for (int i = 0; i < verifierBytes.length; i++) {
+    private static char[] getChars(int length, char[] charArray) {
+        Random random = SecureRandoms.current();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
             chars[i] = charArray[random.nextInt(charArray.length)];
         }
         return chars;
@@ -0,0 +1,159 @@
+package myconext.session;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.DBObject;
+import jakarta.annotation.PreDestroy;
+import myconext.mongo.CappedCollectionNotifier;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.data.mongo.AbstractMongoSessionConverter;
+import org.springframework.session.data.mongo.MongoIndexedSessionRepository;
+import org.springframework.session.data.mongo.MongoSession;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Near-cache in front of the {@link MongoIndexedSessionRepository}. Recently used sessions are kept in a bounded
+ * local cache in their stored form, so every load returns a private copy. A session is only written back when it
+ * differs from the stored version apart from the last accessed time, which is written at most once per touch
+ * interval. As a consequence a session can expire up to one touch interval early. Attribute changes and deletes are
+ * published to the other nodes, which evict the session from their cache. The eviction is asynchronous and is lost
+ * when a node falls behind - then the complete cache is flushed - so a cached authenticated session is only served
+ * after a check that the stored session was not deleted or written by another node since it was cached.
+ */
+public class CachingSessionRepository implements FindByIndexNameSessionRepository<MongoSession> {
+
+    static final String COLLECTION_NAME = "session_invalidations";
+
+    //Written on every access, see JdkMongoSessionConverter
+    private static final Set<String> ACCESS_FIELDS = Set.of("accessed", "expireAt");
+
+    private final MongoIndexedSessionRepository delegate;
+    private final MongoTemplate mongoTemplate;
+    private final AbstractMongoSessionConverter converter;
+    private final Duration touchInterval;
+    private final Cache<String, CachedSession> cache;
+    private final CappedCollectionNotifier notifier;
+
+    public CachingSessionRepository(MongoIndexedSessionRepository delegate,
+                                    AbstractMongoSessionConverter converter,
+                                    MongoTemplate mongoTemplate,
+                                    long maximumSize,
+                                    Duration touchInterval,
+                                    Duration maxInactiveInterval) {
+        this.delegate = delegate;
+        this.mongoTemplate = mongoTemplate;
+        this.converter = converter;
+        this.touchInterval = touchInterval;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(maxInactiveInterval)
+                .build();
+        this.notifier = new CappedCollectionNotifier(mongoTemplate, COLLECTION_NAME, cache::invalidate, cache::invalidateAll);
+    }
+
+    @Override
+    public MongoSession createSession() {
+        return delegate.createSession();
+    }
+
+    @Override
+    public void save(MongoSession session) {
+        String id = session.getId();
+        DBObject stored = toDBObject(session);
+        CachedSession cached = cache.getIfPresent(id);
+        //Other nodes might have cached the session even if this node has not, unless the session is new
+        boolean attributesChanged = cached != null ? !sameExceptAccess(cached.stored(), stored) :
+                !session.getCreationTime().equals(session.getLastAccessedTime());
+        if (cached != null && !attributesChanged &&
+                session.getLastAccessedTime().isBefore(cached.persistedAccess().plus(touchInterval))) {
+            return;
+        }
+        delegate.save(session);
+        cache.put(id, new CachedSession(stored, session.getLastAccessedTime()));
+        if (attributesChanged) {
+            notifier.publish(id);
+        }
+    }
+
+    @Override
+    public MongoSession findById(String id) {
+        CachedSession cached = cache.getIfPresent(id);
+        if (cached != null) {
+            MongoSession session = fromDBObject(cached.stored());
+            if (!session.isExpired() && (!isAuthenticated(session) || unchangedInStore(id, cached))) {
+                return session;
+            }
+            cache.invalidate(id);
+        }
+        MongoSession session = delegate.findById(id);
+        if (session != null) {
+            cache.put(id, new CachedSession(toDBObject(session), session.getLastAccessedTime()));
+        }
+        return session;
+    }
+
+    @Override
+    public void deleteById(String id) {
+        cache.invalidate(id);
+        delegate.deleteById(id);
+        notifier.publish(id);
+    }
+
+    @Override
+    public Map<String, MongoSession> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+        return delegate.findByIndexNameAndIndexValue(indexName, indexValue);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        notifier.shutdown();
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    private DBObject toDBObject(MongoSession session) {
+        return (DBObject) converter.convert(session, TypeDescriptor.valueOf(MongoSession.class), TypeDescriptor.valueOf(DBObject.class));
+    }
+
+    private MongoSession fromDBObject(DBObject dbObject) {
+        return (MongoSession) converter.convert(dbObject, TypeDescriptor.valueOf(DBObject.class), TypeDescriptor.valueOf(MongoSession.class));
+    }
+
+    private boolean isAuthenticated(MongoSession session) {
+        Object securityContext = session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+        return securityContext instanceof SecurityContext context && context.getAuthentication() != null &&
+                context.getAuthentication().isAuthenticated();
+    }
+
+    private boolean unchangedInStore(String id, CachedSession cached) {
+        //A logout on another node deletes the session and every write by another node changes the last accessed time
+        Query query = Query.query(Criteria.where("_id").is(id).and("accessed").is(cached.stored().get("accessed")));
+        return mongoTemplate.exists(query, MongoIndexedSessionRepository.DEFAULT_COLLECTION_NAME);
+    }
+
+    private boolean sameExceptAccess(DBObject cached, DBObject current) {
+        if (!cached.keySet().equals(current.keySet())) {
+            return false;
+        }
+        //The attributes are stored as byte[]
+        return cached.keySet().stream()
+                .filter(key -> !ACCESS_FIELDS.contains(key))
+                .allMatch(key -> Objects.deepEquals(cached.get(key), current.get(key)));
+    }
+
+    private record CachedSession(DBObject stored, Instant persistedAccess) {
+    }
+}
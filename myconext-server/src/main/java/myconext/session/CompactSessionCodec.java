@@ -0,0 +1,203 @@
+package myconext.session;
+
+import myconext.model.User;
+import myconext.security.UserAuthenticationToken;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary codec for the attributes of a session. A security context with a {@link User} principal is stored as the
+ * identifiers of the user plus the authorities, instead of the complete serialized user. Strings and primitives are
+ * written as is and all other attributes fall back to Java serialization. Sessions stored by the
+ * {@link org.springframework.session.data.mongo.JdkMongoSessionConverter} contain the complete serialized user, which
+ * has changed since, and are removed by Migrations#deleteSessionAfterCompactSessionCodec.
+ */
+public class CompactSessionCodec {
+
+    //Java serialization streams start with 0xACED, so a compact stream can never be mistaken for a legacy one
+    private static final int MAGIC = 0x45;
+    private static final int VERSION = 1;
+
+    private static final byte TYPE_SERIALIZED = 0;
+    private static final byte TYPE_SECURITY_CONTEXT = 1;
+    private static final byte TYPE_STRING = 2;
+    private static final byte TYPE_INTEGER = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+    private static final byte TYPE_NULL = 6;
+
+    private static final byte AUTHENTICATION_USERNAME_PASSWORD = 1;
+    private static final byte AUTHENTICATION_PRE_AUTHENTICATED = 2;
+    private static final byte AUTHENTICATION_USER = 3;
+
+    private final SerializingConverter serializer = new SerializingConverter();
+    private final DeserializingConverter deserializer = new DeserializingConverter();
+
+    @SuppressWarnings("unchecked")
+    public byte[] serialize(Object source) {
+        Map<String, Object> attributes = (Map<String, Object>) source;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(attributes.size());
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public Object deserialize(byte[] source) {
+        if (source.length == 0 || source[0] != MAGIC) {
+            return deserializer.convert(source);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(source))) {
+            in.readByte();
+            int version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported compact session version " + version);
+            }
+            int size = in.readInt();
+            Map<String, Object> attributes = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                attributes.put(in.readUTF(), readValue(in));
+            }
+            return attributes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof SecurityContext securityContext && isCompactAuthentication(securityContext.getAuthentication())) {
+            out.writeByte(TYPE_SECURITY_CONTEXT);
+            writeAuthentication(out, securityContext.getAuthentication());
+        } else if (value instanceof String s) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, s);
+        } else if (value instanceof Integer i) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt(i);
+        } else if (value instanceof Long l) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(l);
+        } else if (value instanceof Boolean b) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean(b);
+        } else {
+            out.writeByte(TYPE_SERIALIZED);
+            byte[] serialized = serializer.convert(value);
+            out.writeInt(serialized.length);
+            out.write(serialized);
+        }
+    }
+
+    private Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case TYPE_SECURITY_CONTEXT -> new SecurityContextImpl(readAuthentication(in));
+            case TYPE_STRING -> readString(in);
+            case TYPE_INTEGER -> in.readInt();
+            case TYPE_LONG -> in.readLong();
+            case TYPE_BOOLEAN -> in.readBoolean();
+            case TYPE_NULL -> null;
+            case TYPE_SERIALIZED -> {
+                byte[] serialized = new byte[in.readInt()];
+                in.readFully(serialized);
+                yield deserializer.convert(serialized);
+            }
+            default -> throw new IllegalArgumentException("Unknown compact session attribute type " + type);
+        };
+    }
+
+    private boolean isCompactAuthentication(Authentication authentication) {
+        return authentication != null && authentication.getPrincipal() instanceof User &&
+                (authentication.getClass().equals(UsernamePasswordAuthenticationToken.class) ||
+                        authentication.getClass().equals(PreAuthenticatedAuthenticationToken.class) ||
+                        authentication.getClass().equals(UserAuthenticationToken.class));
+    }
+
+    private void writeAuthentication(DataOutputStream out, Authentication authentication) throws IOException {
+        out.writeByte(authentication instanceof UserAuthenticationToken ? AUTHENTICATION_USER :
+                authentication instanceof PreAuthenticatedAuthenticationToken ? AUTHENTICATION_PRE_AUTHENTICATED :
+                        AUTHENTICATION_USERNAME_PASSWORD);
+        User user = (User) authentication.getPrincipal();
+        writeString(out, user.getId());
+        writeString(out, user.getUid());
+        writeString(out, user.getEmail());
+        out.writeBoolean(user.isServiceDeskMember());
+        out.writeBoolean(authentication.isAuthenticated());
+        writeString(out, authentication.getCredentials() instanceof String credentials ? credentials : null);
+        out.writeShort(authentication.getAuthorities().size());
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            writeString(out, authority.getAuthority());
+        }
+        if (authentication instanceof UserAuthenticationToken userAuthenticationToken) {
+            //Needed to decide if the SSO MFA still applies
+            out.writeLong(userAuthenticationToken.getCreatedAt());
+        }
+    }
+
+    private Authentication readAuthentication(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        User user = User.sessionPrincipal(readString(in), readString(in), readString(in), in.readBoolean());
+        boolean authenticated = in.readBoolean();
+        String credentials = readString(in);
+        int size = in.readShort();
+        List<GrantedAuthority> authorities = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            authorities.add(new SimpleGrantedAuthority(readString(in)));
+        }
+        return switch (type) {
+            case AUTHENTICATION_USER -> new UserAuthenticationToken(user, credentials, authorities, in.readLong());
+            case AUTHENTICATION_PRE_AUTHENTICATED -> authenticated ?
+                    new PreAuthenticatedAuthenticationToken(user, credentials, authorities) :
+                    new PreAuthenticatedAuthenticationToken(user, credentials);
+            case AUTHENTICATION_USERNAME_PASSWORD -> authenticated ?
+                    UsernamePasswordAuthenticationToken.authenticated(user, credentials, authorities) :
+                    UsernamePasswordAuthenticationToken.unauthenticated(user, credentials);
+            default -> throw new IllegalArgumentException("Unknown compact authentication type " + type);
+        };
+    }
+
+    private void writeString(DataOutputStream out, String s) throws IOException {
+        //DataOutputStream#writeUTF is limited to 64K
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
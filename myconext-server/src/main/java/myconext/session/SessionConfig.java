@@ -15,10 +15,15 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.session.data.mongo.AbstractMongoSessionConverter;
+import org.springframework.session.data.mongo.JdkMongoSessionConverter;
+import org.springframework.session.data.mongo.MongoIndexedSessionRepository;
 import org.springframework.session.data.mongo.config.annotation.web.http.EnableMongoHttpSession;
 import org.springframework.session.web.http.CookieSerializer;
 import org.springframework.session.web.http.DefaultCookieSerializer;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -27,6 +32,9 @@ import java.util.LinkedHashMap;
 @EnableMongoHttpSession
 public class SessionConfig {
 
+    //Default of @EnableMongoHttpSession
+    private static final Duration MAX_INACTIVE_INTERVAL = Duration.ofMinutes(30);
+
     @Bean(name = "jsonMapper")
     @Primary
     public ObjectMapper jsonMapper() {
@@ -48,6 +56,29 @@ public class SessionConfig {
                 .addMixIn(HashMap.class, HashMapMixin.class);
     }
 
+    @Bean
+    public AbstractMongoSessionConverter mongoSessionConverter(@Value("${session.codec}") String codec) {
+        return switch (codec) {
+            case "compact" -> {
+                CompactSessionCodec compactSessionCodec = new CompactSessionCodec();
+                yield new JdkMongoSessionConverter(compactSessionCodec::serialize, compactSessionCodec::deserialize, MAX_INACTIVE_INTERVAL);
+            }
+            case "jdk" -> new JdkMongoSessionConverter(MAX_INACTIVE_INTERVAL);
+            default -> throw new IllegalArgumentException("Unknown session.codec: " + codec);
+        };
+    }
+
+    @Bean
+    @Primary
+    public CachingSessionRepository cachingSessionRepository(MongoIndexedSessionRepository mongoIndexedSessionRepository,
+                                                             AbstractMongoSessionConverter mongoSessionConverter,
+                                                             MongoTemplate mongoTemplate,
+                                                             @Value("${session.cache.maximum-size}") long maximumSize,
+                                                             @Value("${session.cache.touch-interval-seconds}") long touchIntervalSeconds) {
+        return new CachingSessionRepository(mongoIndexedSessionRepository, mongoSessionConverter, mongoTemplate,
+                maximumSize, Duration.ofSeconds(touchIntervalSeconds), MAX_INACTIVE_INTERVAL);
+    }
+
     @Bean
     CookieSerializer cookieSerializer(@Value("${secure_cookie}") boolean secureCookie) {
         DefaultCookieSerializer defaultCookieSerializer = new DefaultCookieSerializer();
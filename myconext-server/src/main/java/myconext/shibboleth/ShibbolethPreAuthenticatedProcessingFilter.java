@@ -3,6 +3,7 @@ package myconext.shibboleth;
 
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
+import myconext.crypto.KeyGenerator;
 import myconext.manage.Manage;
 import myconext.model.User;
 import myconext.repository.UserRepository;
@@ -37,27 +38,32 @@ public class ShibbolethPreAuthenticatedProcessingFilter extends AbstractPreAuthe
     private final Manage serviceProviderResolver;
     private final String mijnEduIDEntityId;
     private final List<String> serviceDeskRoles;
+    private final ShibbolethPrincipalCache principalCache;
 
     public ShibbolethPreAuthenticatedProcessingFilter(AuthenticationManager authenticationManager,
                                                       UserRepository userRepository,
                                                       Manage serviceProviderResolver,
                                                       String mijnEduIDEntityId,
-                                                      List<String> serviceDeskRoles) {
+                                                      List<String> serviceDeskRoles,
+                                                      ShibbolethPrincipalCache principalCache) {
         super();
         super.setAuthenticationManager(authenticationManager);
         this.userRepository = userRepository;
         this.serviceProviderResolver = serviceProviderResolver;
         this.mijnEduIDEntityId = mijnEduIDEntityId;
         this.serviceDeskRoles = serviceDeskRoles;
+        this.principalCache = principalCache;
     }
 
     @Override
     protected Object getPreAuthenticatedPrincipal(HttpServletRequest request) {
-        Enumeration<String> headerNames = request.getHeaderNames();
-        if (headerNames != null && !request.getRequestURI().endsWith("health") && !request.getRequestURI().endsWith("ico")) {
-            Collections.list(headerNames).forEach(s -> {
-                LOG.info(String.format("Header %s, value: %s", s, request.getHeader(s)));
-            });
+        if (LOG.isDebugEnabled()) {
+            Enumeration<String> headerNames = request.getHeaderNames();
+            if (headerNames != null && !request.getRequestURI().endsWith("health") && !request.getRequestURI().endsWith("ico")) {
+                Collections.list(headerNames).forEach(s -> {
+                    LOG.debug(String.format("Header %s, value: %s", s, request.getHeader(s)));
+                });
+            }
         }
 
         String uid = getHeader(SHIB_UID, request);
@@ -68,7 +74,7 @@ public class ShibbolethPreAuthenticatedProcessingFilter extends AbstractPreAuthe
 
         boolean valid = Stream.of(uid, schacHomeOrganization, email, givenName, familyName).allMatch(StringUtils::hasText);
         if (valid) {
-            LOG.info(String.format("Required attribute(s) present in shib headers: uid '%s', schacHomeOrganization '%s', givenName '%s', familyName '%s', email '%s'",
+            LOG.debug(String.format("Required attribute(s) present in shib headers: uid '%s', schacHomeOrganization '%s', givenName '%s', familyName '%s', email '%s'",
                     uid, schacHomeOrganization, givenName, familyName, email));
         } else {
             //this is the contract. See AbstractPreAuthenticatedProcessingFilter#doAuthenticate
@@ -76,18 +82,33 @@ public class ShibbolethPreAuthenticatedProcessingFilter extends AbstractPreAuthe
                     uid, schacHomeOrganization, givenName, familyName, email));
             return null;
         }
-        Optional<User> optionalUser = userRepository.findUserByUid(uid);
-        String preferredLanguage = cookieByName(request, "lang").map(Cookie::getValue).orElse("en");
-        List<String> memberships = Stream.of(getHeader(SHIB_MEMBERSHIPS, request).split(";"))
+        String membershipsHeader = getHeader(SHIB_MEMBERSHIPS, request);
+        List<String> memberships = Stream.of(membershipsHeader.split(";"))
                 .map(String::trim)
                 .toList();
+        String cacheKey = uid + ":" + KeyGenerator.oneWayHash(membershipsHeader);
+        String cachedUserId = principalCache.getUserId(cacheKey);
+        if (cachedUserId != null) {
+            return User.sessionPrincipal(cachedUserId, uid, email, isServiceDeskMember(memberships));
+        }
+        LOG.info(String.format("Resolving principal from shib headers: uid '%s', schacHomeOrganization '%s', email '%s'",
+                uid, schacHomeOrganization, email));
 
-        return optionalUser.map(user -> syncMemberships(user, memberships)).orElseGet(() ->
+        Optional<User> optionalUser = userRepository.findUserByUid(uid);
+        String preferredLanguage = cookieByName(request, "lang").map(Cookie::getValue).orElse("en");
+
+        User user = optionalUser.map(existingUser -> syncMemberships(existingUser, memberships)).orElseGet(() ->
                 provisionUser(uid, schacHomeOrganization, givenName, familyName, email, preferredLanguage, memberships));
+        principalCache.putUserId(cacheKey, user.getId());
+        return user;
+    }
+
+    private boolean isServiceDeskMember(List<String> memberships) {
+        return this.serviceDeskRoles.stream().anyMatch(memberships::contains);
     }
 
     private User syncMemberships(User user, List<String> memberships) {
-        boolean isServiceDeskMember = this.serviceDeskRoles.stream().anyMatch(memberships::contains);
+        boolean isServiceDeskMember = isServiceDeskMember(memberships);
         if (user.isServiceDeskMember() != isServiceDeskMember) {
             user.setServiceDeskMember(isServiceDeskMember);
             userRepository.save(user);
@@ -99,8 +120,7 @@ public class ShibbolethPreAuthenticatedProcessingFilter extends AbstractPreAuthe
                                String email, String preferredLanguage, List<String> memberships) {
         User user = new User(uid, email, givenName, givenName, familyName, schacHomeOrganization,
                 preferredLanguage, mijnEduIDEntityId, serviceProviderResolver);
-        boolean isServiceDeskMember = this.serviceDeskRoles.stream().anyMatch(memberships::contains);
-        user.setServiceDeskMember(isServiceDeskMember);
+        user.setServiceDeskMember(isServiceDeskMember(memberships));
         user.setNewUser(false);
         user = userRepository.save(user);
 
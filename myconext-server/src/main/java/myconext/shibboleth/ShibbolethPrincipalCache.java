@@ -0,0 +1,43 @@
+package myconext.shibboleth;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import myconext.model.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The ids of the users resolved from the Shibboleth headers. Only the immutable mapping to the user id is cached, with
+ * the memberships as part of the key, so a change in roles is picked up immediately. A deleted user is evicted on the
+ * node that deletes it, the other nodes rely on the time to live.
+ */
+@Component
+public class ShibbolethPrincipalCache {
+
+    private final Cache<String, String> userIdCache;
+
+    public ShibbolethPrincipalCache(@Value("${shibboleth_principal_cache_seconds}") long timeToLiveSeconds) {
+        this.userIdCache = CacheBuilder.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofSeconds(timeToLiveSeconds))
+                .build();
+    }
+
+    String getUserId(String key) {
+        return userIdCache.getIfPresent(key);
+    }
+
+    void putUserId(String key, String userId) {
+        userIdCache.put(key, userId);
+    }
+
+    public void evict(Collection<User> users) {
+        Set<String> userIds = users.stream().map(User::getId).collect(Collectors.toSet());
+        userIdCache.asMap().values().removeIf(userIds::contains);
+    }
+}
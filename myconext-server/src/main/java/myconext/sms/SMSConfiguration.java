@@ -1,5 +1,6 @@
 package myconext.sms;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -15,4 +16,14 @@ public class SMSConfiguration {
         return environment.getActiveProfiles().length == 0 ? new SMSServiceImpl(url, bearer) : new SMSServiceMock(environment);
     }
 
+    @Bean
+    public SMSDispatcher smsDispatcher(SMSService smsService,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${sms.dispatcher.workers}") int workers,
+                                       @Value("${sms.dispatcher.queue-capacity}") int queueCapacity,
+                                       @Value("${sms.dispatcher.max-attempts}") int maxAttempts,
+                                       @Value("${sms.dispatcher.retry-backoff-millis}") long retryBackoffMillis) {
+        return new SMSDispatcher(smsService, meterRegistry, workers, queueCapacity, maxAttempts, retryBackoffMillis);
+    }
+
 }
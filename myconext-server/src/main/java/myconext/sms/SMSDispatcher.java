@@ -0,0 +1,194 @@
+package myconext.sms;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import myconext.exceptions.TooManyRequestsException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends the SMS verification codes asynchronously, so the user does not wait for the SMS gateway. Requests are
+ * queued per mobile number: a new code for a number which still has a pending SMS replaces the pending code, as only
+ * the latest code can be verified. Failed sends are retried with exponential backoff, unless a newer code for the
+ * same number is already pending.
+ */
+public class SMSDispatcher {
+
+    private static final Log LOG = LogFactory.getLog(SMSDispatcher.class);
+
+    private final SMSService smsService;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+
+    private final Map<String, SMSRequest> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> queue;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retryScheduler;
+    private volatile boolean running = true;
+
+    private final Timer deliveryTimer;
+    private final Counter failureCounter;
+    private final Counter deduplicatedCounter;
+    private final Counter rejectedCounter;
+
+    public SMSDispatcher(SMSService smsService,
+                         MeterRegistry meterRegistry,
+                         int workerCount,
+                         int queueCapacity,
+                         int maxAttempts,
+                         long retryBackoffMillis) {
+        this.smsService = smsService;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("sms.queue", queue, Collection::size)
+                .description("Number of mobile numbers waiting for an SMS worker")
+                .register(meterRegistry);
+        this.deliveryTimer = Timer.builder("sms.delivery")
+                .description("Latency between the request of a verification code and the SMS gateway accepting it")
+                .register(meterRegistry);
+        this.failureCounter = Counter.builder("sms.failures")
+                .description("Number of failed SMS send attempts")
+                .register(meterRegistry);
+        this.deduplicatedCounter = Counter.builder("sms.deduplicated")
+                .description("Number of verification codes which replaced a pending SMS to the same number")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("sms.rejected")
+                .description("Number of verification codes rejected because the queue was full")
+                .register(meterRegistry);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "sms-dispatcher-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sms-dispatcher-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            this.workers.execute(this::work);
+        }
+    }
+
+    public void dispatch(String mobile, String code, Locale locale) {
+        Registration registration = register(new SMSRequest(mobile, code, locale), true);
+        if (registration == Registration.REPLACED) {
+            //The queued number will pick up this request
+            deduplicatedCounter.increment();
+        } else if (registration == Registration.REJECTED) {
+            rejectedCounter.increment();
+            throw new TooManyRequestsException("SMS queue is full, rejected verification code for " + mobile);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        retryScheduler.shutdownNow();
+        workers.shutdownNow();
+        if (!pending.isEmpty()) {
+            LOG.warn(String.format("Shutting down with %s pending SMS messages", pending.size()));
+        }
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                String mobile = queue.take();
+                SMSRequest request = pending.remove(mobile);
+                if (request != null) {
+                    send(request);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected error in SMS dispatcher", e);
+            }
+        }
+    }
+
+    private void send(SMSRequest request) {
+        request.attempts++;
+        try {
+            smsService.send(request.mobile, request.code, request.locale);
+            deliveryTimer.record(System.nanoTime() - request.createdNanos, TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            failureCounter.increment();
+            if (request.attempts >= maxAttempts) {
+                LOG.error(String.format("Giving up sending SMS to %s after %s attempts", request.mobile, request.attempts), e);
+                return;
+            }
+            long backoff = retryBackoffMillis * (1L << (request.attempts - 1));
+            LOG.warn(String.format("Error sending SMS to %s, attempt %s, retrying in %s ms: %s",
+                    request.mobile, request.attempts, backoff, e.getMessage()));
+            try {
+                retryScheduler.schedule(() -> retry(request), backoff, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                LOG.warn("SMS dispatcher stopped, not retrying SMS to " + request.mobile);
+            }
+        }
+    }
+
+    private void retry(SMSRequest request) {
+        //A newer code for this number takes precedence over the retry
+        if (register(request, false) == Registration.REJECTED) {
+            rejectedCounter.increment();
+            LOG.error("SMS queue is full, dropping retry of SMS to " + request.mobile);
+        }
+    }
+
+    /**
+     * Registers the pending request of the number and queues the number if it had no pending request. Both happen
+     * atomically per number, so a request rejected by a full queue never removes a request of a concurrent caller.
+     */
+    private Registration register(SMSRequest request, boolean replacePending) {
+        AtomicReference<Registration> registration = new AtomicReference<>();
+        pending.compute(request.mobile, (mobile, existing) -> {
+            if (existing != null) {
+                registration.set(replacePending ? Registration.REPLACED : Registration.KEPT);
+                return replacePending ? request : existing;
+            }
+            if (!queue.offer(mobile)) {
+                registration.set(Registration.REJECTED);
+                return null;
+            }
+            registration.set(Registration.QUEUED);
+            return request;
+        });
+        return registration.get();
+    }
+
+    private enum Registration {
+        QUEUED, REPLACED, KEPT, REJECTED
+    }
+
+    private static class SMSRequest {
+
+        private final String mobile;
+        private final String code;
+        private final Locale locale;
+        private final long createdNanos = System.nanoTime();
+        private int attempts;
+
+        private SMSRequest(String mobile, String code, Locale locale) {
+            this.mobile = mobile;
+            this.code = code;
+            this.locale = locale;
+        }
+    }
+}
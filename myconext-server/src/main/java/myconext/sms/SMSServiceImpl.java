@@ -7,11 +7,14 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.RequestEntity;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
 
 import java.net.URI;
+import java.net.http.HttpClient;
 import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -19,10 +22,13 @@ import java.util.Map;
 @SuppressWarnings("unchecked")
 public class SMSServiceImpl implements SMSService {
 
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration READ_TIMEOUT = Duration.ofSeconds(10);
+
     private final String url;
     private final String templateNl;
     private final String templateEn;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate restTemplate;
     private final MultiValueMap<String, String> headers = new HttpHeaders();
 
     @SneakyThrows
@@ -33,6 +39,12 @@ public class SMSServiceImpl implements SMSService {
         headers.add(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
         headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
         headers.add(HttpHeaders.AUTHORIZATION, "Bearer " + bearer);
+        //The JDK HttpClient keeps the connections to the SMS gateway alive
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(HttpClient.newBuilder()
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build());
+        requestFactory.setReadTimeout(READ_TIMEOUT);
+        this.restTemplate = new RestTemplate(requestFactory);
     }
 
     protected String formatMessage(String code, Locale locale) {
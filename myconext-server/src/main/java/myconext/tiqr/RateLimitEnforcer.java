@@ -2,7 +2,11 @@ package myconext.tiqr;
 
 import myconext.exceptions.TooManyRequestsException;
 import myconext.model.User;
-import myconext.repository.UserRepository;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -11,46 +15,75 @@ import java.util.Map;
 
 import static myconext.tiqr.SURFSecureID.*;
 
+/**
+ * The rate limit and suspension counters are updated with atomic operations on the surfSecureId fields of the user
+ * document, so concurrent attempts can not both pass the threshold and the rest of the user is not rewritten. The
+ * new values are copied to the in-memory user, because the callers may use the user afterwards.
+ */
 public class RateLimitEnforcer {
 
-    private final UserRepository userRepository;
+    private final MongoTemplate mongoTemplate;
     private final TiqrConfiguration tiqrConfiguration;
 
-    public RateLimitEnforcer(UserRepository userRepository, TiqrConfiguration tiqrConfiguration) {
-        this.userRepository = userRepository;
+    public RateLimitEnforcer(MongoTemplate mongoTemplate, TiqrConfiguration tiqrConfiguration) {
+        this.mongoTemplate = mongoTemplate;
         this.tiqrConfiguration = tiqrConfiguration;
     }
 
     public void checkRateLimit(User user) {
-        Map<String, Object> surfSecureId = user.getSurfSecureId();
-        int rateLimit = (int) surfSecureId.merge(RATE_LIMIT, 1, (i, j) -> Integer.sum((int) i, (int) j));
-        if (rateLimit >= tiqrConfiguration.getRateLimitThreshold()) {
-            Long rateLimitUpdated = (Long) surfSecureId.get(RATE_LIMIT_UPDATED);
-            boolean resetRateLimit = (System.currentTimeMillis() - rateLimitUpdated) > (tiqrConfiguration.getRateLimitResetMinutes() * 1000L * 60);
-            if (resetRateLimit) {
-                surfSecureId.put(RATE_LIMIT, 0);
-            } else {
+        long now = System.currentTimeMillis();
+        //Only increment when the incremented value stays below the threshold
+        Query belowThreshold = userQuery(user).addCriteria(new Criteria().orOperator(
+                Criteria.where(SURF_SECURE_ID + RATE_LIMIT).exists(false),
+                Criteria.where(SURF_SECURE_ID + RATE_LIMIT).lt(tiqrConfiguration.getRateLimitThreshold() - 1)));
+        belowThreshold.fields().include("surfSecureId");
+        User updatedUser = mongoTemplate.findAndModify(belowThreshold,
+                new Update().inc(SURF_SECURE_ID + RATE_LIMIT, 1).set(SURF_SECURE_ID + RATE_LIMIT_UPDATED, now),
+                FindAndModifyOptions.options().returnNew(true),
+                User.class);
+        if (updatedUser == null) {
+            long resetBefore = now - (tiqrConfiguration.getRateLimitResetMinutes() * 1000L * 60);
+            Query expired = userQuery(user).addCriteria(Criteria.where(SURF_SECURE_ID + RATE_LIMIT_UPDATED).lt(resetBefore));
+            expired.fields().include("surfSecureId");
+            updatedUser = mongoTemplate.findAndModify(expired,
+                    new Update().set(SURF_SECURE_ID + RATE_LIMIT, 0).set(SURF_SECURE_ID + RATE_LIMIT_UPDATED, now),
+                    FindAndModifyOptions.options().returnNew(true),
+                    User.class);
+            if (updatedUser == null) {
                 throw new TooManyRequestsException("Too many requests by user: " + user.getEmail());
             }
         }
-        surfSecureId.put(RATE_LIMIT_UPDATED, System.currentTimeMillis());
-        userRepository.save(user);
+        Map<String, Object> surfSecureId = user.getSurfSecureId();
+        surfSecureId.put(RATE_LIMIT, updatedUser.getSurfSecureId().get(RATE_LIMIT));
+        surfSecureId.put(RATE_LIMIT_UPDATED, now);
     }
 
     public void suspendUserAfterTiqrFailure(User user) {
+        Query query = userQuery(user);
+        query.fields().include("surfSecureId");
+        User updatedUser = mongoTemplate.findAndModify(query,
+                new Update().inc(SURF_SECURE_ID + SUSPENDED_ATTEMPTS, 1),
+                FindAndModifyOptions.options().returnNew(true),
+                User.class);
+        int attempts = updatedUser == null ? 1 : ((Number) updatedUser.getSurfSecureId().get(SUSPENDED_ATTEMPTS)).intValue();
+        Instant suspendedUntil = Instant.now().plus((int) Math.pow(attempts - 1, 2), ChronoUnit.MINUTES);
+        //The suspension is derived from the atomic counter, so concurrent failures never shorten it
+        mongoTemplate.updateFirst(userQuery(user).addCriteria(Criteria.where(SURF_SECURE_ID + SUSPENDED_ATTEMPTS).is(attempts)),
+                new Update().set(SURF_SECURE_ID + SUSPENDED_UNTIL, suspendedUntil),
+                User.class);
         Map<String, Object> surfSecureId = user.getSurfSecureId();
-        int attempts = (int) surfSecureId.merge(SUSPENDED_ATTEMPTS, 1, (i, j) -> (int) i + 1);
-        surfSecureId.put(SUSPENDED_UNTIL, Instant.now().plus((int) Math.pow(attempts - 1, 2), ChronoUnit.MINUTES));
-        userRepository.save(user);
+        surfSecureId.put(SUSPENDED_ATTEMPTS, attempts);
+        surfSecureId.put(SUSPENDED_UNTIL, suspendedUntil);
     }
 
     public void unsuspendUserAfterTiqrSuccess(User user) {
+        //No-op write when the user is not suspended, but the in-memory user might be outdated
+        mongoTemplate.updateFirst(userQuery(user).addCriteria(Criteria.where(SURF_SECURE_ID + SUSPENDED_UNTIL).exists(true)),
+                new Update().unset(SURF_SECURE_ID + SUSPENDED_ATTEMPTS).unset(SURF_SECURE_ID + SUSPENDED_UNTIL),
+                User.class);
         Map<String, Object> surfSecureId = user.getSurfSecureId();
-        if (surfSecureId.containsKey(SUSPENDED_UNTIL)) {
-            surfSecureId.remove(SUSPENDED_ATTEMPTS);
-            surfSecureId.remove(SUSPENDED_UNTIL);
-            userRepository.save(user);
-        }
+        surfSecureId.remove(SUSPENDED_ATTEMPTS);
+        surfSecureId.remove(SUSPENDED_UNTIL);
     }
 
     public boolean isUserAllowedTiqrVerification(User user) {
@@ -62,4 +95,8 @@ public class RateLimitEnforcer {
         }
         return true;
     }
+
+    private Query userQuery(User user) {
+        return Query.query(Criteria.where("_id").is(user.getId()));
+    }
 }
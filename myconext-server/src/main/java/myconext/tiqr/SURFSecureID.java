@@ -23,4 +23,7 @@ public class SURFSecureID {
 
     public static final String SUSPENDED_ATTEMPTS = "suspendedAttempts";
 
+    //Prefix of the keys above in queries and updates of the user document
+    public static final String SURF_SECURE_ID = "surfSecureId.";
+
 }
@@ -15,17 +15,22 @@ import myconext.repository.*;
 import myconext.security.CookieValueEncoder;
 import myconext.security.UserAuthentication;
 import myconext.security.VerificationCodeGenerator;
-import myconext.sms.SMSService;
+import myconext.sms.SMSDispatcher;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
 import org.springframework.core.io.Resource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.yaml.snakeyaml.Yaml;
 import tiqr.org.DefaultTiqrService;
 import tiqr.org.TiqrException;
@@ -43,8 +48,10 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static myconext.crypto.HashGenerator.hash;
 import static myconext.log.MDCContext.logWithContext;
@@ -65,11 +72,14 @@ public class TiqrController implements UserAuthentication {
     private final AuthenticationRequestRepository authenticationRequestRepository;
     private final UserRepository userRepository;
     private final Manage serviceProviderResolver;
-    private final SMSService smsService;
+    private final SMSDispatcher smsDispatcher;
     private final String magicLinkUrl;
     private final RegistrationRepository registrationRepository;
     private final RateLimitEnforcer rateLimitEnforcer;
+    private final MongoTemplate mongoTemplate;
     private final CookieValueEncoder cookieValueEncoder;
+    private final TiqrStatusNotifier tiqrStatusNotifier;
+    private final long longPollTimeoutMillis;
 
     @Autowired
     public TiqrController(@Value("${tiqr_configuration}") Resource resource,
@@ -79,12 +89,17 @@ public class TiqrController implements UserAuthentication {
                           AuthenticationRequestRepository authenticationRequestRepository,
                           UserRepository userRepository,
                           Manage serviceProviderResolver,
-                          SMSService smsService,
+                          SMSDispatcher smsDispatcher,
                           Environment environment,
                           @Value("${email.magic-link-url}") String magicLinkUrl,
-                          CookieValueEncoder cookieValueEncoder) throws IOException {
+                          CookieValueEncoder cookieValueEncoder,
+                          TiqrStatusNotifier tiqrStatusNotifier,
+                          MongoTemplate mongoTemplate,
+                          @Value("${tiqr_long_poll_timeout_seconds}") long longPollTimeoutSeconds) throws IOException {
         this.tiqrConfiguration = new Yaml().loadAs(resource.getInputStream(), TiqrConfiguration.class);
         this.cookieValueEncoder = cookieValueEncoder;
+        this.tiqrStatusNotifier = tiqrStatusNotifier;
+        this.longPollTimeoutMillis = longPollTimeoutSeconds * 1000L;
         String baseUrl = getEduIDServerBaseUrl();
         Service service = new Service(
                 tiqrConfiguration.getDisplayName(),
@@ -110,9 +125,10 @@ public class TiqrController implements UserAuthentication {
         this.authenticationRequestRepository = authenticationRequestRepository;
         this.userRepository = userRepository;
         this.serviceProviderResolver = serviceProviderResolver;
-        this.smsService = smsService;
+        this.smsDispatcher = smsDispatcher;
         this.magicLinkUrl = magicLinkUrl;
-        this.rateLimitEnforcer = new RateLimitEnforcer(userRepository, tiqrConfiguration);
+        this.rateLimitEnforcer = new RateLimitEnforcer(mongoTemplate, tiqrConfiguration);
+        this.mongoTemplate = mongoTemplate;
     }
 
     private String getEduIDServerBaseUrl() {
@@ -179,15 +195,26 @@ public class TiqrController implements UserAuthentication {
     @Hidden
     public ResponseEntity<MetaData> metaData(@RequestParam("enrollment_key") String enrollmentKey) throws TiqrException {
         MetaData metaData = tiqrService.getMetaData(enrollmentKey);
+        //Fetching the metadata moves the enrollment to RETRIEVED
+        tiqrStatusNotifier.notifyChange(enrollmentNotificationKey(tiqrService.enrollmentStatus(enrollmentKey).getUserID()));
 
         LOG.info(String.format("Returning metaData for %s", metaData.getIdentity().getDisplayName()));
 
         return ResponseEntity.ok(metaData);
     }
 
-    @Operation(summary = "Poll enrollment", description = "Poll Tiqr enrollment status")
+    @Operation(summary = "Poll enrollment", description = "Poll Tiqr enrollment status. If the last known status is " +
+            "passed, the response is held back until the status changes or the long-poll timeout expires")
     @GetMapping("/poll-enrollment")
-    public ResponseEntity<EnrollmentStatus> enrollmentStatus(@RequestParam("enrollmentKey") String enrollmentKey) throws TiqrException {
+    public DeferredResult<ResponseEntity<EnrollmentStatus>> enrollmentStatus(@RequestParam("enrollmentKey") String enrollmentKey,
+                                                                             @RequestParam(value = "lastStatus", required = false) String lastStatus) throws TiqrException {
+        String notificationKey = StringUtils.hasText(lastStatus) ?
+                enrollmentNotificationKey(tiqrService.enrollmentStatus(enrollmentKey).getUserID()) : null;
+        return longPoll(notificationKey, lastStatus,
+                () -> doPollEnrollment(enrollmentKey), EnrollmentStatus::name);
+    }
+
+    private ResponseEntity<EnrollmentStatus> doPollEnrollment(String enrollmentKey) throws TiqrException {
         Enrollment enrollment = tiqrService.enrollmentStatus(enrollmentKey);
 
         LOG.debug(String.format("Polling enrollment for %s with status %s",
@@ -243,11 +270,11 @@ public class TiqrController implements UserAuthentication {
         }
         String recoveryCode = (String) surfSecureId
                 .computeIfAbsent(RECOVERY_CODE, k -> VerificationCodeGenerator.generateBackupCode().replaceAll(" ", ""));
-        userRepository.save(user);
-
         if (!regenerateSpFlow) {
             tiqrService.finishRegistration(user.getId());
         }
+        //Saved after the registration is finished, so the new version of the user also covers the registration
+        userRepository.save(user);
         return ResponseEntity.ok(new GeneratedBackupCode(this.magicLinkUrl, recoveryCode));
     }
 
@@ -288,19 +315,18 @@ public class TiqrController implements UserAuthentication {
     private ResponseEntity<FinishEnrollment> doSendPhoneCode(User user, String phoneNumber, boolean regenerateSpFlow, HttpServletRequest request) {
         String phoneVerification = VerificationCodeGenerator.generatePhoneVerification();
 
-        smsService.send(phoneNumber, phoneVerification, request.getLocale());
+        smsDispatcher.dispatch(phoneNumber, phoneVerification, request.getLocale());
 
         Map<String, Object> surfSecureId = user.getSurfSecureId();
         surfSecureId.put(PHONE_VERIFICATION_CODE, phoneVerification);
         surfSecureId.remove(RATE_LIMIT);
+        String phoneNumberKey = regenerateSpFlow ? NEW_UNVERIFIED_PHONE_NUMBER : PHONE_NUMBER;
+        surfSecureId.put(phoneNumberKey, phoneNumber);
 
-        if (regenerateSpFlow) {
-            surfSecureId.put(NEW_UNVERIFIED_PHONE_NUMBER, phoneNumber);
-        } else {
-            surfSecureId.put(PHONE_NUMBER, phoneNumber);
-        }
-
-        userRepository.save(user);
+        updateSurfSecureId(user, new Update()
+                .set(SURF_SECURE_ID + PHONE_VERIFICATION_CODE, phoneVerification)
+                .unset(SURF_SECURE_ID + RATE_LIMIT)
+                .set(SURF_SECURE_ID + phoneNumberKey, phoneNumber));
 
         return ResponseEntity.ok(new FinishEnrollment("ok"));
     }
@@ -361,15 +387,22 @@ public class TiqrController implements UserAuthentication {
             surfSecureId.remove(PHONE_VERIFICATION_CODE);
             surfSecureId.put(PHONE_VERIFIED, true);
             surfSecureId.remove(RATE_LIMIT);
+            Update update = new Update()
+                    .unset(SURF_SECURE_ID + PHONE_VERIFICATION_CODE)
+                    .set(SURF_SECURE_ID + PHONE_VERIFIED, true)
+                    .unset(SURF_SECURE_ID + RATE_LIMIT);
             if (regenerateSpFlow) {
                 String unverifiedPhoneNumber = (String) surfSecureId.get(NEW_UNVERIFIED_PHONE_NUMBER);
                 surfSecureId.put(PHONE_NUMBER, unverifiedPhoneNumber);
                 surfSecureId.remove(NEW_UNVERIFIED_PHONE_NUMBER);
                 surfSecureId.remove(RECOVERY_CODE);
+                update.set(SURF_SECURE_ID + PHONE_NUMBER, unverifiedPhoneNumber)
+                        .unset(SURF_SECURE_ID + NEW_UNVERIFIED_PHONE_NUMBER)
+                        .unset(SURF_SECURE_ID + RECOVERY_CODE);
             } else {
                 tiqrService.finishRegistration(user.getId());
             }
-            userRepository.save(user);
+            updateSurfSecureId(user, update);
         } else {
             throw new ForbiddenException("Forbidden phone code, wrong code: " + code);
         }
@@ -421,20 +454,69 @@ public class TiqrController implements UserAuthentication {
         return ResponseEntity.ok(startAuthentication);
     }
 
-    @Operation(summary = "Poll authentication", description = "Poll Tiqr authentication status for current user")
+    @Operation(summary = "Poll authentication", description = "Poll Tiqr authentication status for current user. If the last " +
+            "known status is passed, the response is held back until the status changes or the long-poll timeout expires")
     @GetMapping("/sp/poll-authentication")
-    public ResponseEntity<PollAuthenticationResult> spAuthenticationStatus(org.springframework.security.core.Authentication authentication,
-                                                                           @RequestParam(SESSION_KEY) @Parameter(description = "Session key of the authentication") String sessionKey) throws TiqrException {
+    public DeferredResult<ResponseEntity<PollAuthenticationResult>> spAuthenticationStatus(org.springframework.security.core.Authentication authentication,
+                                                                                           @RequestParam(SESSION_KEY) @Parameter(description = "Session key of the authentication") String sessionKey,
+                                                                                           @RequestParam(value = "lastStatus", required = false) @Parameter(description = "Last known status for long-polling") String lastStatus) {
         // Strictly speaking not necessary
         userFromAuthentication(authentication);
-        return doPollAuthentication(sessionKey, Optional.empty());
+        return longPoll(sessionKey, lastStatus,
+                () -> doPollAuthentication(sessionKey, Optional.empty()), PollAuthenticationResult::getStatus);
     }
 
     @GetMapping("/poll-authentication")
     @Hidden
-    public ResponseEntity<PollAuthenticationResult> authenticationStatus(@RequestParam(SESSION_KEY) String sessionKey,
-                                                                         @RequestParam("id") String authenticationRequestId) throws TiqrException {
-        return doPollAuthentication(sessionKey, Optional.of(authenticationRequestId));
+    public DeferredResult<ResponseEntity<PollAuthenticationResult>> authenticationStatus(@RequestParam(SESSION_KEY) String sessionKey,
+                                                                                         @RequestParam("id") String authenticationRequestId,
+                                                                                         @RequestParam(value = "lastStatus", required = false) String lastStatus) {
+        return longPoll(sessionKey, lastStatus,
+                () -> doPollAuthentication(sessionKey, Optional.of(authenticationRequestId)), PollAuthenticationResult::getStatus);
+    }
+
+    /*
+     * Without a lastStatus the current status is returned immediately. Otherwise the request is parked until the
+     * TiqrStatusNotifier reports a change for the key and the status differs from lastStatus, or until the timeout.
+     */
+    private <T> DeferredResult<ResponseEntity<T>> longPoll(String notificationKey,
+                                                           String lastStatus,
+                                                           Callable<ResponseEntity<T>> poll,
+                                                           Function<T, String> status) {
+        DeferredResult<ResponseEntity<T>> deferredResult = new DeferredResult<>(longPollTimeoutMillis);
+        if (!StringUtils.hasText(lastStatus)) {
+            completePoll(deferredResult, poll, body -> true);
+            return deferredResult;
+        }
+        Runnable check = () -> completePoll(deferredResult, poll, body -> !lastStatus.equals(status.apply(body)));
+        deferredResult.onCompletion(tiqrStatusNotifier.register(notificationKey, check));
+        deferredResult.onTimeout(() -> completePoll(deferredResult, poll, body -> true));
+        //The listener is registered before the first check, so a change in between can not be missed
+        check.run();
+        return deferredResult;
+    }
+
+    private <T> void completePoll(DeferredResult<ResponseEntity<T>> deferredResult,
+                                  Callable<ResponseEntity<T>> poll,
+                                  Predicate<T> complete) {
+        //Polling a successful authentication has side effects, so it must not run concurrently for one request
+        synchronized (deferredResult) {
+            if (deferredResult.isSetOrExpired()) {
+                return;
+            }
+            try {
+                ResponseEntity<T> responseEntity = poll.call();
+                if (complete.test(responseEntity.getBody())) {
+                    deferredResult.setResult(responseEntity);
+                }
+            } catch (Exception e) {
+                deferredResult.setErrorResult(e);
+            }
+        }
+    }
+
+    private String enrollmentNotificationKey(String userId) {
+        return "enrollment_" + userId;
     }
 
     private ResponseEntity<PollAuthenticationResult> doPollAuthentication(String sessionKey, Optional<String> authenticationRequestIdOptional) throws TiqrException {
@@ -503,6 +585,7 @@ public class TiqrController implements UserAuthentication {
         String response = manualResponse.getResponse();
         //fingers crossed, in case of mismatch an exception is thrown
         tiqrService.postAuthentication(new AuthenticationData(sessionKey, response));
+        tiqrStatusNotifier.notifyChange(sessionKey);
         return ResponseEntity.ok(new FinishEnrollment("ok"));
     }
 
@@ -516,6 +599,7 @@ public class TiqrController implements UserAuthentication {
         registration.setEnrollmentSecret(enrollmentSecret);
         try {
             Registration savedRegistration = tiqrService.enrollData(registration);
+            tiqrStatusNotifier.notifyChange(enrollmentNotificationKey(savedRegistration.getUserId()));
             LOG.debug("Successful enrollment for user " + savedRegistration.getUserId());
             return ResponseEntity.ok("OK");
         } catch (TiqrException | RuntimeException e) {
@@ -552,6 +636,7 @@ public class TiqrController implements UserAuthentication {
             LOG.debug(String.format("Successful authentication for user %s, %s" ,user.getEmail(), user.getId()));
 
             rateLimitEnforcer.unsuspendUserAfterTiqrSuccess(user);
+            tiqrStatusNotifier.notifyChange(authenticationData.getSessionKey());
             return ResponseEntity.ok("OK");
         } catch (TiqrException | RuntimeException e) {
             //Do not show stacktrace
@@ -565,6 +650,7 @@ public class TiqrController implements UserAuthentication {
             } catch (TiqrException ex) {
                 //Normally bad practice, but nothing can be done about it
             }
+            tiqrStatusNotifier.notifyChange(authenticationData.getSessionKey());
             return ResponseEntity.ok("ERROR");
         }
     }
@@ -605,16 +691,24 @@ public class TiqrController implements UserAuthentication {
         rateLimitEnforcer.checkRateLimit(user);
 
         if (MessageDigest.isEqual(userVerificationCode, verificationCode)) {
-            user.getSurfSecureId().clear();
-            userRepository.save(user);
             Registration registration = registrationRepository.findRegistrationByUserId(user.getId()).orElseThrow(IllegalArgumentException::new);
             registrationRepository.delete(registration);
+            //Updated after the registration is deleted, so the new version of the user also covers the registration
+            user.getSurfSecureId().clear();
+            updateSurfSecureId(user, new Update().unset("surfSecureId"));
         } else {
             throw new ForbiddenException("Forbidden userVerificationCode: " + userVerificationCode);
         }
         return ResponseEntity.ok(new FinishEnrollment("ok"));
     }
 
+    private void updateSurfSecureId(User user, Update update) {
+        //Only the changed keys are written, so the atomic counters of the RateLimitEnforcer are not overwritten
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(user.getId())),
+                update.set("version", User.newVersion()),
+                User.class);
+    }
+
     private User getUserFromAuthenticationRequest(String hash) {
         SamlAuthenticationRequest samlAuthenticationRequest = authenticationRequestRepository.findByHash(hash)
                 .orElseThrow(() -> new ForbiddenException("Unknown hash"));
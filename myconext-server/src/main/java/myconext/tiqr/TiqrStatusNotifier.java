@@ -0,0 +1,83 @@
+package myconext.tiqr;
+
+import jakarta.annotation.PreDestroy;
+import myconext.mongo.CappedCollectionNotifier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Registry of listeners waiting for a change of a Tiqr enrollment or authentication, used by the long-poll variants of
+ * the poll endpoints. A change is published to the listeners on this node directly and to the other nodes through a
+ * {@link CappedCollectionNotifier}.
+ */
+@Component
+public class TiqrStatusNotifier {
+
+    private static final Log LOG = LogFactory.getLog(TiqrStatusNotifier.class);
+
+    static final String COLLECTION_NAME = "tiqr_notifications";
+
+    private final Map<String, Set<Runnable>> listeners = new ConcurrentHashMap<>();
+    //Listeners query the database, so don't run them on the thread of the Tiqr app request
+    private final ExecutorService dispatcher = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "tiqr-status-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final CappedCollectionNotifier notifier;
+
+    @Autowired
+    public TiqrStatusNotifier(MongoTemplate mongoTemplate) {
+        //Listeners re-query the status, so notifying all of them is safe when changes may have been lost
+        this.notifier = new CappedCollectionNotifier(mongoTemplate, COLLECTION_NAME, this::notifyLocal,
+                () -> listeners.keySet().forEach(this::notifyLocal));
+    }
+
+    /**
+     * Register a listener for changes of the enrollment or authentication with this key. Returns the callback to
+     * unregister the listener.
+     */
+    public Runnable register(String key, Runnable listener) {
+        listeners.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(listener);
+        return () -> listeners.computeIfPresent(key, (k, keyListeners) -> {
+            keyListeners.remove(listener);
+            return keyListeners.isEmpty() ? null : keyListeners;
+        });
+    }
+
+    public void notifyChange(String key) {
+        notifyLocal(key);
+        //Long-polling clients on other nodes will return after their timeout when publishing fails
+        notifier.publish(key);
+    }
+
+    private void notifyLocal(String key) {
+        Set<Runnable> keyListeners = listeners.get(key);
+        if (keyListeners == null) {
+            return;
+        }
+        keyListeners.forEach(listener -> {
+            try {
+                dispatcher.execute(listener);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Dispatcher stopped, not notifying listener for " + key);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        notifier.shutdown();
+        dispatcher.shutdownNow();
+    }
+}
@@ -158,6 +158,10 @@ public class AttributeMapper {
     }
 
     public ExternalLinkedAccount createExternalLinkedAccount(NewExternalEduID eduID, IdpScoping idpScoping) {
+        return createExternalLinkedAccount(eduID, idpScoping, this.manage);
+    }
+
+    public ExternalLinkedAccount createExternalLinkedAccount(NewExternalEduID eduID, IdpScoping idpScoping, Manage manage) {
         ExternalLinkedAccount externalLinkedAccount = new ExternalLinkedAccount(
                 //String subjectId
                 eduID.getIdentifier(),
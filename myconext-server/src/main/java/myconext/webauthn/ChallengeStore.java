@@ -0,0 +1,23 @@
+package myconext.webauthn;
+
+import myconext.model.Challenge;
+
+import java.util.Optional;
+
+/**
+ * Short-lived storage of the challenge of a WebAuthn registration or authentication between the start and the finish
+ * of the ceremony. Challenges are single-use and expire when the ceremony is abandoned.
+ */
+public interface ChallengeStore {
+
+    /**
+     * Store the challenge for this token, replacing any earlier challenge for the same token.
+     */
+    void store(String token, String challenge, String email);
+
+    /**
+     * Return and remove the non-expired challenge for this token.
+     */
+    Optional<Challenge> consume(String token);
+
+}
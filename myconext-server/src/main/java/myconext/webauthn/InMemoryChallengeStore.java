@@ -0,0 +1,58 @@
+package myconext.webauthn;
+
+import jakarta.annotation.PreDestroy;
+import myconext.model.Challenge;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Challenge store for single-node deployments, where the start and the finish of a ceremony are always handled by
+ * the same instance. Do not use behind a load balancer without sticky sessions.
+ */
+public class InMemoryChallengeStore implements ChallengeStore {
+
+    private final Map<String, Challenge> challenges = new ConcurrentHashMap<>();
+    private final Duration timeToLive;
+    private final ScheduledExecutorService cleaner;
+
+    public InMemoryChallengeStore(Duration timeToLive) {
+        this.timeToLive = timeToLive;
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "webauthn-challenge-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMillis = timeToLive.toMillis();
+        this.cleaner.scheduleAtFixedRate(this::removeExpired, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void store(String token, String challenge, String email) {
+        challenges.put(token, new Challenge(token, challenge, email, new Date(System.currentTimeMillis() + timeToLive.toMillis())));
+    }
+
+    @Override
+    public Optional<Challenge> consume(String token) {
+        return Optional.ofNullable(challenges.remove(token)).filter(challenge -> !challenge.isExpired());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+    }
+
+    int size() {
+        return challenges.size();
+    }
+
+    void removeExpired() {
+        challenges.values().removeIf(Challenge::isExpired);
+    }
+}
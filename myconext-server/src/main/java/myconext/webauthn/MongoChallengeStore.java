@@ -0,0 +1,43 @@
+package myconext.webauthn;
+
+import myconext.model.Challenge;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * Cluster-safe challenge store, as the finish of a ceremony can end up on another node than the start. Both store and
+ * consume are a single operation. Abandoned challenges are removed by the TTL index on expiresAt, see MongoMapping.
+ */
+public class MongoChallengeStore implements ChallengeStore {
+
+    private final MongoTemplate mongoTemplate;
+    private final Duration timeToLive;
+
+    public MongoChallengeStore(MongoTemplate mongoTemplate, Duration timeToLive) {
+        this.mongoTemplate = mongoTemplate;
+        this.timeToLive = timeToLive;
+    }
+
+    @Override
+    public void store(String token, String challenge, String email) {
+        mongoTemplate.upsert(Query.query(Criteria.where("token").is(token)),
+                new Update()
+                        .set("challenge", challenge)
+                        .set("email", email)
+                        .set("expiresAt", new Date(System.currentTimeMillis() + timeToLive.toMillis())),
+                Challenge.class);
+    }
+
+    @Override
+    public Optional<Challenge> consume(String token) {
+        //The TTL monitor runs periodically, so expired challenges might still be present
+        Query query = Query.query(Criteria.where("token").is(token).and("expiresAt").gt(new Date()));
+        return Optional.ofNullable(mongoTemplate.findAndRemove(query, Challenge.class));
+    }
+}
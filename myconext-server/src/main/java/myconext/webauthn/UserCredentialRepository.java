@@ -6,74 +6,99 @@ import com.yubico.webauthn.data.ByteArray;
 import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
 import com.yubico.webauthn.data.PublicKeyCredentialType;
 import com.yubico.webauthn.data.exception.Base64UrlException;
-import myconext.model.PublicKeyCredentials;
 import myconext.model.User;
-import myconext.repository.UserRepository;
+import myconext.model.WebAuthnCredential;
+import myconext.repository.WebAuthnCredentialRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Collation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 
-import java.util.Collections;
-import java.util.Optional;
-import java.util.Set;
-import java.util.function.Function;
+import java.util.*;
 import java.util.stream.Collectors;
 
+/**
+ * Serves the WebAuthn lookups from the {@link WebAuthnCredential} index and projections on the users collection, so
+ * no full user is loaded during a ceremony. The index must be synchronized after every change of the credentials of
+ * a user.
+ */
 @Component
 public class UserCredentialRepository implements CredentialRepository {
 
-    private final UserRepository userRepository;
+    //Must be equal to the collation of the unique email index in MongoMapping, otherwise the index is not used
+    private static final Collation EMAIL_COLLATION = Collation.of(Locale.ENGLISH).strength(2);
+
+    private final MongoTemplate mongoTemplate;
+    private final WebAuthnCredentialRepository webAuthnCredentialRepository;
 
     @Autowired
-    public UserCredentialRepository(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public UserCredentialRepository(MongoTemplate mongoTemplate,
+                                    WebAuthnCredentialRepository webAuthnCredentialRepository) {
+        this.mongoTemplate = mongoTemplate;
+        this.webAuthnCredentialRepository = webAuthnCredentialRepository;
     }
 
     @Override
     public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String email) {
-        Optional<User> userOptional = userRepository.findUserByEmail(email.trim());
-        return userOptional.map(user -> user.getPublicKeyCredentials().stream()
-                .map(publicKeyCredentials ->
-                        PublicKeyCredentialDescriptor.builder()
-                                .id(byteArrayFromBase64Url(publicKeyCredentials.getIdentifier()))
+        return findUserByEmail(email)
+                .map(user -> webAuthnCredentialRepository.findByUserId(user.getId()).stream()
+                        .map(credential -> PublicKeyCredentialDescriptor.builder()
+                                .id(byteArrayFromBase64Url(credential.getCredentialId()))
                                 .type(PublicKeyCredentialType.PUBLIC_KEY)
                                 .build())
-                .collect(Collectors.toSet())).orElse(Collections.emptySet());
+                        .collect(Collectors.toSet()))
+                .orElse(Collections.emptySet());
     }
 
     @Override
     public Optional<ByteArray> getUserHandleForUsername(String email) {
-        return userRepository.findUserByEmail(email.trim())
-                .map(user -> byteArrayFromBase64Url(user.getUserHandle()));
+        return findUserByEmail(email)
+                .map(User::getUserHandle)
+                .map(this::byteArrayFromBase64Url);
     }
 
     @Override
     public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
-        return userRepository.findUserByUserHandle(userHandle.getBase64Url()).map(User::getEmail);
+        Query query = Query.query(Criteria.where("userHandle").is(userHandle.getBase64Url()));
+        query.fields().include("email");
+        return Optional.ofNullable(mongoTemplate.findOne(query, User.class)).map(User::getEmail);
     }
 
     @Override
     public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
-        String credentialKey = credentialId.getBase64Url();
-        Optional<User> optionalUser = userRepository.findUserByUserHandle(userHandle.getBase64Url());
-        return optionalUser.map(user ->
-                        user.getPublicKeyCredentials()
-                                .stream()
-                                .filter(publicKeyCredential -> publicKeyCredential.getIdentifier().equals(credentialKey))
-                                .map(PublicKeyCredentials::getCredential)
-                                .filter(StringUtils::hasText)
-                                .findFirst())
-                .flatMap(Function.identity())
-                .map(publicKeyCose -> RegisteredCredential.builder()
-                        .credentialId(credentialId)
-                        .userHandle(userHandle)
-                        .publicKeyCose(byteArrayFromBase64Url(publicKeyCose))
-                        .build());
+        return webAuthnCredentialRepository.findById(credentialId.getBase64Url())
+                .filter(credential -> credential.getUserHandle().equals(userHandle.getBase64Url()))
+                .map(this::registeredCredential);
     }
 
     @Override
     public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
-        return Collections.emptySet();
+        //The credential ID is the primary key of the index, so there is at most one
+        return webAuthnCredentialRepository.findById(credentialId.getBase64Url())
+                .map(this::registeredCredential)
+                .map(Set::of)
+                .orElse(Collections.emptySet());
+    }
+
+    /**
+     * Bring the index in line with the current credentials of the user. Must be called after every save of the user
+     * where a credential is added or removed.
+     */
+    public void synchronize(User user) {
+        List<WebAuthnCredential> credentials = WebAuthnCredential.of(user);
+        Set<String> credentialIds = credentials.stream()
+                .map(WebAuthnCredential::getCredentialId)
+                .collect(Collectors.toSet());
+        mongoTemplate.remove(Query.query(Criteria.where("userId").is(user.getId())
+                        .and("_id").nin(credentialIds)),
+                WebAuthnCredential.class);
+        webAuthnCredentialRepository.saveAll(credentials);
+    }
+
+    public void remove(Collection<User> users) {
+        webAuthnCredentialRepository.deleteByUserIdIn(users.stream().map(User::getId).toList());
     }
 
     protected ByteArray byteArrayFromBase64Url(String base64Url) {
@@ -83,4 +108,18 @@ public class UserCredentialRepository implements CredentialRepository {
             throw new IllegalArgumentException(e);
         }
     }
+
+    private Optional<User> findUserByEmail(String email) {
+        Query query = Query.query(Criteria.where("email").is(email.trim())).collation(EMAIL_COLLATION);
+        query.fields().include("userHandle");
+        return Optional.ofNullable(mongoTemplate.findOne(query, User.class));
+    }
+
+    private RegisteredCredential registeredCredential(WebAuthnCredential credential) {
+        return RegisteredCredential.builder()
+                .credentialId(byteArrayFromBase64Url(credential.getCredentialId()))
+                .userHandle(byteArrayFromBase64Url(credential.getUserHandle()))
+                .publicKeyCose(byteArrayFromBase64Url(credential.getPublicKeyCose()))
+                .build();
+    }
 }
@@ -0,0 +1,25 @@
+package myconext.webauthn;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+
+@Configuration
+public class WebAuthnConfiguration {
+
+    @Bean
+    public ChallengeStore challengeStore(MongoTemplate mongoTemplate,
+                                         @Value("${webauthn.challenge-store}") String challengeStore,
+                                         @Value("${webauthn.challenge-ttl-seconds}") long challengeTimeToLiveSeconds) {
+        Duration timeToLive = Duration.ofSeconds(challengeTimeToLiveSeconds);
+        return switch (challengeStore) {
+            case "mongo" -> new MongoChallengeStore(mongoTemplate, timeToLive);
+            case "memory" -> new InMemoryChallengeStore(timeToLive);
+            default -> throw new IllegalArgumentException("Unknown webauthn.challenge-store: " + challengeStore);
+        };
+    }
+
+}
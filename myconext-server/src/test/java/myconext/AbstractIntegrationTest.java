@@ -154,11 +154,16 @@ public abstract class AbstractIntegrationTest implements HasUserRepository {
                         .remove(new Query())
                         .insert(readFromFile(clazz))
                         .execute());
-        Arrays.asList(PasswordResetHash.class, ChangeEmailHash.class, Challenge.class, EmailsSend.class,
+        Arrays.asList(PasswordResetHash.class, ChangeEmailHash.class, Challenge.class, EmailsSend.class, OutboxMail.class, BulkMailingJob.class,
                         Registration.class, Authentication.class, Enrollment.class, MobileLinkAccountRequest.class)
                 .forEach(clazz -> mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, clazz)
                         .remove(new Query())
                         .execute());
+        //The WebAuthn credential index is derived from the users
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, WebAuthnCredential.class)
+                .remove(new Query())
+                .insert(mongoTemplate.findAll(User.class).stream().flatMap(user -> WebAuthnCredential.of(user).stream()).toList())
+                .execute();
     }
 
     protected String samlAuthnRequest() throws IOException {
@@ -7,6 +7,7 @@ import myconext.model.User;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -53,7 +54,7 @@ public class AttributeAggregatorControllerTest extends AbstractIntegrationTest {
     public void aggregateExistingEduID() {
         User user = userRepository.findOneUserByEmail("jdoe@example.com");
         String spEntityId = "http://mock-sp";
-        String eduId = user.computeEduIdForServiceProviderIfAbsent(spEntityId, manage);
+        String eduId = user.computeEduIdForServiceProviderIfAbsent(spEntityId, manage).value();
         userRepository.save(user);
         List<UserAttribute> userAttributes = doAggregate("aa", "secret", spEntityId, eppn);
 
@@ -61,6 +62,78 @@ public class AttributeAggregatorControllerTest extends AbstractIntegrationTest {
         assertEquals(eduId, userAttributes.get(0).getValues().get(0));
     }
 
+    @Test
+    public void aggregateBulk() {
+        String eduIDEppn = String.format("mdoe@%s", this.schacHomeOrganization);
+        List<AttributeAggregationRequest> aggregationRequests = List.of(
+                new AttributeAggregationRequest("http://mock-sp", eppn),
+                new AttributeAggregationRequest("http://brand-new-sp", eduIDEppn),
+                new AttributeAggregationRequest("http://mock-sp", "nope"),
+                new AttributeAggregationRequest("http://other-sp", eppn),
+                new AttributeAggregationRequest("http://mock-sp", eppn));
+        List<AttributeAggregationResponse> responses = given()
+                .when()
+                .auth().preemptive().basic("aa", "secret")
+                .contentType(ContentType.JSON)
+                .body(aggregationRequests)
+                .post("/myconext/api/attribute-aggregation/bulk")
+                .then()
+                .statusCode(200)
+                .extract().body().jsonPath().getList(".", AttributeAggregationResponse.class);
+
+        assertEquals(5, responses.size());
+        assertEquals(List.of(1, 1, 0, 1, 1), responses.stream().map(response -> response.getAttributes().size()).toList());
+        assertEquals("http://other-sp", responses.get(3).getSpEntityId());
+        String mockSpEduID = responses.get(0).getAttributes().get(0).getValues().get(0);
+        assertEquals(mockSpEduID, responses.get(4).getAttributes().get(0).getValues().get(0));
+
+        User user = userRepository.findUserByUid(uid).get();
+        assertEquals(mockSpEduID, user.computeEduIdForServiceProviderIfAbsent("http://mock-sp", manage).value());
+        assertEquals(responses.get(3).getAttributes().get(0).getValues().get(0),
+                user.computeEduIdForServiceProviderIfAbsent("http://other-sp", manage).value());
+        User eduIDUser = userRepository.findUserByUid("mdoe").get();
+        assertEquals(eduIDUser.getEduIDS().get(0).getValue(), responses.get(1).getAttributes().get(0).getValues().get(0));
+    }
+
+    @Test
+    public void aggregateBulkBlankEntityId() {
+        int eduIDCount = userRepository.findUserByUid(uid).get().getEduIDS().size();
+        given()
+                .when()
+                .auth().preemptive().basic("aa", "secret")
+                .contentType(ContentType.JSON)
+                .body(List.of(new AttributeAggregationRequest(" ", eppn)))
+                .post("/myconext/api/attribute-aggregation/bulk")
+                .then()
+                .statusCode(400);
+
+        assertEquals(eduIDCount, userRepository.findUserByUid(uid).get().getEduIDS().size());
+    }
+
+    @Test
+    public void aggregateBulkTooManyPrincipals() {
+        given()
+                .when()
+                .auth().preemptive().basic("aa", "secret")
+                .contentType(ContentType.JSON)
+                .body(Collections.nCopies(1001, new AttributeAggregationRequest("http://mock-sp", eppn)))
+                .post("/myconext/api/attribute-aggregation/bulk")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    public void aggregateBulkWrongScopeForUser() {
+        given()
+                .when()
+                .auth().preemptive().basic("oidcng", "secret")
+                .contentType(ContentType.JSON)
+                .body(List.of(new AttributeAggregationRequest("http://mock-sp", eppn)))
+                .post("/myconext/api/attribute-aggregation/bulk")
+                .then()
+                .statusCode(403);
+    }
+
     @Test
     public void aggregateUnauthorized() {
         given()
@@ -161,7 +234,7 @@ public class AttributeAggregatorControllerTest extends AbstractIntegrationTest {
         Optional<User> optionalUser = userRepository.findUserByUid(uid);
         optionalUser.ifPresent(user -> {
             assertEquals(res.get("eduid"),
-                    user.computeEduIdForServiceProviderIfAbsent(spEntityId, manage));
+                    user.computeEduIdForServiceProviderIfAbsent(spEntityId, manage).value());
         });
         return res;
     }
@@ -11,8 +11,8 @@ import io.restassured.response.Response;
 import io.restassured.response.ValidatableResponse;
 import myconext.AbstractIntegrationTest;
 import myconext.model.*;
-import myconext.repository.ChallengeRepository;
 import myconext.security.ACR;
+import myconext.webauthn.ChallengeStore;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.client.CookieStore;
 import org.junit.Test;
@@ -50,7 +50,7 @@ public class UserControllerTest extends AbstractIntegrationTest {
     private final SecureRandom random = new SecureRandom();
 
     @Autowired
-    private ChallengeRepository challengeRepository;
+    private ChallengeStore challengeStore;
 
     @Test
     public void existingUser() throws IOException {
@@ -330,6 +330,39 @@ public class UserControllerTest extends AbstractIntegrationTest {
         assertTrue(IOUtils.toString(response.asInputStream(), Charset.defaultCharset()).contains("Nice"));
     }
 
+    @Test
+    public void meNotModified() {
+        String eTag = given()
+                .when()
+                .get("/myconext/api/sp/me")
+                .then()
+                .statusCode(200)
+                .extract()
+                .header(HttpHeaders.ETAG);
+        assertNotNull(eTag);
+
+        given()
+                .when()
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .get("/myconext/api/sp/me")
+                .then()
+                .statusCode(304)
+                .header(HttpHeaders.ETAG, eTag);
+
+        userRepository.save(userRepository.findOneUserByEmail("jdoe@example.com"));
+
+        String newETag = given()
+                .when()
+                .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                .get("/myconext/api/sp/me")
+                .then()
+                .statusCode(200)
+                .body("email", equalTo("jdoe@example.com"))
+                .extract()
+                .header(HttpHeaders.ETAG);
+        assertNotEquals(eTag, newETag);
+    }
+
     @Test
     public void updateUser() {
         UpdateUserNameRequest updateUserNameRequest = new UpdateUserNameRequest("chosenName", "Mary", "Poppins");
@@ -1055,10 +1088,9 @@ public class UserControllerTest extends AbstractIntegrationTest {
                 .build();
         body.put("credentials", objectMapper.writeValueAsString(pkc));
         //We can't use the original challenge as the signature is based on challenge
-        Challenge challenge = challengeRepository.findByToken(authenticationRequestId).get();
+        Challenge challenge = challengeStore.consume(authenticationRequestId).get();
         String challengeFromServer = (String) objectMapper.readValue(Base64.getUrlDecoder().decode(responseMap.get("clientDataJSON")), Map.class).get("challenge");
-        ReflectionTestUtils.setField(challenge, "challenge", challengeFromServer);
-        challengeRepository.save(challenge);
+        challengeStore.store(authenticationRequestId, challengeFromServer, challenge.getEmail());
 
         ValidatableResponse validatableResponse = given()
                 .when()
@@ -0,0 +1,95 @@
+package myconext.benchmark;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import myconext.model.Challenge;
+import myconext.webauthn.ChallengeStore;
+import myconext.webauthn.InMemoryChallengeStore;
+import myconext.webauthn.MongoChallengeStore;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the challenge round trips of one WebAuthn ceremony (store at the start, retrieve and remove at the
+ * finish). The previous approach of save, find by token and delete is included as baseline. Requires the local
+ * MongoDB used by the integration tests.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChallengeStoreBenchmark {
+
+    private MongoClient mongoClient;
+    private MongoTemplate mongoTemplate;
+    private ChallengeStore mongoChallengeStore;
+    private InMemoryChallengeStore inMemoryChallengeStore;
+
+    @Setup
+    public void setup() {
+        mongoClient = MongoClients.create("mongodb://127.0.0.1:27017");
+        mongoTemplate = new MongoTemplate(mongoClient, "surf_id_benchmark");
+        mongoTemplate.dropCollection(Challenge.class);
+        mongoTemplate.indexOps(Challenge.class).ensureIndex(new Index("token", Sort.Direction.ASC).unique());
+        mongoTemplate.indexOps(Challenge.class).ensureIndex(new Index("expiresAt", Sort.Direction.ASC).expire(Duration.ZERO));
+        mongoChallengeStore = new MongoChallengeStore(mongoTemplate, Duration.ofMinutes(5));
+        inMemoryChallengeStore = new InMemoryChallengeStore(Duration.ofMinutes(5));
+    }
+
+    @TearDown
+    public void tearDown() {
+        inMemoryChallengeStore.shutdown();
+        mongoTemplate.getDb().drop();
+        mongoClient.close();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Challenge saveFindDelete() {
+        String token = UUID.randomUUID().toString();
+        mongoTemplate.save(new Challenge(token, "challenge", "jdoe@example.com", new Date(System.currentTimeMillis() + 300_000L)));
+        Challenge challenge = mongoTemplate.findOne(Query.query(Criteria.where("token").is(token)), Challenge.class);
+        mongoTemplate.remove(challenge);
+        return challenge;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Challenge mongoStore() {
+        return ceremony(mongoChallengeStore);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Challenge inMemoryStore() {
+        return ceremony(inMemoryChallengeStore);
+    }
+
+    private Challenge ceremony(ChallengeStore challengeStore) {
+        String token = UUID.randomUUID().toString();
+        challengeStore.store(token, "challenge", "jdoe@example.com");
+        return challengeStore.consume(token).orElseThrow();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ChallengeStoreBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,84 @@
+package myconext.benchmark;
+
+import myconext.crypto.HashGenerator;
+import myconext.crypto.KeyGenerator;
+import myconext.security.CookieValueEncoder;
+import myconext.security.VerificationCodeGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the security crypto helpers under multithreaded load, compared to looking up a digest per call and
+ * sharing one {@link SecureRandom} between all threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class CryptoBenchmark {
+
+    private static final String SALT = "secret";
+    private static final String COOKIE_VALUE = "jdoe@example.com";
+
+    private final SecureRandom sharedRandom = new SecureRandom();
+    private CookieValueEncoder cookieValueEncoder;
+
+    @Setup
+    public void setup() {
+        cookieValueEncoder = new CookieValueEncoder(SALT);
+    }
+
+    @Benchmark
+    public String cookieEncode() {
+        return cookieValueEncoder.encode(COOKIE_VALUE);
+    }
+
+    @Benchmark
+    public String cookieEncodeDigestPerCall() throws NoSuchAlgorithmException {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-512");
+        messageDigest.update(SALT.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(messageDigest.digest(COOKIE_VALUE.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public String oneWayHash() {
+        return KeyGenerator.oneWayHash(COOKIE_VALUE);
+    }
+
+    @Benchmark
+    public String hash() {
+        return HashGenerator.hash();
+    }
+
+    @Benchmark
+    public String hashSharedRandom() {
+        byte[] bytes = new byte[64];
+        sharedRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    @Benchmark
+    public String verificationCode() {
+        return VerificationCodeGenerator.generate();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CryptoBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
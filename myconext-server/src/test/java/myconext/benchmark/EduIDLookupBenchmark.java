@@ -0,0 +1,88 @@
+package myconext.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import myconext.manage.Manage;
+import myconext.manage.MockManage;
+import myconext.model.EduID;
+import myconext.model.RemoteProvider;
+import myconext.model.ServiceProvider;
+import myconext.model.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Resolution of the eduID of a service for users with 1, 100 and 1000 services. The scan of all eduID's and their
+ * services - the previous implementation - is included as baseline. A freshly loaded user builds the lookup index
+ * on the first resolution, subsequent resolutions for the same user use the index.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EduIDLookupBenchmark {
+
+    @Param({"1", "100", "1000"})
+    private int services;
+
+    private final Manage manage = new MockManage(new ObjectMapper());
+    private List<EduID> eduIDs;
+    private User user;
+
+    @Setup
+    public void setup() {
+        eduIDs = IntStream.range(0, services)
+                .mapToObj(i -> new EduID("eduid-" + i, new ServiceProvider(new RemoteProvider(
+                        entityId(i), "Name " + i, "Naam " + i, "guid-" + i, null), null)))
+                .toList();
+        user = new User();
+        user.setEduIDS(new ArrayList<>(eduIDs));
+    }
+
+    @Benchmark
+    public Optional<EduID> linearScan() {
+        String entityId = randomEntityId();
+        return eduIDs.stream()
+                .filter(eduID -> entityId.equals(eduID.getServiceProviderEntityId()) ||
+                        eduID.getServices().stream().anyMatch(sp -> entityId.equals(sp.getEntityId())))
+                .findFirst();
+    }
+
+    @Benchmark
+    public String freshUser() {
+        User freshUser = new User();
+        freshUser.setEduIDS(new ArrayList<>(eduIDs));
+        return freshUser.computeEduIdForServiceProviderIfAbsent(randomEntityId(), manage).value();
+    }
+
+    @Benchmark
+    public String indexedUser() {
+        return user.computeEduIdForServiceProviderIfAbsent(randomEntityId(), manage).value();
+    }
+
+    private String randomEntityId() {
+        return entityId(ThreadLocalRandom.current().nextInt(services));
+    }
+
+    private static String entityId(int i) {
+        return "https://sp" + i + ".example.org";
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(EduIDLookupBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,68 @@
+package myconext.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.MustacheFactory;
+import myconext.mail.MailTemplates;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-mail render cost (html and text part) of the {@link MailTemplates} registry compared to resolving the
+ * templates by name on each send.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MailTemplatesBenchmark {
+
+    private MailTemplates mailTemplates;
+    private MustacheFactory mustacheFactory;
+    private Map<String, Object> variables;
+
+    @Setup
+    public void setup() throws IOException {
+        mailTemplates = new MailTemplates(new ClassPathResource("mail_templates"), new ObjectMapper());
+        mustacheFactory = new DefaultMustacheFactory("mail_templates");
+        variables = new HashMap<>();
+        variables.put("title", "Magic Link to login");
+        variables.put("name", "John Doe");
+        variables.put("destination", "https://mock-sp");
+        variables.put("hash", "bd0c7ad7-9e1f-4c6d-a1b5-5d8a2d2d1d4f");
+        variables.put("magicLinkUrl", "http://localhost:8081/saml/guest-idp/magic");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String registry() {
+        return mailTemplates.render("magic_link", "en", "html", variables) +
+                mailTemplates.render("magic_link", "en", "txt", variables);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String compilePerSend() {
+        return mustacheFactory.compile("magic_link_en.html").execute(new StringWriter(), variables).toString() +
+                mustacheFactory.compile("magic_link_en.txt").execute(new StringWriter(), variables).toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(MailTemplatesBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
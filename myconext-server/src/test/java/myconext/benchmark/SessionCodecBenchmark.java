@@ -0,0 +1,117 @@
+package myconext.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import myconext.model.User;
+import myconext.session.CompactSessionCodec;
+import myconext.session.SessionConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.session.data.mongo.JdkMongoSessionConverter;
+import org.springframework.session.data.mongo.MongoIndexedSessionRepository;
+import org.springframework.session.data.mongo.MongoSession;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.security.web.context.HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY;
+
+/**
+ * Java serialization compared to the compact session codec for the attributes of a session with an authenticated
+ * user: the time to encode and to decode the attributes, and the time of a changed session saved and loaded again
+ * through the MongoDB session repository. The encoded size per codec is printed during setup, as the smaller
+ * documents are the main gain. The saveAndLoad benchmark requires the local MongoDB used by the integration tests.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionCodecBenchmark {
+
+    @Param({"jdk", "compact"})
+    public String codec;
+
+    private MongoClient mongoClient;
+    private MongoIndexedSessionRepository sessionRepository;
+    private Map<String, Object> attributes;
+    private byte[] serialized;
+    private CompactSessionCodec compactSessionCodec;
+    private SerializingConverter serializer;
+    private DeserializingConverter deserializer;
+    private MongoSession session;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = new SessionConfig().jsonMapper();
+        List<User> users = objectMapper.readValue(new ClassPathResource("users.json").getInputStream(), new TypeReference<>() {
+        });
+        User user = users.getFirst();
+        attributes = new HashMap<>();
+        attributes.put(SPRING_SECURITY_CONTEXT_KEY,
+                new SecurityContextImpl(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities())));
+        attributes.put("error_count", 1);
+
+        compactSessionCodec = new CompactSessionCodec();
+        serializer = new SerializingConverter();
+        deserializer = new DeserializingConverter();
+        serialized = encode();
+        System.out.printf("%n%s session attributes: %d bytes%n", codec, serialized.length);
+
+        mongoClient = MongoClients.create("mongodb://127.0.0.1:27017");
+        MongoTemplate mongoTemplate = new MongoTemplate(mongoClient, "surf_id_benchmark");
+        sessionRepository = new MongoIndexedSessionRepository(mongoTemplate);
+        sessionRepository.setMongoSessionConverter(codec.equals("compact") ?
+                new JdkMongoSessionConverter(compactSessionCodec::serialize, compactSessionCodec::deserialize, Duration.ofMinutes(30)) :
+                new JdkMongoSessionConverter(Duration.ofMinutes(30)));
+        session = sessionRepository.createSession();
+        attributes.forEach(session::setAttribute);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mongoClient.getDatabase("surf_id_benchmark").drop();
+        mongoClient.close();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.equals("compact") ? compactSessionCodec.serialize(attributes) : serializer.convert(attributes);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return codec.equals("compact") ? compactSessionCodec.deserialize(serialized) : deserializer.convert(serialized);
+    }
+
+    @Benchmark
+    public MongoSession saveAndLoad() {
+        //Force a write of the attributes like a request changing the session
+        session.setAttribute("error_count", 2);
+        sessionRepository.save(session);
+        return sessionRepository.findById(session.getId());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SessionCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,76 @@
+package myconext.benchmark;
+
+import myconext.model.LinkedAccount;
+import myconext.model.User;
+import myconext.model.UserView;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * The values derived from the linked accounts of a user as used for one /sp/me response and one mail: the names, the
+ * date of birth and the login options. Every getter of the User merges and streams the linked accounts again, the
+ * UserView does so once for the complete response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class UserViewBenchmark {
+
+    @Param({"1", "5"})
+    private int linkedAccounts;
+
+    private User user;
+
+    @Setup
+    public void setup() {
+        user = new User();
+        user.setLinkedAccounts(new ArrayList<>(IntStream.range(0, linkedAccounts)
+                .mapToObj(i -> new LinkedAccount("id" + i, "schac" + i, "eppn" + i, "subjectId" + i, "John" + i, "Doe" + i,
+                        List.of("student"), false, Date.from(Instant.now().minus(i, ChronoUnit.DAYS)),
+                        Date.from(Instant.now().plus(90, ChronoUnit.DAYS))))
+                .toList()));
+    }
+
+    @Benchmark
+    public void getters(Blackhole blackhole) {
+        //UserResponse
+        blackhole.consume(user.getDerivedGivenName());
+        blackhole.consume(user.getDerivedFamilyName());
+        blackhole.consume(user.getDerivedDateOfBirth());
+        blackhole.consume(user.loginOptions());
+        //MailBox
+        blackhole.consume(user.getDerivedGivenName() + " " + user.getDerivedFamilyName());
+    }
+
+    @Benchmark
+    public void userView(Blackhole blackhole) {
+        UserView userView = new UserView(user);
+        blackhole.consume(userView.getGivenName());
+        blackhole.consume(userView.getFamilyName());
+        blackhole.consume(userView.getDateOfBirth());
+        blackhole.consume(userView.getLoginOptions());
+        blackhole.consume(userView.getFullName());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(UserViewBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * JMH benchmarks of the performance sensitive parts of the server. They are not part of the test run, every
+ * benchmark has a main method to run it from the IDE or - after mvn test-compile - from the test classpath.
+ */
+package myconext.benchmark;
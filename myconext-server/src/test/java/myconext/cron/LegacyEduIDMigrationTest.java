@@ -0,0 +1,37 @@
+package myconext.cron;
+
+import myconext.AbstractIntegrationTest;
+import myconext.model.EduID;
+import myconext.model.User;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class LegacyEduIDMigrationTest extends AbstractIntegrationTest {
+
+    @Test
+    public void migrate() {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        EduID legacyEduID = new EduID();
+        String value = UUID.randomUUID().toString();
+        ReflectionTestUtils.setField(legacyEduID, "value", value);
+        ReflectionTestUtils.setField(legacyEduID, "serviceProviderEntityId", "https://profile.test2.surfconext.nl/authentication/metadata");
+        user.getEduIDS().add(legacyEduID);
+        userRepository.save(user);
+
+        LegacyEduIDMigration legacyEduIDMigration = new LegacyEduIDMigration(mongoTemplate, manage, true, 1);
+        assertEquals(1, legacyEduIDMigration.migrate());
+
+        EduID migratedEduID = userRepository.findOneUserByEmail("jdoe@example.com").getEduIDS().stream()
+                .filter(eduID -> eduID.getValue().equals(value))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(1, migratedEduID.getServices().size());
+        assertEquals("OpenConext Profile EN", migratedEduID.getServices().get(0).getName());
+        //Idempotency
+        assertEquals(0, legacyEduIDMigration.migrate());
+    }
+}
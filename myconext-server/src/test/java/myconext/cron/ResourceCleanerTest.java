@@ -2,7 +2,12 @@ package myconext.cron;
 
 import myconext.AbstractIntegrationTest;
 import myconext.model.*;
+import myconext.shibboleth.ShibbolethPrincipalCache;
+import myconext.webauthn.UserCredentialRepository;
 import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDateTime;
@@ -15,6 +20,12 @@ import static org.junit.Assert.assertNull;
 
 public class ResourceCleanerTest extends AbstractIntegrationTest {
 
+    @Autowired
+    private UserCredentialRepository userCredentialRepository;
+
+    @Autowired
+    private ShibbolethPrincipalCache shibbolethPrincipalCache;
+
     @Test
     public void cleanNewUsersNotFinishedRegistration() {
         ResourceCleaner resourceCleaner = getResourceCleaner(true);
@@ -22,13 +33,15 @@ public class ResourceCleanerTest extends AbstractIntegrationTest {
         User user = user("mp@example.org");
         long twoDaysAgo = (System.currentTimeMillis() / 1000L) - (2 * 24 * 60 * 60);
         ReflectionTestUtils.setField(user, "created", twoDaysAgo);
-        userRepository.save(user);
+        user = userRepository.save(user);
+        mongoTemplate.save(new WebAuthnCredential("credentialId", user.getId(), "userHandle", "publicKeyCose"));
 
         long prev = userRepository.count();
 
         resourceCleaner.clean();
 
         assertEquals(prev - 1, userRepository.count());
+        assertEquals(0L, mongoTemplate.count(Query.query(Criteria.where("userId").is(user.getId())), WebAuthnCredential.class));
     }
 
     @Test
@@ -65,24 +78,6 @@ public class ResourceCleanerTest extends AbstractIntegrationTest {
         assertEquals(prev - 1, changeEmailHashRepository.count());
     }
 
-    @Test
-    public void cleanEmailsSend() {
-        ResourceCleaner resourceCleaner = getResourceCleaner(true);
-
-        String email = "jdoe@qwerty.com";
-        EmailsSend emailsSend = new EmailsSend(email);
-        Date oneMinuteAgo = Date.from(LocalDateTime.now().minusMinutes(2).atZone(ZoneId.systemDefault()).toInstant());
-
-        ReflectionTestUtils.setField(emailsSend, "sendAt", oneMinuteAgo);
-        emailsSendRepository.save(emailsSend);
-
-        long prev = emailsSendRepository.count();
-
-        resourceCleaner.clean();
-
-        assertEquals(prev - 1, emailsSendRepository.count());
-    }
-
     @Test
     public void cleanMobileLinkAccountRequests() {
         ResourceCleaner resourceCleaner = getResourceCleaner(true);
@@ -155,9 +150,10 @@ public class ResourceCleanerTest extends AbstractIntegrationTest {
         return new ResourceCleaner(
                 authenticationRequestRepository,
                 userRepository,
+                userCredentialRepository,
+                shibbolethPrincipalCache,
                 passwordResetHashRepository,
                 changeEmailHashRepository,
-                emailsSendRepository,
                 requestInstitutionEduIDRepository,
                 mobileLinkAccountRequestRepository,
                 cronJobResponsible);
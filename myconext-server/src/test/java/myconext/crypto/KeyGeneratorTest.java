@@ -10,5 +10,6 @@ public class KeyGeneratorTest {
     public void oneWayHash() {
         String eppn = KeyGenerator.oneWayHash("1234567890@surfguest.nl");
         assertEquals(eppn, KeyGenerator.oneWayHash("1234567890@surfguest.nl"));
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", KeyGenerator.oneWayHash(""));
     }
 }
\ No newline at end of file
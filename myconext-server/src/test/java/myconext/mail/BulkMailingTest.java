@@ -0,0 +1,148 @@
+package myconext.mail;
+
+import myconext.AbstractMailBoxTest;
+import myconext.model.BulkMailingJob;
+import myconext.model.BulkMailingJobStatus;
+import myconext.model.User;
+import myconext.repository.BulkMailingJobRepository;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class BulkMailingTest extends AbstractMailBoxTest {
+
+    @Autowired
+    private BulkMailing bulkMailing;
+
+    @Autowired
+    private BulkMailingJobRepository bulkMailingJobRepository;
+
+    @Autowired
+    private MailBox mailBox;
+
+    @Test
+    public void run() {
+        List<User> users = seedUsers();
+
+        long processed = bulkMailing.run("test_job", System.currentTimeMillis(), this::recipients, mailBox::renderNudgeAppMail, this::markNudged);
+
+        assertEquals(users.size(), processed);
+        assertEquals(users.size(), mailMessages().size());
+        BulkMailingJob job = bulkMailingJobRepository.findById("test_job").get();
+        assertEquals(BulkMailingJobStatus.COMPLETED, job.getStatus());
+        assertEquals(users.size(), job.getProcessed());
+        assertEquals(users.size(), job.getSent());
+        assertEquals(0L, job.getErrors());
+        assertEquals(0L, job.estimatedSecondsRemaining().longValue());
+    }
+
+    @Test
+    public void runWithErrors() {
+        List<User> users = seedUsers();
+
+        long processed = bulkMailing.run("test_job", System.currentTimeMillis(), this::recipients, user -> {
+            if (user.getEmail().startsWith("two")) {
+                throw new IllegalArgumentException("Template error");
+            }
+            return mailBox.renderNudgeAppMail(user);
+        }, this::markNudged);
+
+        assertEquals(users.size(), processed);
+        assertEquals(users.size() - 1, mailMessages().size());
+        BulkMailingJob job = bulkMailingJobRepository.findById("test_job").get();
+        assertEquals(BulkMailingJobStatus.COMPLETED, job.getStatus());
+        assertEquals(1L, job.getErrors());
+        //The user without a mail is not marked and is mailed in the next run
+        assertEquals(1L, bulkMailing.count(recipients(System.currentTimeMillis())));
+    }
+
+    @Test
+    public void resume() {
+        List<User> users = seedUsers();
+        //Mimic a job which was interrupted after the first user
+        long referenceTime = System.currentTimeMillis();
+        BulkMailingJob job = new BulkMailingJob("test_job", BulkMailing.fingerprint(recipients(referenceTime)), referenceTime, users.size());
+        job.progress(1, 1, 0, users.getFirst().getId());
+        bulkMailingJobRepository.save(job);
+
+        //The criteria of the next run are based on a later time, the job is resumed with the time of the first run
+        long processed = bulkMailing.run("test_job", referenceTime + 60 * 60 * 1000, this::recipients, mailBox::renderNudgeAppMail, this::markNudged);
+
+        assertEquals(users.size() - 1, processed);
+        assertEquals(users.size() - 1, mailMessages().size());
+        BulkMailingJob resumedJob = bulkMailingJobRepository.findById("test_job").get();
+        assertEquals(BulkMailingJobStatus.COMPLETED, resumedJob.getStatus());
+        assertEquals(users.size(), resumedJob.getProcessed());
+        assertEquals(users.size(), resumedJob.getTotal());
+        assertEquals(referenceTime, resumedJob.getReferenceTime());
+    }
+
+    @Test
+    public void resumeFailed() {
+        List<User> users = seedUsers();
+        long referenceTime = System.currentTimeMillis();
+        BulkMailingJob job = new BulkMailingJob("test_job", BulkMailing.fingerprint(recipients(referenceTime)), referenceTime, users.size());
+        job.progress(2, 2, 0, users.get(1).getId());
+        job.fail();
+        bulkMailingJobRepository.save(job);
+
+        long processed = bulkMailing.run("test_job", System.currentTimeMillis(), this::recipients, mailBox::renderNudgeAppMail, this::markNudged);
+
+        //The users mailed before the failure are not mailed again
+        assertEquals(users.size() - 2, processed);
+        assertEquals(users.size() - 2, mailMessages().size());
+        BulkMailingJob resumedJob = bulkMailingJobRepository.findById("test_job").get();
+        assertEquals(BulkMailingJobStatus.COMPLETED, resumedJob.getStatus());
+        assertEquals(users.size(), resumedJob.getProcessed());
+    }
+
+    @Test
+    public void restartWithChangedRecipients() {
+        List<User> users = seedUsers();
+        BulkMailingJob job = new BulkMailingJob("test_job", "stale", System.currentTimeMillis(), users.size());
+        job.progress(1, 1, 0, users.getFirst().getId());
+        bulkMailingJobRepository.save(job);
+
+        long processed = bulkMailing.run("test_job", System.currentTimeMillis(), this::recipients, mailBox::renderNudgeAppMail, this::markNudged);
+
+        assertEquals(users.size(), processed);
+        assertEquals(users.size(), mailMessages().size());
+    }
+
+    @Test
+    public void paging() {
+        List<User> users = seedUsers();
+        int pageSize = (int) ReflectionTestUtils.getField(bulkMailing, "pageSize");
+        ReflectionTestUtils.setField(bulkMailing, "pageSize", 2);
+        try {
+            long processed = bulkMailing.run("test_job", System.currentTimeMillis(), this::recipients, mailBox::renderNudgeAppMail, this::markNudged);
+            assertEquals(users.size(), processed);
+        } finally {
+            ReflectionTestUtils.setField(bulkMailing, "pageSize", pageSize);
+        }
+        assertEquals(users.size(), mailMessages().size());
+    }
+
+    private List<User> seedUsers() {
+        //Ordered by insertion, which is also the _id order
+        return Stream.of("one", "two", "three", "four", "five")
+                .map(name -> userRepository.save(user(name + "@bulk.example.com", "en")))
+                .toList();
+    }
+
+    private Criteria recipients(long referenceTime) {
+        return Criteria.where("email").regex("@bulk\\.example\\.com$").and("nudgeAppMailSend").ne(true)
+                .and("created").lte(referenceTime / 1000);
+    }
+
+    private void markNudged(User user) {
+        user.setNudgeAppMailSend(true);
+        userRepository.save(user);
+    }
+}
@@ -0,0 +1,63 @@
+package myconext.mail;
+
+import myconext.AbstractIntegrationTest;
+import myconext.model.EmailsSend;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class EmailSpamGuardTest extends AbstractIntegrationTest {
+
+    @Test
+    public void claim() {
+        EmailSpamGuard emailSpamGuard = new EmailSpamGuard(mongoTemplate, 15, true);
+        emailSpamGuard.claim("jdoe@qwerty.com");
+
+        assertThrows(IllegalArgumentException.class, () -> emailSpamGuard.claim(" JDOE@qwerty.com"));
+        //Other nodes only have the record on the normalized email to rely on
+        assertThrows(IllegalArgumentException.class, () -> new EmailSpamGuard(mongoTemplate, 15, true).claim("JDoe@Qwerty.com"));
+        EmailsSend emailsSend = emailsSendRepository.findAll().get(0);
+        assertEquals("jdoe@qwerty.com", emailsSend.getEmail());
+        assertTrue(emailsSend.getExpiresAt().after(new Date()));
+    }
+
+    @Test
+    public void claimAfterWindow() {
+        EmailsSend emailsSend = new EmailsSend("jdoe@qwerty.com");
+        ReflectionTestUtils.setField(emailsSend, "sendAt", Date.from(Instant.now().minus(1, ChronoUnit.MINUTES)));
+        emailsSendRepository.save(emailsSend);
+
+        new EmailSpamGuard(mongoTemplate, 15, true).claim("jdoe@qwerty.com");
+
+        assertEquals(1L, emailsSendRepository.count());
+        assertTrue(emailsSendRepository.findAll().get(0).getSendAt().after(Date.from(Instant.now().minus(15, ChronoUnit.SECONDS))));
+    }
+
+    @Test
+    public void release() {
+        EmailSpamGuard emailSpamGuard = new EmailSpamGuard(mongoTemplate, 15, true);
+        emailSpamGuard.claim("jdoe@qwerty.com");
+        emailSpamGuard.release("jdoe@qwerty.com");
+
+        assertEquals(0L, emailsSendRepository.count());
+        emailSpamGuard.claim("jdoe@qwerty.com");
+    }
+
+    @Test
+    public void disabled() {
+        emailsSendRepository.save(new EmailsSend("jdoe@qwerty.com"));
+
+        EmailSpamGuard emailSpamGuard = new EmailSpamGuard(mongoTemplate, 15, false);
+        emailSpamGuard.claim("jdoe@qwerty.com");
+        emailSpamGuard.claim("jdoe@qwerty.com");
+
+        assertEquals(1L, emailsSendRepository.count());
+    }
+}
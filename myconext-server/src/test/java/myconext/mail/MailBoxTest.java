@@ -9,6 +9,7 @@ import myconext.model.User;
 import org.apache.commons.mail2.jakarta.util.MimeMessageParser;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Map;
 import java.util.UUID;
@@ -17,6 +18,7 @@ import java.util.regex.Pattern;
 
 import static com.icegreen.greenmail.util.GreenMailUtil.getBody;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 public class MailBoxTest extends AbstractMailBoxTest {
@@ -34,14 +36,31 @@ public class MailBoxTest extends AbstractMailBoxTest {
         doSendMagicLink("Magische link om in te loggen", "nl");
     }
 
-    @Test(expected = IllegalArgumentException.class)
+    @Test
     public void preventSpam() {
         String email = "jdoe@qwerty.com";
         EmailsSend emailsSend = new EmailsSend(email);
         emailsSendRepository.save(emailsSend);
 
-        String hash = UUID.randomUUID().toString();
-        mailBox.sendMagicLink(user(email.toUpperCase(), "en"), hash, "http://mock-sp");
+        Object emailSpamGuard = ReflectionTestUtils.getField(mailBox, "emailSpamGuard");
+        ReflectionTestUtils.setField(mailBox, "emailSpamGuard", new EmailSpamGuard(mongoTemplate, 15, true));
+        try {
+            String hash = UUID.randomUUID().toString();
+            assertThrows(IllegalArgumentException.class,
+                    () -> mailBox.sendMagicLink(user(email.toUpperCase(), "en"), hash, "http://mock-sp"));
+        } finally {
+            ReflectionTestUtils.setField(mailBox, "emailSpamGuard", emailSpamGuard);
+        }
+    }
+
+    @Test
+    public void spamGuardDisabled() {
+        String email = "jdoe@qwerty.com";
+        emailsSendRepository.save(new EmailsSend(email));
+
+        mailBox.sendMagicLink(user(email, "en"), UUID.randomUUID().toString(), "http://mock-sp");
+
+        assertEquals(1, mailMessages().size());
     }
 
     @SneakyThrows
@@ -0,0 +1,57 @@
+package myconext.mail;
+
+import jakarta.mail.Message;
+import jakarta.mail.internet.MimeMessage;
+import lombok.SneakyThrows;
+import myconext.AbstractMailBoxTest;
+import myconext.model.OutboxMail;
+import myconext.model.OutboxMailStatus;
+import myconext.repository.OutboxMailRepository;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+
+public class MailOutboxTest extends AbstractMailBoxTest {
+
+    @Autowired
+    private MailOutbox mailOutbox;
+
+    @Autowired
+    private OutboxMailRepository outboxMailRepository;
+
+    @SneakyThrows
+    @Test
+    public void enqueue() {
+        mailOutbox.enqueue(new RenderedMail("magic_link", "jdoe@example.com", "Subject", "<p>html</p>", "text"));
+
+        MimeMessage mimeMessage = mailMessage();
+        assertEquals("jdoe@example.com", mimeMessage.getRecipients(Message.RecipientType.TO)[0].toString());
+        assertEquals("Subject", mimeMessage.getSubject());
+
+        await().atMost(1, TimeUnit.SECONDS).until(() -> outboxMailRepository.count() == 0L);
+    }
+
+    @Test
+    public void deadLetter() {
+        mailOutbox.enqueue(new RenderedMail("magic_link", null, "Subject", "<p>html</p>", "text"));
+
+        await().atMost(1, TimeUnit.SECONDS).until(() -> outboxMailRepository.findByStatus(OutboxMailStatus.DEAD_LETTER).size() == 1);
+    }
+
+    @SneakyThrows
+    @Test
+    public void pollDueMails() {
+        //Mimic a mail left behind by a node that stopped before the mail was dispatched
+        outboxMailRepository.save(new OutboxMail("magic_link", "jdoe@example.com", "Subject", "<p>html</p>", "text"));
+
+        mailOutbox.pollDueMails();
+
+        List<MimeMessage> mimeMessages = mailMessages();
+        assertEquals(1, mimeMessages.size());
+    }
+}
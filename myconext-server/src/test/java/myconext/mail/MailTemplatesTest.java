@@ -0,0 +1,50 @@
+package myconext.mail;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MailTemplatesTest {
+
+    @Test
+    void render() throws IOException {
+        MailTemplates mailTemplates = new MailTemplates(new ClassPathResource("mail_templates"), new ObjectMapper());
+
+        assertEquals("Magic Link to login", mailTemplates.subject("magic_link", "en"));
+        String html = mailTemplates.render("magic_link", "en", "html", Map.of("name", "John Doe", "hash", "secret_hash"));
+        assertTrue(html.contains("John Doe"));
+        assertTrue(html.contains("secret_hash"));
+        //Reused buffer must not leak the previous rendering
+        String text = mailTemplates.render("verification_code", "nl", "txt", Map.of("name", "Mary", "verificationCode", "123456"));
+        assertFalse(text.contains("secret_hash"));
+        assertTrue(text.contains("123456"));
+    }
+
+    @Test
+    void unknownTemplate() throws IOException {
+        MailTemplates mailTemplates = new MailTemplates(new ClassPathResource("mail_templates"), new ObjectMapper());
+
+        assertThrows(IllegalArgumentException.class, () -> mailTemplates.render("nope", "en", "html", Map.of()));
+    }
+
+    @Test
+    void missingTemplate(@TempDir Path directory) throws IOException {
+        Files.writeString(directory.resolve("subjects.json"), "{\"welcome\": {\"en\": \"Welcome\", \"nl\": \"Welkom\"}}");
+        Files.writeString(directory.resolve("welcome_en.html"), "<p>{{name}}</p>");
+        Files.writeString(directory.resolve("welcome_en.txt"), "{{name}}");
+        Files.writeString(directory.resolve("welcome_nl.html"), "<p>{{name}}</p>");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> new MailTemplates(new FileSystemResource(directory.toFile()), new ObjectMapper()));
+        assertTrue(e.getMessage().contains("welcome_nl.txt"));
+    }
+}
@@ -7,6 +7,8 @@ import myconext.model.ServiceProvider;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -66,6 +68,15 @@ public class RemoteManageTest {
         assertTrue(optionalIdentityProvider.isPresent());
     }
 
+    @Test
+    public void findIdentityProvidersByDomainNames() {
+        stubForTokens("saml20_idp");
+
+        Map<String, IdentityProvider> identityProviders = manage.findIdentityProvidersByDomainNames(List.of("sub7.aap.nl", "nope.nl"));
+        assertEquals(1, identityProviders.size());
+        assertEquals(manage.findIdentityProviderByDomainName("sub7.aap.nl").get(), identityProviders.get("sub7.aap.nl"));
+    }
+
     @Test
     @SneakyThrows
     public void findIdentityProviderByBrinCode() {
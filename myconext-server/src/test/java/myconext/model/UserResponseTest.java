@@ -10,21 +10,21 @@ import org.springframework.core.io.ClassPathResource;
 import java.io.IOException;
 import java.util.*;
 
-import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static org.junit.jupiter.api.Assertions.*;
 
 @SuppressWarnings("unchecked")
 class UserResponseTest {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final List<VerifyIssuer> issuers;
+    private final Map<String, VerifyIssuer> issuers;
 
     {
         try {
             List<IdinIssuers> idinIssuers = new ObjectMapper().readValue(new ClassPathResource("/idin/issuers.json")
                     .getInputStream(), new TypeReference<>() {
             });
-            this.issuers = idinIssuers.getFirst().getIssuers();
+            this.issuers = VerifyIssuer.byId(idinIssuers.getFirst().getIssuers());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -68,6 +68,25 @@ class UserResponseTest {
         assertEquals(0, userResponse.getExternalLinkedAccounts().size());
     }
 
+    @Test
+    void getLinkedAccounts() {
+        User user = new User();
+        user.getLinkedAccounts().add(new LinkedAccount("id", "aap.nl", "eppn", "subject-id", "John", "Doe",
+                List.of("student"), false, new Date(), new Date()));
+        user.getLinkedAccounts().add(new LinkedAccount("id", "unknown.nl", "eppn", "subject-id", "John", "Doe",
+                List.of("student"), false, new Date(), new Date()));
+        UserResponse userResponse = new UserResponse(
+                user,
+                null,
+                Optional.empty(),
+                false,
+                new MockManage(objectMapper),
+                issuers);
+        List<LinkedAccount> linkedAccounts = userResponse.getLinkedAccounts();
+        assertEquals("thkidp EN", linkedAccounts.get(0).getDisplayNameEn());
+        assertNull(linkedAccounts.get(1).getDisplayNameEn());
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     void nullMapKey() throws JsonProcessingException {
@@ -76,7 +95,7 @@ class UserResponseTest {
         eduidServiceProvider.put(null, new EduID());
         eduidServiceProvider.put("key", null);
         UserResponse userResponse = new UserResponse(new User(), eduidServiceProvider, Optional.empty(), false,
-                new MockManage(objectMapper), emptyList());
+                new MockManage(objectMapper), emptyMap());
         Map<String, Object> parsedJson = objectMapper.readValue(objectMapper.writeValueAsString(userResponse), new TypeReference<>() {
         });
         Map<String, EduID> eduIdPerServiceProvider = (Map<String, EduID>) parsedJson.get("eduIdPerServiceProvider");
@@ -6,6 +6,7 @@ import myconext.exceptions.WeakPasswordException;
 import myconext.manage.Manage;
 import myconext.manage.MockManage;
 import myconext.security.ServicesConfiguration;
+import myconext.tiqr.SURFSecureID;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -36,11 +37,11 @@ public class UserTest {
     public void computeEduIdForServiceProviderIfAbsent() {
         User user = user("http://mock-sp");
         String entityId = "brand_new";
-        String eduId = user.computeEduIdForServiceProviderIfAbsent(entityId, manage);
+        String eduId = user.computeEduIdForServiceProviderIfAbsent(entityId, manage).value();
         boolean matches = Pattern.compile("^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$").matcher(eduId).matches();
         assertTrue(matches);
 
-        String existingEduId = user.computeEduIdForServiceProviderIfAbsent(entityId, manage);
+        String existingEduId = user.computeEduIdForServiceProviderIfAbsent(entityId, manage).value();
         assertEquals(eduId, existingEduId);
     }
 
@@ -66,11 +67,91 @@ public class UserTest {
         User user = user("nope");
         //See static providers JSON in src/main/resources/manage
         //"coin:institution_guid": "EC82B820-0A11-E511-80D0-005056956C1A",
-        String eduId = user.computeEduIdForServiceProviderIfAbsent("www.spd633wts00.nl", manage);
-        String existingEduId = user.computeEduIdForServiceProviderIfAbsent("https://manage.surfconext.nl/shibboleth", manage);
+        String eduId = user.computeEduIdForServiceProviderIfAbsent("www.spd633wts00.nl", manage).value();
+        String existingEduId = user.computeEduIdForServiceProviderIfAbsent("https://manage.surfconext.nl/shibboleth", manage).value();
         assertEquals(eduId, existingEduId);
     }
 
+    @Test
+    public void computeEduIdReportsChanges() {
+        User user = user("http://mock-sp");
+        ComputedEduID computedEduID = user.computeEduIdForServiceProviderIfAbsent("https://sp_one", manage);
+        assertTrue(computedEduID.changed());
+        assertNull(computedEduID.previousLastLogin());
+
+        computedEduID = user.computeEduIdForServiceProviderIfAbsent("https://sp_one", manage);
+        assertFalse(computedEduID.changed());
+        assertNotNull(computedEduID.previousLastLogin());
+    }
+
+    @Test
+    public void computeEduIdAfterServicesRemoved() {
+        User user = user("http://mock-sp");
+        String eduId = user.computeEduIdForServiceProviderIfAbsent("https://sp_one", manage).value();
+        //Services removed outside the User, like UserController#removeUserService
+        user.getEduIDS().forEach(eduID -> eduID.getServices().removeIf(sp -> sp.getEntityId().equals("https://sp_one")));
+
+        String newEduId = user.computeEduIdForServiceProviderIfAbsent("https://sp_one", manage).value();
+        assertNotEquals(eduId, newEduId);
+        assertEquals(newEduId, user.computeEduIdForServiceProviderIfAbsent("https://sp_one", manage).value());
+    }
+
+    @Test
+    public void migrateLegacyEduIDs() {
+        User user = user("http://mock-sp");
+        EduID legacyEduID = new EduID();
+        ReflectionTestUtils.setField(legacyEduID, "value", UUID.randomUUID().toString());
+        ReflectionTestUtils.setField(legacyEduID, "serviceProviderEntityId", "https://profile.test2.surfconext.nl/authentication/metadata");
+        user.getEduIDS().add(legacyEduID);
+
+        //Other legacy eduID's are no longer migrated during login
+        user.computeEduIdForServiceProviderIfAbsent("http://mock-sp", manage);
+        assertTrue(legacyEduID.getServices().isEmpty());
+
+        assertTrue(user.migrateLegacyEduIDs(manage));
+        assertEquals("OpenConext Profile EN", legacyEduID.getServices().get(0).getName());
+        //Idempotency
+        assertFalse(user.migrateLegacyEduIDs(manage));
+        assertEquals(legacyEduID.getValue(),
+                user.computeEduIdForServiceProviderIfAbsent("https://profile.test2.surfconext.nl/authentication/metadata", manage).value());
+    }
+
+    @Test
+    public void loginOptions() {
+        User user = user("http://mock-sp");
+        assertEquals(List.of("useLink"), user.loginOptions());
+
+        user.getSurfSecureId().put(SURFSecureID.RECOVERY_CODE, "code");
+        ReflectionTestUtils.setField(user, "password", "secret");
+        assertEquals(List.of("useApp", "usePassword", "useLink"), user.loginOptions());
+    }
+
+    @Test
+    public void userView() {
+        User user = user("http://mock-sp");
+        UserView userView = new UserView(user);
+        assertEquals(user.getGivenName(), userView.getGivenName());
+        assertFalse(userView.getPreferredAccount().isPresent());
+
+        user.getLinkedAccounts().add(LinkedAccountTest.linkedAccount("John", "Doe", new Date()));
+        user.getLinkedAccounts().add(LinkedAccountTest.linkedAccount("Mary", "Steward", Date.from(Instant.now().plus(1, ChronoUnit.DAYS))));
+        //The view is a snapshot
+        assertEquals(user.getGivenName(), userView.getGivenName());
+
+        userView = new UserView(user);
+        assertEquals("Mary", userView.getGivenName());
+        assertEquals(user.getDerivedGivenName(), userView.getGivenName());
+        assertEquals(user.getDerivedFamilyName(), userView.getFamilyName());
+        assertEquals(user.getDerivedGivenName() + " " + user.getDerivedFamilyName(), userView.getFullName());
+        assertEquals(user.loginOptions(), userView.getLoginOptions());
+
+        user.getLinkedAccounts().getFirst().setPreferred(true);
+        userView = new UserView(user);
+        assertEquals("John", userView.getGivenName());
+        assertEquals("Doe", userView.getFamilyName());
+        assertEquals(user.getLinkedAccounts().getFirst(), userView.getPreferredAccount().get());
+    }
+
     @Test(expected = WeakPasswordException.class)
     public void encryptPassword() {
         User user = new User();
@@ -1,12 +1,16 @@
 package myconext.remotecreation;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import io.restassured.common.mapper.TypeRef;
 import io.restassured.http.ContentType;
+import lombok.SneakyThrows;
 import myconext.AbstractIntegrationTest;
 import myconext.model.*;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -531,6 +535,125 @@ class RemoteCreationControllerTest extends AbstractIntegrationTest {
                 .statusCode(404);
     }
 
+    @Test
+    void createEduIDsBatch() throws JsonProcessingException {
+        NewExternalEduID newExternalEduID = new NewExternalEduID("new@user.com", "Mary", "Mary", "von", "Munich",
+                "19880327", UUID.randomUUID().toString(), Verification.Decentraal, List.of("ST42"));
+        NewExternalEduID existingEmail = new NewExternalEduID(email, "Mary", "Mary", null, "Munich",
+                "19880327", UUID.randomUUID().toString(), Verification.Decentraal, null);
+        NewExternalEduID duplicateEmail = new NewExternalEduID("NEW@user.com", "Mary", "Mary", null, "Munich",
+                "19880327", UUID.randomUUID().toString(), Verification.Decentraal, null);
+        NewExternalEduID invalid = new NewExternalEduID("other@user.com", "", "Mary", null, "Munich",
+                "19880327", UUID.randomUUID().toString(), Verification.Decentraal, null);
+        String ndjson = Stream.of(newExternalEduID, existingEmail, duplicateEmail, invalid)
+                .map(this::json)
+                .collect(Collectors.joining("\n"));
+        List<Map<String, Object>> results = batchResults(given()
+                .when()
+                .auth().preemptive().basic(userName, password)
+                .contentType("application/x-ndjson")
+                .body(ndjson)
+                .post("/api/remote-creation/eduid-create/batch")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asString());
+
+        assertEquals(List.of(201, 409, 409, 400), results.stream().map(result -> result.get("status")).toList());
+        assertEquals(List.of(0, 1, 2, 3), results.stream().map(result -> result.get("index")).toList());
+
+        User user = this.findUserByEduIDValue((String) results.get(0).get("eduIDValue")).get();
+        assertEquals("new@user.com", user.getEmail());
+        assertEquals("von Munich", user.getFamilyName());
+        assertEquals("student@aap.nl", user.getExternalLinkedAccounts().get(0).getAffiliations().getFirst());
+        assertTrue(userRepository.findUserByEmail("other@user.com").isEmpty());
+    }
+
+    @Test
+    void updateEduIDsBatch() throws JsonProcessingException {
+        UpdateExternalEduID externalEduID = new UpdateExternalEduID(email, "3060b9ce-9cf2-4e5b-8164-bf0a2b706720",
+                "Mary", "Mary", "von", "Munich", "19880327", UUID.randomUUID().toString(), Verification.Decentraal, null);
+        UpdateExternalEduID unknownEduID = new UpdateExternalEduID(email, "nope",
+                "Mary", "Mary", "von", "Munich", "19880327", UUID.randomUUID().toString(), Verification.Decentraal, null);
+        List<Map<String, Object>> results = batchResults(given()
+                .when()
+                .auth().preemptive().basic(userName, password)
+                .contentType(ContentType.JSON)
+                .body(json(List.of(externalEduID, unknownEduID)))
+                .put("/api/remote-creation/eduid-update/batch")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asString());
+
+        assertEquals(List.of(201, 404), results.stream().map(result -> result.get("status")).toList());
+        User user = this.findUserByEduIDValue((String) results.get(0).get("eduIDValue")).get();
+        assertEquals(email, user.getEmail());
+        assertEquals(1, user.getExternalLinkedAccounts().size());
+        assertEquals(IdpScoping.studielink, user.getExternalLinkedAccounts().get(0).getIdpScoping());
+    }
+
+    @Test
+    void eduIDsForInstitutionBatch() throws JsonProcessingException {
+        //See src/test/resources/users.json eduIDs#value
+        List<EduIDInstitutionPseudonym> pseudonyms = List.of(
+                new EduIDInstitutionPseudonym("ST42", "fc75dcc7-6def-4054-b8ba-3c3cc504dd4b"),
+                new EduIDInstitutionPseudonym("ST42", "fc75dcc7-6def-4054-b8ba-3c3cc504dd4b"),
+                new EduIDInstitutionPseudonym("nope", "fc75dcc7-6def-4054-b8ba-3c3cc504dd4b"),
+                new EduIDInstitutionPseudonym("ST42", "nope"));
+        List<Map<String, Object>> results = batchResults(given()
+                .when()
+                .auth().preemptive().basic(userName, password)
+                .contentType(ContentType.JSON)
+                .body(json(pseudonyms))
+                .post("/api/remote-creation/eduid-institution-pseudonym/batch")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asString());
+
+        assertEquals(List.of(200, 200, 404, 404), results.stream().map(result -> result.get("status")).toList());
+        String eduIDValue = (String) results.get(0).get("eduIDValue");
+        assertEquals(eduIDValue, results.get(1).get("eduIDValue"));
+        User user = this.findUserByEduIDValue(eduIDValue).get();
+        //See src/main/resources/manage/saml20_idp.json read by MockManage
+        String institutionGUID = "8017e83f-bca7-e911-90f2-0050569571ea";
+        assertTrue(user.getEduIDS().stream()
+                .anyMatch(eduID -> eduID.getValue().equals(eduIDValue) &&
+                        eduID.getServices().stream().anyMatch(service -> institutionGUID.equals(service.getInstitutionGuid()))));
+    }
+
+    @Test
+    void batchWithInvalidJson() throws JsonProcessingException {
+        EduIDInstitutionPseudonym pseudonym = new EduIDInstitutionPseudonym("ST42", "fc75dcc7-6def-4054-b8ba-3c3cc504dd4b");
+        List<Map<String, Object>> results = batchResults(given()
+                .when()
+                .auth().preemptive().basic(userName, password)
+                .contentType("application/x-ndjson")
+                .body(json(pseudonym) + "\n{\"brinCode\": ")
+                .post("/api/remote-creation/eduid-institution-pseudonym/batch")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asString());
+
+        assertEquals(List.of(200, 400), results.stream().map(result -> result.get("status")).toList());
+    }
+
+    @SneakyThrows
+    private String json(Object object) {
+        return objectMapper.writeValueAsString(object);
+    }
+
+    private List<Map<String, Object>> batchResults(String ndjson) throws JsonProcessingException {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (String line : ndjson.lines().toList()) {
+            results.add(objectMapper.readValue(line, new TypeReference<>() {
+            }));
+        }
+        return results;
+    }
+
     @Test
     void findUserByEduIDValueWithNullCheck() {
         assertFalse(super.findUserByEduIDValue(null).isPresent());
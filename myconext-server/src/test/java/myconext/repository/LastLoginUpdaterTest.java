@@ -0,0 +1,73 @@
+package myconext.repository;
+
+import myconext.AbstractIntegrationTest;
+import myconext.model.ComputedEduID;
+import myconext.model.ServiceProvider;
+import myconext.model.User;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class LastLoginUpdaterTest extends AbstractIntegrationTest {
+
+    private static final String ENTITY_ID = "http://mock-sp";
+
+    @Test
+    public void saveOrTouch() throws InterruptedException {
+        LastLoginUpdater lastLoginUpdater = new LastLoginUpdater(userRepository, mongoTemplate, 60);
+        //First login stores the metadata from Manage
+        User user = user();
+        ComputedEduID computedEduID = user.computeEduIdForServiceProviderIfAbsent(ENTITY_ID, manage);
+        lastLoginUpdater.saveOrTouch(user, computedEduID);
+        long lastLogin = user().getLastLogin();
+        assertEquals(user.getLastLogin(), lastLogin);
+
+        //Subsequent login within the interval is not written
+        Thread.sleep(5);
+        user = user();
+        computedEduID = user.computeEduIdForServiceProviderIfAbsent(ENTITY_ID, manage);
+        assertFalse(computedEduID.changed());
+        assertNotNull(computedEduID.previousLastLogin());
+        lastLoginUpdater.saveOrTouch(user, computedEduID);
+        assertEquals(lastLogin, user().getLastLogin());
+    }
+
+    @Test
+    public void touch() throws InterruptedException {
+        User user = user();
+        login(user);
+        Date serviceLastLogin = serviceProvider(user()).getLastLogin();
+
+        Thread.sleep(5);
+        user = user();
+        ComputedEduID computedEduID = user.computeEduIdForServiceProviderIfAbsent(ENTITY_ID, manage);
+        assertFalse(computedEduID.changed());
+        new LastLoginUpdater(userRepository, mongoTemplate, 0).saveOrTouch(user, computedEduID);
+
+        User userFromDB = user();
+        assertEquals(user.getLastLogin(), userFromDB.getLastLogin());
+        assertTrue(serviceProvider(userFromDB).getLastLogin().after(serviceLastLogin));
+        //Only the last login is written
+        assertEquals(user.getEduIDS().size(), userFromDB.getEduIDS().size());
+        assertEquals(serviceProvider(user).getName(), serviceProvider(userFromDB).getName());
+    }
+
+    private void login(User user) {
+        ComputedEduID computedEduID = user.computeEduIdForServiceProviderIfAbsent(ENTITY_ID, manage);
+        new LastLoginUpdater(userRepository, mongoTemplate, 60).saveOrTouch(user, computedEduID);
+    }
+
+    private User user() {
+        return userRepository.findOneUserByEmail("jdoe@example.com");
+    }
+
+    private ServiceProvider serviceProvider(User user) {
+        return user.getEduIDS().stream()
+                .flatMap(eduID -> eduID.getServices().stream())
+                .filter(sp -> ENTITY_ID.equals(sp.getEntityId()))
+                .findFirst()
+                .orElseThrow();
+    }
+}
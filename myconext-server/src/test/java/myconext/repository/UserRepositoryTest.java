@@ -4,6 +4,7 @@ import myconext.AbstractIntegrationTest;
 import myconext.model.ControlCode;
 import myconext.model.User;
 import myconext.security.VerificationCodeGenerator;
+import org.bson.Document;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -12,8 +13,7 @@ import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 
 public class UserRepositoryTest extends AbstractIntegrationTest {
 
@@ -76,6 +76,29 @@ public class UserRepositoryTest extends AbstractIntegrationTest {
         assertEquals(controlCode.getCode(), user.getControlCode().getCode() );
     }
 
+    @Test(expected = org.springframework.dao.DuplicateKeyException.class)
+    public void testControlCodeUniqueIndex() {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        ControlCode controlCode = new ControlCode();
+        controlCode.setCode("12345");
+        user.setControlCode(controlCode);
+        userRepository.save(user);
+
+        User otherUser = userRepository.findOneUserByEmail("mdoe@example.com");
+        otherUser.setControlCode(controlCode);
+        userRepository.save(otherUser);
+    }
+
+    @Test
+    public void findByControlCodeUsesIndex() {
+        String winningPlan = mongoTemplate.getCollection("users")
+                .find(new Document("controlCode.code", "12345")).explain()
+                .get("queryPlanner", Document.class)
+                .get("winningPlan", Document.class)
+                .toJson();
+        assertTrue(winningPlan, winningPlan.contains("user_control_code_unique"));
+    }
+
     @Test
     public void testFindByNewUserTrueAndCreatedLessThan() {
         User user = user("mp@example.org");
@@ -117,4 +140,32 @@ public class UserRepositoryTest extends AbstractIntegrationTest {
         List<User> users = userRepository.findByEmailDomain(regex);
         assertEquals(2, users.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void findEduIDByServiceProviderEntityId() {
+        User user = userRepository.findEduIDByServiceProviderEntityId("playground_client").get();
+        assertEquals(userRepository.findOneUserByEmail("jdoe@example.com").getId(), user.getId());
+        assertNull(user.getEmail());
+        assertEquals(1, user.getEduIDS().size());
+        assertEquals("fc75dcc7-6def-4054-b8ba-3c3cc504dd4b", user.getEduIDS().get(0).getValue());
+
+        assertTrue(userRepository.findEduIDByServiceProviderEntityId("nope").isEmpty());
+    }
+
+    @Test
+    public void findEduIDByServiceProviderEntityIdUsesIndexes() {
+        Document filter = Document.parse("""
+                { $or: [
+                    { 'eduIDS.serviceProviderEntityId': 'playground_client' },
+                    { 'eduIDS.services.entityId': 'playground_client' }
+                ]}
+                """);
+        String winningPlan = mongoTemplate.getCollection("users").find(filter).explain()
+                .get("queryPlanner", Document.class)
+                .get("winningPlan", Document.class)
+                .toJson();
+        assertFalse(winningPlan, winningPlan.contains("COLLSCAN"));
+        assertTrue(winningPlan, winningPlan.contains("eduIDS.serviceProviderEntityId_1"));
+        assertTrue(winningPlan, winningPlan.contains("eduIDS.services.entityId_1"));
+    }
+}
@@ -0,0 +1,125 @@
+package myconext.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.core.OAuth2TokenIntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.introspection.BadOpaqueTokenException;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionAuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingOpaqueTokenIntrospectorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2025-01-01T12:00:00Z"));
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now.get();
+        }
+    };
+
+    @Test
+    void activeTokenIsCachedUntilExp() {
+        CachingOpaqueTokenIntrospector introspector = introspector(token -> principal(now.get().plusSeconds(30)));
+
+        OAuth2AuthenticatedPrincipal principal = introspector.introspect("token");
+        assertSame(principal, introspector.introspect("token"));
+        assertEquals(1, calls.get());
+        assertEquals(1, meterRegistry.get("introspection.cache.active").counter().count());
+
+        now.set(now.get().plusSeconds(31));
+        introspector.introspect("token");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void activeTokenIsCachedNoLongerThanMaxTimeToLive() {
+        CachingOpaqueTokenIntrospector introspector = introspector(token -> principal(now.get().plus(Duration.ofHours(1))));
+
+        introspector.introspect("token");
+        now.set(now.get().plusSeconds(59));
+        introspector.introspect("token");
+        assertEquals(1, calls.get());
+
+        now.set(now.get().plusSeconds(2));
+        introspector.introspect("token");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void expiredTokenIsNotCached() {
+        CachingOpaqueTokenIntrospector introspector = introspector(token -> principal(now.get().minusSeconds(1)));
+
+        introspector.introspect("token");
+        introspector.introspect("token");
+        assertEquals(2, calls.get());
+        assertEquals(0, introspector.size());
+    }
+
+    @Test
+    void inactiveTokenIsCached() {
+        CachingOpaqueTokenIntrospector introspector = introspector(token -> {
+            throw new BadOpaqueTokenException("Provided token isn't active");
+        });
+
+        assertThrows(BadOpaqueTokenException.class, () -> introspector.introspect("token"));
+        BadOpaqueTokenException e = assertThrows(BadOpaqueTokenException.class, () -> introspector.introspect("token"));
+        assertEquals("Provided token isn't active", e.getMessage());
+        assertEquals(1, calls.get());
+        assertEquals(1, meterRegistry.get("introspection.cache.inactive").counter().count());
+
+        now.set(now.get().plusSeconds(11));
+        assertThrows(BadOpaqueTokenException.class, () -> introspector.introspect("token"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void introspectionErrorIsNotCached() {
+        CachingOpaqueTokenIntrospector introspector = introspector(token -> {
+            throw new OAuth2IntrospectionException("Connection refused");
+        });
+
+        assertThrows(OAuth2IntrospectionException.class, () -> introspector.introspect("token"));
+        assertThrows(OAuth2IntrospectionException.class, () -> introspector.introspect("token"));
+        assertEquals(2, calls.get());
+        assertEquals(2, meterRegistry.get("introspection.remote").timer().count());
+    }
+
+    private CachingOpaqueTokenIntrospector introspector(Function<String, OAuth2AuthenticatedPrincipal> delegate) {
+        return new CachingOpaqueTokenIntrospector(token -> {
+            calls.incrementAndGet();
+            return delegate.apply(token);
+        }, meterRegistry, 100, Duration.ofSeconds(60), Duration.ofSeconds(10), clock);
+    }
+
+    private OAuth2AuthenticatedPrincipal principal(Instant exp) {
+        return new OAuth2IntrospectionAuthenticatedPrincipal(
+                Map.of(OAuth2TokenIntrospectionClaimNames.SUB, "sub", OAuth2TokenIntrospectionClaimNames.EXP, exp),
+                List.of());
+    }
+}
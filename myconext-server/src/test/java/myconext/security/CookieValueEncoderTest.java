@@ -3,6 +3,7 @@ package myconext.security;
 import org.junit.jupiter.api.Test;
 
 import java.util.UUID;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,6 +21,15 @@ class CookieValueEncoderTest {
         assertFalse(new CookieValueEncoder(UUID.randomUUID().toString()).matches(value, encoded));
     }
 
+    @Test
+    void encodeConcurrently() {
+        String encoded = cookieValueEncoder.encode("Joe Doe");
+        //Every thread uses its own digest, so concurrent encodes do not interfere
+        assertTrue(IntStream.range(0, 1000).parallel()
+                .mapToObj(i -> cookieValueEncoder.encode("Joe Doe"))
+                .allMatch(encoded::equals));
+    }
+
     @Test
     void encodeWithException() {
         assertThrows(NullPointerException.class, () -> cookieValueEncoder.encode(null));
@@ -1,17 +1,62 @@
 package myconext.security;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import myconext.exceptions.TooManyRequestsException;
+import myconext.exceptions.UserNotFoundException;
 import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
 
 public class EmailGuessingPreventionTest {
 
-    private EmailGuessingPrevention subject = new EmailGuessingPrevention(0);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final EmailGuessingPrevention subject = new EmailGuessingPrevention(0, 1, meterRegistry);
 
     @Test
     public void sanitizeEmail() {
         assertNull(subject.sanitizeEmail(null));
         assertEquals("jdoe@example.com", subject.sanitizeEmail("jdoe@example.com   "));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void potentialUserEmailGuess() {
+        DeferredResult<String> deferredResult = subject.potentialUserEmailGuess(request("127.0.0.1"), () -> "ok");
+        await().until(deferredResult::hasResult);
+        assertEquals("ok", deferredResult.getResult());
+        //The pending response is released after the result is set
+        await().until(() -> meterRegistry.get("email_guessing.pending").gauge().value() == 0);
+
+        DeferredResult<String> errorResult = subject.potentialUserEmailGuess(request("127.0.0.1"), () -> {
+            throw new UserNotFoundException("nope");
+        });
+        await().until(errorResult::hasResult);
+        assertTrue(errorResult.getResult() instanceof UserNotFoundException);
+
+        assertEquals(2, meterRegistry.get("email_guessing.delayed").counter().count(), 0);
+    }
+
+    @Test
+    public void potentialUserEmailGuessTooManyPending() {
+        SimpleMeterRegistry slowMeterRegistry = new SimpleMeterRegistry();
+        EmailGuessingPrevention slowSubject = new EmailGuessingPrevention(60_000, 1, slowMeterRegistry);
+        slowSubject.potentialUserEmailGuess(request("127.0.0.1"), () -> "ok");
+        //Other IP addresses are not affected
+        slowSubject.potentialUserEmailGuess(request("127.0.0.2"), () -> "ok");
+
+        assertThrows(TooManyRequestsException.class,
+                () -> slowSubject.potentialUserEmailGuess(request("127.0.0.1"), () -> "ok"));
+        assertEquals(1, slowMeterRegistry.get("email_guessing.rejected").counter().count(), 0);
+        assertEquals(2, slowMeterRegistry.get("email_guessing.pending").gauge().value(), 0);
+        slowSubject.shutdown();
+    }
+
+    private MockHttpServletRequest request(String remoteAddress) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddress);
+        return request;
+    }
+}
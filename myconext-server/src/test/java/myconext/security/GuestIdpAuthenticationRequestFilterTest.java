@@ -3,6 +3,7 @@ package myconext.security;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import myconext.manage.MockManage;
 import myconext.model.*;
+import myconext.repository.LastLoginUpdater;
 import myconext.repository.UserRepository;
 import org.junit.Before;
 import org.junit.Test;
@@ -27,6 +28,7 @@ public class GuestIdpAuthenticationRequestFilterTest {
     public void beforeEach() {
         subject.setManage(new MockManage(objectMapper));
         subject.setUserRepository(Mockito.mock(UserRepository.class));
+        subject.setLastLoginUpdater(Mockito.mock(LastLoginUpdater.class));
     }
 
     @Test
@@ -0,0 +1,149 @@
+package myconext.session;
+
+import myconext.AbstractIntegrationTest;
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.session.data.mongo.AbstractMongoSessionConverter;
+import org.springframework.session.data.mongo.JdkMongoSessionConverter;
+import org.springframework.session.data.mongo.MongoIndexedSessionRepository;
+import org.springframework.session.data.mongo.MongoSession;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingSessionRepositoryTest extends AbstractIntegrationTest {
+
+    private final List<CachingSessionRepository> repositories = new ArrayList<>();
+
+    @After
+    public void after() {
+        repositories.forEach(CachingSessionRepository::shutdown);
+    }
+
+    @Test
+    public void findFromCache() {
+        CachingSessionRepository repository = repository();
+        MongoSession session = repository.createSession();
+        session.setAttribute("key", "value");
+        repository.save(session);
+
+        //Only the cache can still serve the session
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(session.getId())), "sessions");
+        MongoSession cached = repository.findById(session.getId());
+        assertEquals("value", cached.getAttribute("key"));
+        //Every load is a private copy
+        assertNotSame(session, cached);
+    }
+
+    @Test
+    public void writeBackOnlyWhenChanged() {
+        CachingSessionRepository repository = repository();
+        MongoSession session = repository.createSession();
+        session.setAttribute("key", "value");
+        repository.save(session);
+        Object accessed = storedAccessed(session);
+
+        session = repository.findById(session.getId());
+        session.setLastAccessedTime(Instant.now().plusSeconds(30));
+        repository.save(session);
+        assertEquals(accessed, storedAccessed(session));
+
+        session.setLastAccessedTime(Instant.now().plusSeconds(90));
+        repository.save(session);
+        assertNotEquals(accessed, storedAccessed(session));
+
+        session = repository.findById(session.getId());
+        session.setAttribute("key", "changed");
+        repository.save(session);
+        //A new node has nothing cached and loads from the database
+        assertEquals("changed", repository().findById(session.getId()).getAttribute("key"));
+    }
+
+    @Test
+    public void invalidateByOtherNode() {
+        CachingSessionRepository node1 = repository();
+        CachingSessionRepository node2 = repository();
+        MongoSession session = node1.createSession();
+        session.setAttribute("key", "value");
+        node1.save(session);
+        assertEquals("value", node2.findById(session.getId()).getAttribute("key"));
+
+        MongoSession changed = node1.findById(session.getId());
+        changed.setAttribute("key", "changed");
+        node1.save(changed);
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> "changed".equals(node2.findById(session.getId()).getAttribute("key")));
+
+        node1.deleteById(session.getId());
+        await().atMost(5, TimeUnit.SECONDS).until(() -> node2.findById(session.getId()) == null);
+    }
+
+    @Test
+    public void verifyAuthenticatedSession() {
+        CachingSessionRepository node1 = repository();
+        CachingSessionRepository node2 = repository();
+        MongoSession session = node1.createSession();
+        session.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, new SecurityContextImpl(
+                UsernamePasswordAuthenticationToken.authenticated("jdoe", null, List.of(new SimpleGrantedAuthority("ROLE_USER")))));
+        node1.save(session);
+        assertNotNull(node2.findById(session.getId()));
+
+        //Mimic a logout on another node of which the invalidation has not arrived yet
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(session.getId())), "sessions");
+        assertNull(node2.findById(session.getId()));
+    }
+
+    @Test
+    public void publishOnlyAttributeChanges() {
+        CachingSessionRepository repository = repository();
+        MongoSession session = repository.createSession();
+        session.setAttribute("key", "value");
+        repository.save(session);
+        assertEquals(0L, invalidations(session));
+
+        session = repository.findById(session.getId());
+        session.setLastAccessedTime(Instant.now().plusSeconds(90));
+        repository.save(session);
+        assertEquals(0L, invalidations(session));
+
+        session = repository.findById(session.getId());
+        session.setAttribute("key", "changed");
+        repository.save(session);
+        assertEquals(1L, invalidations(session));
+
+        repository.deleteById(session.getId());
+        assertEquals(2L, invalidations(session));
+    }
+
+    private CachingSessionRepository repository() {
+        AbstractMongoSessionConverter converter = new JdkMongoSessionConverter(Duration.ofMinutes(30));
+        MongoIndexedSessionRepository delegate = new MongoIndexedSessionRepository(mongoTemplate);
+        delegate.setMongoSessionConverter(converter);
+        CachingSessionRepository repository = new CachingSessionRepository(delegate, converter, mongoTemplate,
+                100, Duration.ofSeconds(60), Duration.ofMinutes(30));
+        repositories.add(repository);
+        return repository;
+    }
+
+    private long invalidations(MongoSession session) {
+        return mongoTemplate.count(Query.query(Criteria.where("key").is(session.getId())), CachingSessionRepository.COLLECTION_NAME);
+    }
+
+    private Object storedAccessed(MongoSession session) {
+        Document document = mongoTemplate.findById(session.getId(), Document.class, "sessions");
+        return document.get("accessed");
+    }
+}
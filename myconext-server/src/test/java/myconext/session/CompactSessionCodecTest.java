@@ -0,0 +1,115 @@
+package myconext.session;
+
+import myconext.model.User;
+import myconext.security.UserAuthenticationToken;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import org.springframework.security.web.savedrequest.SimpleSavedRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactSessionCodecTest {
+
+    private final CompactSessionCodec codec = new CompactSessionCodec();
+
+    @Test
+    void usernamePasswordAuthentication() {
+        User user = user();
+        Map<String, Object> attributes = roundTrip(Map.of("SPRING_SECURITY_CONTEXT",
+                new SecurityContextImpl(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()))));
+
+        Authentication authentication = ((SecurityContext) attributes.get("SPRING_SECURITY_CONTEXT")).getAuthentication();
+        assertEquals(UsernamePasswordAuthenticationToken.class, authentication.getClass());
+        assertTrue(authentication.isAuthenticated());
+        assertEquals("jdoe@example.com", authentication.getName());
+        assertEquals(user.getAuthorities(), authentication.getAuthorities());
+        User principal = (User) authentication.getPrincipal();
+        assertEquals("id", principal.getId());
+        assertEquals("uid", principal.getUid());
+        assertTrue(principal.getLinkedAccounts().isEmpty());
+    }
+
+    @Test
+    void preAuthenticatedAuthentication() {
+        User user = user();
+        user.setServiceDeskMember(true);
+        Map<String, Object> attributes = roundTrip(Map.of("SPRING_SECURITY_CONTEXT",
+                new SecurityContextImpl(new PreAuthenticatedAuthenticationToken(user, "N/A", user.getAuthorities()))));
+
+        Authentication authentication = ((SecurityContext) attributes.get("SPRING_SECURITY_CONTEXT")).getAuthentication();
+        assertEquals(PreAuthenticatedAuthenticationToken.class, authentication.getClass());
+        assertEquals("N/A", authentication.getCredentials());
+        assertEquals(2, authentication.getAuthorities().size());
+        assertTrue(((User) authentication.getPrincipal()).isServiceDeskMember());
+    }
+
+    @Test
+    void userAuthentication() {
+        User user = user();
+        long createdAt = System.currentTimeMillis() - 60_000L;
+        Map<String, Object> attributes = roundTrip(Map.of("SPRING_SECURITY_CONTEXT",
+                new SecurityContextImpl(new UserAuthenticationToken(user, null, user.getAuthorities(), createdAt))));
+
+        Authentication authentication = ((SecurityContext) attributes.get("SPRING_SECURITY_CONTEXT")).getAuthentication();
+        assertEquals(UserAuthenticationToken.class, authentication.getClass());
+        assertTrue(authentication.isAuthenticated());
+        assertEquals(createdAt, ((UserAuthenticationToken) authentication).getCreatedAt());
+        assertEquals(user.getAuthorities(), authentication.getAuthorities());
+        assertEquals("id", ((User) authentication.getPrincipal()).getId());
+    }
+
+    @Test
+    void otherAttributes() {
+        Map<String, Object> source = new HashMap<>();
+        source.put("string", "value");
+        source.put("error_count", 3);
+        source.put("long", 3L);
+        source.put("boolean", true);
+        source.put("nullValue", null);
+        source.put("savedRequest", new SimpleSavedRequest("http://localhost/redirect"));
+
+        Map<String, Object> attributes = roundTrip(source);
+
+        assertEquals("value", attributes.get("string"));
+        assertEquals(3, attributes.get("error_count"));
+        assertEquals(3L, attributes.get("long"));
+        assertEquals(true, attributes.get("boolean"));
+        assertTrue(attributes.containsKey("nullValue"));
+        assertNull(attributes.get("nullValue"));
+        assertEquals("http://localhost/redirect", ((SimpleSavedRequest) attributes.get("savedRequest")).getRedirectUrl());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void legacyJdkSerialization() {
+        HashMap<String, Object> source = new HashMap<>(Map.of("string", "value"));
+        byte[] bytes = new SerializingConverter().convert(source);
+
+        assertEquals(source, codec.deserialize(bytes));
+    }
+
+    @Test
+    void compact() {
+        User user = user();
+        Map<String, Object> attributes = Map.of("SPRING_SECURITY_CONTEXT",
+                new SecurityContextImpl(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities())));
+        assertTrue(codec.serialize(attributes).length < new SerializingConverter().convert(new HashMap<>(attributes)).length);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> roundTrip(Map<String, Object> attributes) {
+        return (Map<String, Object>) codec.deserialize(codec.serialize(attributes));
+    }
+
+    private User user() {
+        return User.sessionPrincipal("id", "uid", "jdoe@example.com", false);
+    }
+}
@@ -0,0 +1,107 @@
+package myconext.shibboleth;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import myconext.manage.MockManage;
+import myconext.model.User;
+import myconext.repository.UserRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static myconext.shibboleth.ShibbolethPreAuthenticatedProcessingFilter.*;
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class ShibbolethPrincipalCacheTest {
+
+    private final UserRepository userRepository = Mockito.mock(UserRepository.class);
+    private ShibbolethPrincipalCache principalCache;
+    private ShibbolethPreAuthenticatedProcessingFilter filter;
+
+    @Before
+    public void before() {
+        principalCache = new ShibbolethPrincipalCache(60);
+        filter = new ShibbolethPreAuthenticatedProcessingFilter(
+                null,
+                userRepository,
+                new MockManage(new ObjectMapper()),
+                "http://mijn.localhost/shibboleth",
+                List.of("role1", "role2"),
+                principalCache);
+        User user = User.sessionPrincipal("id", "uid", "steven.doe@example.org", false);
+        when(userRepository.findUserByUid("uid")).thenReturn(Optional.of(user));
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    public void principalIsCached() {
+        User user = (User) filter.getPreAuthenticatedPrincipal(request("role3"));
+        User cachedUser = (User) filter.getPreAuthenticatedPrincipal(request("role3"));
+
+        //Every request gets its own principal
+        assertNotSame(user, cachedUser);
+        assertEquals(user.getId(), cachedUser.getId());
+        assertEquals(user.getUid(), cachedUser.getUid());
+        assertEquals(user.isServiceDeskMember(), cachedUser.isServiceDeskMember());
+        verify(userRepository, times(1)).findUserByUid("uid");
+        verify(userRepository, never()).existsById(any());
+        verify(userRepository, never()).save(any(User.class));
+    }
+
+    @Test
+    public void deletedUserIsProvisionedAgain() {
+        User deletedUser = (User) filter.getPreAuthenticatedPrincipal(request("role3"));
+        //The user is deleted within the time to live of the cache
+        principalCache.evict(List.of(deletedUser));
+        when(userRepository.findUserByUid("uid")).thenReturn(Optional.empty());
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
+            User provisionedUser = invocation.getArgument(0);
+            ReflectionTestUtils.setField(provisionedUser, "id", "new-id");
+            return provisionedUser;
+        });
+
+        User user = (User) filter.getPreAuthenticatedPrincipal(request("role3"));
+
+        assertEquals("new-id", user.getId());
+        verify(userRepository, times(2)).findUserByUid("uid");
+        verify(userRepository, times(1)).save(any(User.class));
+    }
+
+    @Test
+    public void changedMembershipsBypassCache() {
+        User user = (User) filter.getPreAuthenticatedPrincipal(request("role3"));
+        assertFalse(user.isServiceDeskMember());
+
+        user = (User) filter.getPreAuthenticatedPrincipal(request("role3; role1"));
+        assertTrue(user.isServiceDeskMember());
+
+        verify(userRepository, times(2)).findUserByUid("uid");
+        verify(userRepository, times(1)).save(any(User.class));
+    }
+
+    @Test
+    public void missingAttributesAreNotCached() {
+        MockHttpServletRequest request = request("role3");
+        request.removeHeader(SHIB_EMAIL);
+
+        assertNull(filter.getPreAuthenticatedPrincipal(request));
+        verify(userRepository, never()).findUserByUid("uid");
+    }
+
+    private MockHttpServletRequest request(String memberships) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/myconext/api/sp/me");
+        request.addHeader(SHIB_UID, "uid");
+        request.addHeader(SHIB_SCHAC_HOME_ORGANIZATION, "surfguest.nl");
+        request.addHeader(SHIB_GIVEN_NAME, "Steven");
+        request.addHeader(SHIB_SUR_NAME, "Doe");
+        request.addHeader(SHIB_EMAIL, "steven.doe@example.org");
+        request.addHeader(SHIB_MEMBERSHIPS, memberships);
+        return request;
+    }
+}
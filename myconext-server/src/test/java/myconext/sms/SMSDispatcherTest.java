@@ -0,0 +1,113 @@
+package myconext.sms;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import myconext.exceptions.TooManyRequestsException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SMSDispatcherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SMSDispatcher smsDispatcher;
+
+    @AfterEach
+    void after() {
+        if (smsDispatcher != null) {
+            smsDispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void dispatch() {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        smsDispatcher = new SMSDispatcher((mobile, code, locale) -> {
+            sent.add(mobile + ":" + code);
+            return code;
+        }, meterRegistry, 2, 10, 3, 10);
+
+        smsDispatcher.dispatch("0612345678", "123456", Locale.ENGLISH);
+
+        await().atMost(1, TimeUnit.SECONDS).until(() -> sent.size() == 1);
+        assertEquals("0612345678:123456", sent.get(0));
+        assertEquals(1, meterRegistry.get("sms.delivery").timer().count());
+    }
+
+    @Test
+    void deduplicate() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<String> sent = new CopyOnWriteArrayList<>();
+        smsDispatcher = new SMSDispatcher((mobile, code, locale) -> {
+            awaitQuietly(blocked);
+            sent.add(mobile + ":" + code);
+            return code;
+        }, meterRegistry, 1, 10, 3, 10);
+
+        //The only worker is blocked on the first SMS, the next two codes for one number collapse into one SMS
+        smsDispatcher.dispatch("0600000001", "111111", Locale.ENGLISH);
+        await().atMost(1, TimeUnit.SECONDS).until(() -> meterRegistry.get("sms.queue").gauge().value() == 0);
+        smsDispatcher.dispatch("0600000002", "222222", Locale.ENGLISH);
+        smsDispatcher.dispatch("0600000002", "333333", Locale.ENGLISH);
+        blocked.countDown();
+
+        await().atMost(1, TimeUnit.SECONDS).until(() -> sent.size() == 2);
+        Thread.sleep(100);
+        assertEquals(List.of("0600000001:111111", "0600000002:333333"), sent);
+        assertEquals(1, meterRegistry.get("sms.deduplicated").counter().count());
+    }
+
+    @Test
+    void retry() {
+        AtomicInteger attempts = new AtomicInteger();
+        smsDispatcher = new SMSDispatcher((mobile, code, locale) -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("Gateway unavailable");
+            }
+            return code;
+        }, meterRegistry, 1, 10, 3, 10);
+
+        smsDispatcher.dispatch("0612345678", "123456", Locale.ENGLISH);
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> meterRegistry.get("sms.delivery").timer().count() == 1);
+        assertEquals(3, attempts.get());
+        assertEquals(2, meterRegistry.get("sms.failures").counter().count());
+    }
+
+    @Test
+    void queueFull() {
+        CountDownLatch blocked = new CountDownLatch(1);
+        smsDispatcher = new SMSDispatcher((mobile, code, locale) -> {
+            awaitQuietly(blocked);
+            return code;
+        }, meterRegistry, 1, 1, 3, 10);
+
+        smsDispatcher.dispatch("0600000001", "111111", Locale.ENGLISH);
+        await().atMost(1, TimeUnit.SECONDS).until(() -> meterRegistry.get("sms.queue").gauge().value() == 0);
+        smsDispatcher.dispatch("0600000002", "222222", Locale.ENGLISH);
+
+        assertThrows(TooManyRequestsException.class, () -> smsDispatcher.dispatch("0600000003", "333333", Locale.ENGLISH));
+        //The rejected code is not left behind as pending, otherwise the next code would be deduplicated and never sent
+        assertThrows(TooManyRequestsException.class, () -> smsDispatcher.dispatch("0600000003", "444444", Locale.ENGLISH));
+        //A new code for a queued number replaces the pending code
+        smsDispatcher.dispatch("0600000002", "555555", Locale.ENGLISH);
+        assertEquals(1, meterRegistry.get("sms.deduplicated").counter().count(), 0);
+        blocked.countDown();
+    }
+
+    private void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
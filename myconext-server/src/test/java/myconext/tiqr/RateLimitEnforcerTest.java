@@ -1,56 +1,82 @@
 package myconext.tiqr;
 
+import myconext.AbstractIntegrationTest;
 import myconext.exceptions.TooManyRequestsException;
 import myconext.model.User;
-import myconext.repository.UserRepository;
 import org.junit.Test;
-import org.mockito.Mockito;
 
 import java.time.Instant;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static myconext.tiqr.SURFSecureID.*;
 import static org.junit.jupiter.api.Assertions.*;
 
-public class RateLimitEnforcerTest {
+public class RateLimitEnforcerTest extends AbstractIntegrationTest {
 
-    private final UserRepository userRepository = Mockito.mock(UserRepository.class);
     private final TiqrConfiguration tiqrConfiguration = new TiqrConfiguration();
-    private final RateLimitEnforcer rateLimitEnforcer = new RateLimitEnforcer(userRepository, tiqrConfiguration);
+
+    private RateLimitEnforcer rateLimitEnforcer() {
+        return new RateLimitEnforcer(mongoTemplate, tiqrConfiguration);
+    }
+
+    private User user() {
+        return userRepository.findOneUserByEmail("jdoe@example.com");
+    }
 
     @Test
     public void rateLimit() {
-        User user = new User();
-        rateLimitEnforcer.checkRateLimit(user);
+        User user = user();
+        rateLimitEnforcer().checkRateLimit(user);
 
         assertEquals(1, user.getSurfSecureId().get(RATE_LIMIT));
 
-        rateLimitEnforcer.checkRateLimit(user);
+        rateLimitEnforcer().checkRateLimit(user);
 
         assertEquals(2, user.getSurfSecureId().get(RATE_LIMIT));
+        assertEquals(2, user().getSurfSecureId().get(RATE_LIMIT));
     }
 
     @Test(expected = TooManyRequestsException.class)
     public void rateLimitExceeded() {
-        User user = new User();
+        User user = user();
         user.getSurfSecureId().put(RATE_LIMIT, 5);
         user.getSurfSecureId().put(RATE_LIMIT_UPDATED, System.currentTimeMillis());
-        rateLimitEnforcer.checkRateLimit(user);
+        userRepository.save(user);
+        rateLimitEnforcer().checkRateLimit(user);
     }
 
     @Test
     public void rateLimitReset() {
-        User user = new User();
+        User user = user();
         user.getSurfSecureId().put(RATE_LIMIT, 5);
         user.getSurfSecureId().put(RATE_LIMIT_UPDATED, System.currentTimeMillis() - 1000 * 60 * 45);
-        rateLimitEnforcer.checkRateLimit(user);
+        userRepository.save(user);
+        rateLimitEnforcer().checkRateLimit(user);
         assertEquals(0, user.getSurfSecureId().get(RATE_LIMIT));
     }
 
+    @Test
+    public void rateLimitConcurrent() {
+        AtomicInteger allowed = new AtomicInteger();
+        //Every attempt has its own - outdated - copy of the user, like concurrent requests
+        IntStream.range(0, 20).parallel().forEach(i -> {
+            try {
+                rateLimitEnforcer().checkRateLimit(user());
+                allowed.incrementAndGet();
+            } catch (TooManyRequestsException e) {
+                //expected
+            }
+        });
+        assertEquals(tiqrConfiguration.getRateLimitThreshold() - 1, allowed.get());
+    }
+
     @Test
     public void suspendUserAfterTiqrFailure() {
-        User user = new User();
+        User user = user();
         Map<String, Object> surfSecureId = user.getSurfSecureId();
+        RateLimitEnforcer rateLimitEnforcer = rateLimitEnforcer();
 
         rateLimitEnforcer.suspendUserAfterTiqrFailure(user);
         assertEquals(1, (int) surfSecureId.get(SUSPENDED_ATTEMPTS));
@@ -62,9 +88,11 @@ public class RateLimitEnforcerTest {
         assertTrue(suspendedUntil.isAfter(Instant.now()));
 
         assertFalse(rateLimitEnforcer.isUserAllowedTiqrVerification(user));
+        assertFalse(rateLimitEnforcer.isUserAllowedTiqrVerification(user()));
 
         rateLimitEnforcer.unsuspendUserAfterTiqrSuccess(user);
         assertTrue(rateLimitEnforcer.isUserAllowedTiqrVerification(user));
+        assertTrue(rateLimitEnforcer.isUserAllowedTiqrVerification(user()));
     }
 
-}
\ No newline at end of file
+}
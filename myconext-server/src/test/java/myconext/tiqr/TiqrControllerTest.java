@@ -26,6 +26,8 @@ import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -93,6 +95,33 @@ public class TiqrControllerTest extends AbstractIntegrationTest {
         this.doFollowUpEnrollment(body);
     }
 
+    @Test
+    public void longPollEnrollment() throws Exception {
+        Map<String, String> body = given()
+                .when()
+                .contentType(ContentType.JSON)
+                .get("/tiqr/sp/start-enrollment")
+                .body().as(new TypeRef<>() {
+                });
+        String enrollmentKey = body.get("enrollmentKey");
+
+        //Held back until the Tiqr app has fetched the metadata
+        CompletableFuture<String> longPoll = CompletableFuture.supplyAsync(() -> given()
+                .queryParam("enrollmentKey", enrollmentKey)
+                .queryParam("lastStatus", EnrollmentStatus.INITIALIZED.name())
+                .get("/tiqr/poll-enrollment")
+                .as(String.class));
+        //Give the long-poll a head start, the outcome is the same when it loses the race
+        Thread.sleep(250);
+        given()
+                .queryParam("enrollment_key", enrollmentKey)
+                .get("/tiqr/metadata")
+                .then()
+                .statusCode(200);
+
+        assertEquals(EnrollmentStatus.RETRIEVED.name(), longPoll.get(5, TimeUnit.SECONDS));
+    }
+
     @Test
     public void forbiddenEnrollment() {
         given()
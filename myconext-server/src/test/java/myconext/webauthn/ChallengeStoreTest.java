@@ -0,0 +1,72 @@
+package myconext.webauthn;
+
+import myconext.AbstractIntegrationTest;
+import myconext.model.Challenge;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChallengeStoreTest extends AbstractIntegrationTest {
+
+    @Test
+    public void mongoChallengeStore() {
+        doChallengeStore(new MongoChallengeStore(mongoTemplate, Duration.ofMinutes(5)));
+        assertEquals(0, mongoTemplate.count(new Query(), Challenge.class));
+    }
+
+    @Test
+    public void mongoChallengeStoreExpired() {
+        doChallengeStoreExpired(new MongoChallengeStore(mongoTemplate, Duration.ofSeconds(-1)));
+    }
+
+    @Test
+    public void inMemoryChallengeStore() {
+        InMemoryChallengeStore challengeStore = new InMemoryChallengeStore(Duration.ofMinutes(5));
+        try {
+            doChallengeStore(challengeStore);
+            assertEquals(0, challengeStore.size());
+        } finally {
+            challengeStore.shutdown();
+        }
+    }
+
+    @Test
+    public void inMemoryChallengeStoreExpired() {
+        InMemoryChallengeStore challengeStore = new InMemoryChallengeStore(Duration.ofMinutes(5));
+        try {
+            ReflectionTestUtils.setField(challengeStore, "timeToLive", Duration.ofSeconds(-1));
+            doChallengeStoreExpired(challengeStore);
+
+            challengeStore.store("token", "challenge", null);
+            assertEquals(1, challengeStore.size());
+            challengeStore.removeExpired();
+            assertEquals(0, challengeStore.size());
+        } finally {
+            challengeStore.shutdown();
+        }
+    }
+
+    private void doChallengeStore(ChallengeStore challengeStore) {
+        challengeStore.store("token", "first", null);
+        //Restarting the ceremony replaces the challenge
+        challengeStore.store("token", "second", "jdoe@example.com");
+
+        Optional<Challenge> challenge = challengeStore.consume("token");
+        assertTrue(challenge.isPresent());
+        assertEquals("second", challenge.get().getChallenge());
+        assertEquals("jdoe@example.com", challenge.get().getEmail());
+        //Single use
+        assertFalse(challengeStore.consume("token").isPresent());
+        assertFalse(challengeStore.consume("nope").isPresent());
+    }
+
+    private void doChallengeStoreExpired(ChallengeStore challengeStore) {
+        challengeStore.store("token", "challenge", null);
+        assertFalse(challengeStore.consume("token").isPresent());
+    }
+}
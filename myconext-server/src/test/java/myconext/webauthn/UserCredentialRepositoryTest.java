@@ -3,13 +3,16 @@ package myconext.webauthn;
 import com.yubico.webauthn.RegisteredCredential;
 import com.yubico.webauthn.data.ByteArray;
 import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import com.yubico.webauthn.data.PublicKeyCredentialType;
 import com.yubico.webauthn.data.exception.Base64UrlException;
 import myconext.AbstractIntegrationTest;
 import myconext.model.User;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -67,8 +70,40 @@ public class UserCredentialRepositoryTest extends AbstractIntegrationTest {
     }
 
     @Test
-    public void lookupAll() {
-        assertEquals(0, userCredentialRepository.lookupAll(null).size());
+    public void lookupAll() throws Base64UrlException {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        String credentialId = user.getPublicKeyCredentials().iterator().next().getIdentifier();
+
+        Set<RegisteredCredential> registeredCredentials = userCredentialRepository.lookupAll(ByteArray.fromBase64Url(credentialId));
+        assertEquals(1, registeredCredentials.size());
+        assertEquals(user.getUserHandle(), registeredCredentials.iterator().next().getUserHandle().getBase64Url());
+
+        String base64url = Base64.getEncoder().encodeToString(new String("nope").getBytes());
+        assertEquals(0, userCredentialRepository.lookupAll(ByteArray.fromBase64Url(base64url)).size());
+    }
+
+    @Test
+    public void synchronize() {
+        User user = userRepository.findOneUserByEmail("jdoe@example.com");
+        user.setPublicKeyCredentials(new ArrayList<>());
+        userRepository.save(user);
+        userCredentialRepository.synchronize(user);
+
+        assertEquals(0, userCredentialRepository.getCredentialIdsForUsername("jdoe@example.com").size());
+
+        user.addPublicKeyCredential(PublicKeyCredentialDescriptor.builder()
+                        .id(new ByteArray("credential".getBytes()))
+                        .type(PublicKeyCredentialType.PUBLIC_KEY)
+                        .build(),
+                new ByteArray("cose".getBytes()), "key");
+        userRepository.save(user);
+        userCredentialRepository.synchronize(user);
+
+        assertEquals(1, userCredentialRepository.getCredentialIdsForUsername("JDOE@example.com").size());
+        assertEquals(1, userCredentialRepository.lookupAll(new ByteArray("credential".getBytes())).size());
+
+        userCredentialRepository.remove(List.of(user));
+        assertEquals(0, userCredentialRepository.lookupAll(new ByteArray("credential".getBytes())).size());
     }
 
     @Test(expected = IllegalArgumentException.class)